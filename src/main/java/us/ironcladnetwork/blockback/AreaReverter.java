@@ -0,0 +1,229 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Reverts every connected block of the clicked type when a player with area permission
+ * sneaks and right-clicks.
+ * <p>
+ * The clicked block is reverted at once, like a normal click. The rest are found by
+ * flood-filling outwards from it and changed by a main-thread task that stops for the
+ * tick once its time budget is spent, so a large area is spread over several ticks rather
+ * than stalling one. Jobs take turns a block at a time, and each block is checked again
+ * just before it is changed, so blocks changed meanwhile are left alone. The fill never
+ * loads chunks; it stops at the edge of loaded ones.
+ * <p>
+ * Every block after the clicked one is offered to protection plugins first as a
+ * {@link BlockBreakEvent} for the player, with no drops. A block whose event is cancelled is
+ * left alone and the fill does not spread through it, so an area revert cannot reach into
+ * a claim or region the player could not break blocks in.
+ */
+public class AreaReverter {
+
+    /** Permission needed to revert an area. */
+    public static final String PERMISSION = "blockback.area";
+
+    private static final int[][] NEIGHBOURS = {
+            {1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}
+    };
+
+    private static AreaReverter instance;
+    private final JavaPlugin plugin;
+
+    // Main thread only
+    private final Map<UUID, Job> jobs = new HashMap<>();
+    private final ArrayDeque<Job> turns = new ArrayDeque<>();
+    private int taskId = -1;
+
+    /**
+     * One player's area revert: blocks found but not yet changed, and every position
+     * already looked at so the fill never revisits one.
+     */
+    private static final class Job {
+        final Player player;
+        final UUID owner;
+        final RevertMatcher.Revert revert;
+        final World world;
+        final int limit;
+        final ArrayDeque<Block> pending = new ArrayDeque<>();
+        final Set<Long> seen = new HashSet<>();
+        int reverted;
+
+        Job(Player player, RevertMatcher.Revert revert, Block origin, int limit) {
+            this.player = player;
+            this.owner = player.getUniqueId();
+            this.revert = revert;
+            this.world = origin.getWorld();
+            this.limit = limit;
+            seen.add(pack(origin.getX(), origin.getY(), origin.getZ()));
+            pending.add(origin);
+        }
+
+        /**
+         * Reverts the next block that still needs it and queues its matching neighbours
+         * @param physics true to update neighbouring blocks
+         * @return true if there is more to do
+         */
+        boolean step(boolean physics) {
+            Block block;
+            while ((block = pending.poll()) != null) {
+                if (block.getType() != revert.source) {
+                    // Changed since it was found
+                    continue;
+                }
+                // The clicked block was already allowed through the interact event
+                if (reverted > 0 && !mayChange(block)) {
+                    continue;
+                }
+                revert.apply(block, physics);
+                if (++reverted >= limit) {
+                    return false;
+                }
+                for (int[] offset : NEIGHBOURS) {
+                    int x = block.getX() + offset[0];
+                    int y = block.getY() + offset[1];
+                    int z = block.getZ() + offset[2];
+                    if (!seen.add(pack(x, y, z)) || !world.isChunkLoaded(x >> 4, z >> 4)) {
+                        continue;
+                    }
+                    Block neighbour = world.getBlockAt(x, y, z);
+                    if (neighbour.getType() == revert.source) {
+                        pending.add(neighbour);
+                    }
+                }
+                return !pending.isEmpty();
+            }
+            return false;
+        }
+
+        /**
+         * @return false if a protection plugin cancelled the player breaking the block
+         */
+        private boolean mayChange(Block block) {
+            BlockBreakEvent event = new BlockBreakEvent(block, player);
+            event.setDropItems(false);
+            event.setExpToDrop(0);
+            Bukkit.getPluginManager().callEvent(event);
+            return !event.isCancelled();
+        }
+
+        private static long pack(int x, int y, int z) {
+            return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+        }
+    }
+
+    /**
+     * Initialize the AreaReverter
+     * @param plugin the JavaPlugin instance
+     */
+    public static void init(JavaPlugin plugin) {
+        instance = new AreaReverter(plugin);
+    }
+
+    /**
+     * Get the AreaReverter instance
+     * @return the AreaReverter instance
+     */
+    public static AreaReverter getInstance() {
+        return instance;
+    }
+
+    private AreaReverter(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts reverting the area around a clicked block, reverting the clicked block itself
+     * straight away. The caller has already checked the feature's permission and toggle.
+     * @param player the player who clicked
+     * @param origin the clicked block, of the revert's source type
+     * @param revert the revert that matched the click
+     * @return false if area reverts are disabled, the player lacks permission or already
+     *         has one running; nothing was changed and the click is a normal one
+     */
+    public boolean start(Player player, Block origin, RevertMatcher.Revert revert) {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        if (pluginConfig == null || !pluginConfig.isAreaEnabled()
+                || jobs.containsKey(player.getUniqueId()) || !player.hasPermission(PERMISSION)) {
+            return false;
+        }
+
+        Job job = new Job(player, revert, origin, pluginConfig.getAreaMaxBlocks());
+        if (job.step(pluginConfig.isRevertPhysics())) {
+            jobs.put(job.owner, job);
+            turns.add(job);
+            if (taskId == -1) {
+                taskId = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1).getTaskId();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops a player's area revert, leaving blocks not yet reached as they are
+     * @param player the player
+     */
+    public void cancel(Player player) {
+        Job job = jobs.remove(player.getUniqueId());
+        if (job != null) {
+            turns.remove(job);
+        }
+    }
+
+    /**
+     * Stops the task and drops every unfinished area revert
+     */
+    public void stop() {
+        jobs.clear();
+        turns.clear();
+        cancelTask();
+    }
+
+    /**
+     * Works through the jobs in turn until this tick's budget is spent. At least one block
+     * is changed per tick, so every job finishes however small the budget.
+     */
+    private void tick() {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        if (pluginConfig == null) {
+            stop();
+            return;
+        }
+        boolean physics = pluginConfig.isRevertPhysics();
+        long deadline = System.nanoTime() + pluginConfig.getAreaTickBudgetNanos();
+        do {
+            Job job = turns.poll();
+            if (job == null) {
+                break;
+            }
+            if (job.step(physics)) {
+                turns.add(job);
+            } else {
+                jobs.remove(job.owner);
+            }
+        } while (System.nanoTime() - deadline < 0);
+
+        if (turns.isEmpty()) {
+            cancelTask();
+        }
+    }
+
+    private void cancelTask() {
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+}
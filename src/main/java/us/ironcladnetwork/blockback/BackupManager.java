@@ -0,0 +1,273 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Takes periodic gzip-compressed snapshots of all player settings into backups/.
+ * <p>
+ * Snapshots use the players.yml layout regardless of the storage mode, so any of them
+ * can be restored by hand or read directly by {@link YamlPlayerStore} during recovery.
+ * A snapshot is skipped when the content hash matches the newest existing one, and old
+ * snapshots are thinned to the configured hourly, daily and weekly retention.
+ */
+final class BackupManager {
+
+    private static final String PREFIX = "players-";
+    private static final String SUFFIX = ".yml.gz";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    // players-<timestamp>-<16 hex hash>.yml.gz
+    private static final int TIMESTAMP_LENGTH = 19;
+    private static final int HASH_LENGTH = 16;
+
+    private final JavaPlugin plugin;
+    private final PlayerSettingsStore store;
+    private final File backupFolder;
+    private final int keepHourly;
+    private final int keepDaily;
+    private final int keepWeekly;
+    private int taskId = -1;
+
+    /**
+     * @param plugin the JavaPlugin instance
+     * @param store the store to snapshot
+     * @param keepHourly number of most recent hours to keep one snapshot for
+     * @param keepDaily number of most recent days to keep one snapshot for
+     * @param keepWeekly number of most recent weeks to keep one snapshot for
+     */
+    BackupManager(JavaPlugin plugin, PlayerSettingsStore store, int keepHourly, int keepDaily, int keepWeekly) {
+        this.plugin = plugin;
+        this.store = store;
+        this.backupFolder = getBackupFolder(plugin.getDataFolder());
+        this.keepHourly = keepHourly;
+        this.keepDaily = keepDaily;
+        this.keepWeekly = keepWeekly;
+    }
+
+    /**
+     * @param dataFolder the plugin data folder
+     * @return the folder holding backup snapshots
+     */
+    static File getBackupFolder(File dataFolder) {
+        return new File(dataFolder, "backups");
+    }
+
+    /**
+     * Lists snapshot files, newest first
+     * @param backupFolder the folder holding backup snapshots
+     * @return snapshot files; empty if there are none
+     */
+    static File[] listSnapshots(File backupFolder) {
+        File[] snapshots = backupFolder.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (snapshots == null) {
+            return new File[0];
+        }
+        // Timestamps sort lexically
+        Arrays.sort(snapshots, (a, b) -> b.getName().compareTo(a.getName()));
+        return snapshots;
+    }
+
+    /**
+     * Reads a compressed snapshot
+     * @param snapshot the snapshot file
+     * @return the snapshot contents in players.yml layout
+     * @throws IOException if the file cannot be read or decompressed
+     */
+    static String readSnapshot(File snapshot) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(snapshot.toPath()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Starts the backup task
+     * @param intervalMinutes minutes between snapshots
+     */
+    void start(long intervalMinutes) {
+        // A snapshot interrupted by a crash leaves its temp file behind
+        File[] tempFiles = backupFolder.listFiles((dir, name) -> name.endsWith(".tmp"));
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles) {
+                deleteQuietly(tempFile);
+            }
+        }
+
+        long intervalTicks = intervalMinutes * 60 * 20;
+        // First snapshot shortly after startup, once loading has settled
+        taskId = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                this::createSnapshot, 20 * 60, intervalTicks).getTaskId();
+    }
+
+    /**
+     * Stops the backup task
+     */
+    void stop() {
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+
+    /**
+     * Writes a new snapshot unless nothing changed since the newest one, then applies retention.
+     * Runs on an async thread. The store does not hold its lock while the snapshot writer
+     * compresses each entry, so lookups and saves carry on during a backup.
+     */
+    void createSnapshot() {
+        if (!backupFolder.exists() && !backupFolder.mkdirs()) {
+            plugin.getLogger().warning("Could not create backups folder");
+            return;
+        }
+
+        String timestamp = LocalDateTime.now().format(TIMESTAMP);
+        File tempFile = new File(backupFolder, PREFIX + timestamp + SUFFIX + ".tmp");
+        long contentHash;
+        int players;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(tempFile.toPath())), StandardCharsets.UTF_8))) {
+            SnapshotWriter snapshotWriter = new SnapshotWriter(writer);
+            store.forEach(snapshotWriter);
+            if (snapshotWriter.error != null) {
+                throw snapshotWriter.error;
+            }
+            contentHash = snapshotWriter.contentHash;
+            players = snapshotWriter.count;
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to create backup: " + e.getMessage());
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        String hash = String.format("%016x", contentHash);
+        File[] existing = listSnapshots(backupFolder);
+        if (existing.length > 0 && hash.equals(hashOf(existing[0]))) {
+            // Nothing changed since the newest snapshot
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        File backupFile = new File(backupFolder, PREFIX + timestamp + "-" + hash + SUFFIX);
+        try {
+            DurableFiles.replace(tempFile.toPath(), backupFile.toPath());
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to create backup: " + e.getMessage());
+            deleteQuietly(tempFile);
+            return;
+        }
+        plugin.getLogger().info("Created backup: " + backupFile.getName() + " (" + players + " players)");
+
+        applyRetention();
+    }
+
+    /**
+     * Keeps the newest snapshot of each of the last N hours, days and weeks and deletes the rest
+     */
+    private void applyRetention() {
+        Set<LocalDateTime> hours = new HashSet<>();
+        Set<LocalDateTime> days = new HashSet<>();
+        Set<Integer> weeks = new HashSet<>();
+
+        for (File snapshot : listSnapshots(backupFolder)) {
+            LocalDateTime time = timeOf(snapshot);
+            if (time == null) {
+                continue; // Not one of ours; leave it alone
+            }
+
+            boolean keep = false;
+            if (hours.size() < keepHourly && hours.add(time.truncatedTo(ChronoUnit.HOURS))) {
+                keep = true;
+            }
+            if (days.size() < keepDaily && days.add(time.truncatedTo(ChronoUnit.DAYS))) {
+                keep = true;
+            }
+            int week = time.get(IsoFields.WEEK_BASED_YEAR) * 100 + time.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            if (weeks.size() < keepWeekly && weeks.add(week)) {
+                keep = true;
+            }
+
+            if (!keep && snapshot.delete()) {
+                plugin.getLogger().info("Deleted old backup: " + snapshot.getName());
+            }
+        }
+    }
+
+    private static LocalDateTime timeOf(File snapshot) {
+        String name = snapshot.getName();
+        if (name.length() < PREFIX.length() + TIMESTAMP_LENGTH) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(name.substring(PREFIX.length(), PREFIX.length() + TIMESTAMP_LENGTH), TIMESTAMP);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String hashOf(File snapshot) {
+        String name = snapshot.getName();
+        int end = name.length() - SUFFIX.length();
+        int start = end - HASH_LENGTH;
+        return start > PREFIX.length() + TIMESTAMP_LENGTH ? name.substring(start, end) : null;
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Streams entries in players.yml layout while computing an order-independent
+     * content hash, so stores that iterate in hash order still deduplicate.
+     */
+    private static final class SnapshotWriter implements BiConsumer<UUID, PlayerSettings> {
+        private final Writer writer;
+        private long contentHash;
+        private int count;
+        private IOException error;
+
+        SnapshotWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void accept(UUID uuid, PlayerSettings settings) {
+            if (error != null) {
+                return;
+            }
+            String entry = YamlSettingsCodec.formatEntry(uuid, settings);
+            try {
+                writer.write(entry);
+            } catch (IOException e) {
+                error = e;
+                return;
+            }
+            contentHash += YamlSettingsCodec.entryHash(entry);
+            count++;
+        }
+    }
+}
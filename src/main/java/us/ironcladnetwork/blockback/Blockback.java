@@ -25,10 +25,23 @@ public final class Blockback extends JavaPlugin {
     public void onEnable() {
         // Log plugin startup
         getLogger().info("BlockBack is starting...");
+        StartupTimer timer = new StartupTimer();
 
-        // Initialize managers for persistent settings and sound configuration
+        // Initialize managers for plugin configuration, persistent settings, sound configuration and revert rules.
+        // Player data finishes loading in the background and logs its own timings when ready.
+        PluginConfig.init(this);
+        timer.phase("config");
         PlayerDataManager.init(this);
+        timer.phase("player data");
         SoundConfig.init(this);
+        SoundCoalescer.init(this);
+        timer.phase("sounds");
+        RevertRules.init(this);
+        timer.phase("rules");
+        AreaReverter.init(this);
+        RateLimiter.init();
+        PermissionCache.init(this);
+        timer.phase("permissions");
 
         // Register the event listener
         try {
@@ -40,6 +53,7 @@ public final class Blockback extends JavaPlugin {
             Bukkit.getPluginManager().disablePlugin(this);
             return;
         }
+        timer.phase("listener");
 
         // Create one instance of CommandManager and register for all commands.
         CommandManager commandManager;
@@ -82,8 +96,10 @@ public final class Blockback extends JavaPlugin {
             }
         }
 
+        timer.phase("commands");
+
         // Log successful load
-        getLogger().info("BlockBack has loaded successfully!");
+        getLogger().info("BlockBack has loaded successfully in " + timer.summary());
     }
 
     /**
@@ -94,6 +110,21 @@ public final class Blockback extends JavaPlugin {
     public void onDisable() {
         getLogger().info("BlockBack is shutting down...");
         
+        PermissionCache permissions = PermissionCache.getInstance();
+        if (permissions != null) {
+            permissions.stop();
+        }
+        
+        AreaReverter area = AreaReverter.getInstance();
+        if (area != null) {
+            area.stop();
+        }
+        
+        SoundCoalescer sounds = SoundCoalescer.getInstance();
+        if (sounds != null) {
+            sounds.stop();
+        }
+        
         // Ensure all player data saves complete before shutdown
         PlayerDataManager manager = PlayerDataManager.getInstance();
         if (manager != null) {
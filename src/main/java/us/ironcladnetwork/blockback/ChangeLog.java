@@ -0,0 +1,270 @@
+package us.ironcladnetwork.blockback;
+
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Append-only file through which servers sharing a store announce changed players.
+ * <p>
+ * Each line records one change: the id of the server that made it, the player's UUID
+ * and either their new settings or "delete". Every server appends under an exclusive
+ * file lock and polls the file for lines appended by others. Lines carry the settings
+ * themselves, so a change can be applied before the writer's database commit is visible.
+ * <p>
+ * When the file grows past its size limit the next writer truncates it and starts a new
+ * generation, recorded in the header line. A reader that finds a different generation,
+ * or a file shorter than its position, may have missed changes and is told to reset.
+ */
+final class ChangeLog {
+
+    private static final String HEADER_PREFIX = "#blockback-changes ";
+    private static final String DELETE = "delete";
+    private static final int READ_CHUNK = 8192;
+
+    /**
+     * Receives changes made by other servers
+     */
+    interface Listener {
+        /**
+         * @param uuid the changed player
+         * @param settings the player's new settings, or null if they were deleted
+         */
+        void changed(UUID uuid, PlayerSettings settings);
+
+        /**
+         * Changes may have been missed; anything cached from the shared store is suspect
+         */
+        void reset();
+    }
+
+    private final File file;
+    private final Logger logger;
+    private final long maxBytes;
+    private final String serverId;
+    private FileChannel channel;
+
+    // Reader state; guarded by this
+    private long generation = -1;
+    private long position;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+    /**
+     * @param file the shared change log
+     * @param logger logger for status and error messages
+     * @param maxBytes size at which the next writer starts a new generation
+     */
+    ChangeLog(File file, Logger logger, long maxBytes) {
+        this.file = file;
+        this.logger = logger;
+        this.maxBytes = maxBytes;
+        // Identifies this server's own lines so they are not applied twice
+        this.serverId = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    }
+
+    /**
+     * Opens the log, skipping changes made before this server started
+     * @throws IOException if the file cannot be opened
+     */
+    synchronized void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (FileLock lock = channel.lock()) {
+            if (channel.size() == 0) {
+                writeHeader(newGeneration());
+            }
+            generation = readGeneration();
+            position = channel.size();
+        }
+    }
+
+    /**
+     * Announces a single change
+     * @param uuid the changed player
+     * @param settings the new settings, or null for a delete
+     */
+    void append(UUID uuid, PlayerSettings settings) {
+        StringBuilder lines = new StringBuilder(80);
+        formatLine(lines, uuid, settings);
+        write(lines);
+    }
+
+    /**
+     * Announces a batch of changes with a single append
+     * @param entries the changed players and their new settings
+     */
+    void appendAll(Map<UUID, PlayerSettings> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder(entries.size() * 80);
+        for (Map.Entry<UUID, PlayerSettings> entry : entries.entrySet()) {
+            formatLine(lines, entry.getKey(), entry.getValue());
+        }
+        write(lines);
+    }
+
+    private void formatLine(StringBuilder lines, UUID uuid, PlayerSettings settings) {
+        lines.append(serverId).append(' ').append(uuid).append(' ');
+        if (settings == null) {
+            lines.append(DELETE);
+        } else {
+            lines.append(settings.disabled);
+            if (settings.name != null) {
+                lines.append(' ').append(settings.name.replaceAll("\\s", "_"));
+            }
+        }
+        lines.append('\n');
+    }
+
+    private synchronized void write(CharSequence lines) {
+        if (channel == null) {
+            return;
+        }
+        try (FileLock lock = channel.lock()) {
+            if (channel.size() > maxBytes) {
+                // Readers notice the new generation and reset
+                channel.truncate(0);
+                writeHeader(newGeneration());
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            long offset = channel.size();
+            while (bytes.hasRemaining()) {
+                offset += channel.write(bytes, offset);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not append to shared change log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads lines appended since the last poll and passes other servers' changes on
+     * @param listener receives the changes
+     * @return number of changes passed on
+     */
+    synchronized int poll(Listener listener) {
+        if (channel == null) {
+            return 0;
+        }
+        // Shared lock so a writer cannot rotate the file while it is being read
+        try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            long size = channel.size();
+            long current = readGeneration();
+            if (current != generation || size < position) {
+                // Rotated since the last poll; lines in between are gone
+                generation = current;
+                position = headerLength(current);
+                partialLine.reset();
+                listener.reset();
+            }
+
+            int applied = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK);
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        if (applyLine(partialLine.toString(StandardCharsets.UTF_8), listener)) {
+                            applied++;
+                        }
+                        partialLine.reset();
+                    } else {
+                        partialLine.write(bytes[i]);
+                    }
+                }
+            }
+            return applied;
+        } catch (IOException e) {
+            logger.warning("Could not read shared change log: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private boolean applyLine(String line, Listener listener) {
+        if (line.startsWith("#")) {
+            return false;
+        }
+        String[] fields = line.split(" ", 4);
+        if (fields.length < 3 || fields[0].equals(serverId)) {
+            return false;
+        }
+        try {
+            UUID uuid = UUID.fromString(fields[1]);
+            if (fields[2].equals(DELETE)) {
+                listener.changed(uuid, null);
+            } else {
+                String name = fields.length > 3 ? fields[3] : null;
+                listener.changed(uuid, new PlayerSettings(name, Integer.parseInt(fields[2]) & Feature.ALL_MASK));
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            logger.warning("Skipping malformed line in shared change log: " + line);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the log file
+     */
+    synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Could not close shared change log: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static long newGeneration() {
+        return System.currentTimeMillis();
+    }
+
+    private void writeHeader(long newGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap((HEADER_PREFIX + newGeneration + "\n").getBytes(StandardCharsets.UTF_8));
+        long offset = 0;
+        while (header.hasRemaining()) {
+            offset += channel.write(header, offset);
+        }
+    }
+
+    private static long headerLength(long generation) {
+        return (HEADER_PREFIX + generation + "\n").length();
+    }
+
+    /**
+     * @return the generation in the header, or 0 if the header has not been written yet
+     */
+    private long readGeneration() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(64);
+        channel.read(header, 0);
+        String text = new String(header.array(), 0, header.position(), StandardCharsets.UTF_8);
+        int end = text.indexOf('\n');
+        if (!text.startsWith(HEADER_PREFIX) || end < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(text.substring(HEADER_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -4,8 +4,11 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Locale;
+
 /**
  * Handles all commands for the BlockBack plugin including individual feature toggles
  * and the main command with status/reload functionality.
@@ -15,13 +18,15 @@ import org.bukkit.entity.Player;
  * - /pathback - Toggle path reversion feature  
  * - /farmback - Toggle farmland reversion feature
  * - /blockback - Main command with status and reload subcommands
+ * 
+ * The stats and migrate subcommands may also be run from the console.
  */
 public class CommandManager implements CommandExecutor {
 
     /**
      * Processes all BlockBack commands and routes them to appropriate handlers.
      * 
-     * @param sender the command sender (must be a player for most commands)
+     * @param sender the command sender (must be a player except for stats and migrate)
      * @param command the command being executed
      * @param label the command label used
      * @param args command arguments
@@ -29,7 +34,10 @@ public class CommandManager implements CommandExecutor {
      */
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
-        if (!(sender instanceof Player player)) {
+        boolean consoleAllowed = sender instanceof ConsoleCommandSender
+                && command.getName().equalsIgnoreCase("blockback") && args.length > 0
+                && (args[0].equalsIgnoreCase("stats") || args[0].equalsIgnoreCase("migrate"));
+        if (!(sender instanceof Player) && !consoleAllowed) {
             sender.sendMessage(ChatColor.RED + "This command can only be used by players.");
             return true;
         }
@@ -40,43 +48,54 @@ public class CommandManager implements CommandExecutor {
             sender.sendMessage(ChatColor.RED + "Plugin not properly initialized. Please contact an administrator.");
             return true;
         }
-
-        if (command.getName().equalsIgnoreCase("barkback")) {
-            return handleToggleCommand(player, playerData, "BarkBack", "blockback.bark",
-                                     playerData::isBarkBackEnabled, playerData::setBarkBack);
-        }
-
-        if (command.getName().equalsIgnoreCase("pathback")) {
-            return handleToggleCommand(player, playerData, "PathBack", "blockback.path",
-                                     playerData::isPathBackEnabled, playerData::setPathBack);
+        if (!playerData.isReady()) {
+            sender.sendMessage(ChatColor.YELLOW + "Player data is still loading. Please try again in a moment.");
+            return true;
         }
 
-        if (command.getName().equalsIgnoreCase("farmback")) {
-            return handleToggleCommand(player, playerData, "FarmBack", "blockback.farm",
-                                     playerData::isFarmBackEnabled, playerData::setFarmBack);
+        // Each feature's toggle command is named after its key
+        Feature feature = Feature.fromKey(command.getName());
+        if (feature != null) {
+            return handleToggleCommand((Player) sender, playerData, feature);
         }
 
         if (command.getName().equalsIgnoreCase("blockback")) {
+            // Run from the console, so there is no player
+            if (args.length > 0 && args[0].equalsIgnoreCase("stats")) {
+                return handleStatsCommand(sender, playerData);
+            }
+            if (args.length > 0 && args[0].equalsIgnoreCase("migrate")) {
+                return handleMigrateCommand(sender, playerData, args);
+            }
+            
+            Player player = (Player) sender;
             // Main command with subcommands
             if (args.length == 0) {
                 // Show help/status
                 player.sendMessage(ChatColor.GOLD + "=== BlockBack Status ===");
                 
-                String barkStatus = playerData.isBarkBackEnabled(player) ? 
-                    ChatColor.GREEN + "Enabled" : ChatColor.RED + "Disabled";
-                String pathStatus = playerData.isPathBackEnabled(player) ? 
-                    ChatColor.GREEN + "Enabled" : ChatColor.RED + "Disabled";
-                String farmStatus = playerData.isFarmBackEnabled(player) ? 
-                    ChatColor.GREEN + "Enabled" : ChatColor.RED + "Disabled";
-                
-                player.sendMessage(ChatColor.YELLOW + "BarkBack: " + barkStatus);
-                player.sendMessage(ChatColor.YELLOW + "PathBack: " + pathStatus);
-                player.sendMessage(ChatColor.YELLOW + "FarmBack: " + farmStatus);
+                StringBuilder toggleCommands = new StringBuilder();
+                for (Feature each : Feature.values()) {
+                    String status = playerData.isEnabled(player, each) ? 
+                        ChatColor.GREEN + "Enabled" : ChatColor.RED + "Disabled";
+                    player.sendMessage(ChatColor.YELLOW + each.getDisplayName() + ": " + status);
+                    
+                    if (toggleCommands.length() > 0) {
+                        toggleCommands.append(", ");
+                    }
+                    toggleCommands.append('/').append(each.getKey());
+                }
                 
-                player.sendMessage(ChatColor.GRAY + "Use /barkback, /pathback, /farmback to toggle features.");
+                player.sendMessage(ChatColor.GRAY + "Use " + toggleCommands + " to toggle features.");
                 if (player.hasPermission("blockback.reload")) {
                     player.sendMessage(ChatColor.GRAY + "Use /blockback reload to reload configuration.");
                 }
+                if (player.hasPermission("blockback.stats")) {
+                    player.sendMessage(ChatColor.GRAY + "Use /blockback stats to view cache and rate limit statistics.");
+                }
+                if (player.hasPermission("blockback.migrate")) {
+                    player.sendMessage(ChatColor.GRAY + "Use /blockback migrate <from> <to> to change storage layout.");
+                }
                 return true;
             }
             
@@ -86,14 +105,36 @@ public class CommandManager implements CommandExecutor {
                     return true;
                 }
                 
+                if (playerData.isMigrating()) {
+                    player.sendMessage(ChatColor.RED + "A storage migration is in progress. Reload after restarting.");
+                    return true;
+                }
+                
                 // Reload configurations
                 SoundConfig soundConfig = SoundConfig.getInstance();
                 if (soundConfig == null) {
                     player.sendMessage(ChatColor.RED + "Sound configuration not initialized. Please contact an administrator.");
                     return true;
                 }
+                PluginConfig pluginConfig = PluginConfig.getInstance();
+                if (pluginConfig != null) {
+                    pluginConfig.reloadConfig();
+                }
                 soundConfig.reloadConfig();
+                RevertRules revertRules = RevertRules.getInstance();
+                if (revertRules != null) {
+                    revertRules.reloadConfig();
+                }
                 playerData.reloadConfig();
+                PermissionCache permissions = PermissionCache.getInstance();
+                if (permissions != null) {
+                    // Resolved again on next use, in case permissions were edited alongside
+                    permissions.reloadConfig();
+                }
+                RateLimiter limiter = RateLimiter.getInstance();
+                if (limiter != null) {
+                    limiter.reloadConfig();
+                }
                 
                 player.sendMessage(ChatColor.GREEN + "BlockBack configuration reloaded successfully!");
                 return true;
@@ -107,32 +148,118 @@ public class CommandManager implements CommandExecutor {
         return false;
     }
     
+    /**
+     * Shows cache and rate limit statistics
+     * @param sender the player or console executing the command
+     * @param playerData the PlayerDataManager instance
+     * @return true if command was handled
+     */
+    private boolean handleStatsCommand(CommandSender sender, PlayerDataManager playerData) {
+        if (!sender.hasPermission("blockback.stats")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
+            return true;
+        }
+        
+        long hits = playerData.getCacheHits();
+        long misses = playerData.getCacheMisses();
+        long lookups = hits + misses;
+        String hitRate = lookups > 0 ? String.format("%.1f%%", hits * 100.0 / lookups) : "n/a";
+        
+        sender.sendMessage(ChatColor.GOLD + "=== BlockBack Cache ===");
+        sender.sendMessage(ChatColor.YELLOW + "Cached players: " + ChatColor.WHITE + playerData.getCacheSize()
+                + ChatColor.GRAY + " (" + playerData.getPinnedCacheSize() + " online)");
+        sender.sendMessage(ChatColor.YELLOW + "Hits: " + ChatColor.WHITE + hits
+                + ChatColor.YELLOW + "  Misses: " + ChatColor.WHITE + misses
+                + ChatColor.YELLOW + "  Hit rate: " + ChatColor.WHITE + hitRate);
+        sender.sendMessage(ChatColor.YELLOW + "Evictions: " + ChatColor.WHITE + playerData.getCacheEvictions());
+        RateLimiter limiter = RateLimiter.getInstance();
+        if (limiter != null) {
+            sender.sendMessage(ChatColor.YELLOW + "Rate-limited reverts: " + ChatColor.WHITE + limiter.getRejected());
+        }
+        return true;
+    }
+    
+    /**
+     * Starts a live migration to another storage layout
+     * @param sender the player or console executing the command
+     * @param playerData the PlayerDataManager instance
+     * @param args command arguments, starting with "migrate"
+     * @return true if command was handled
+     */
+    private boolean handleMigrateCommand(CommandSender sender, PlayerDataManager playerData, String[] args) {
+        if (!sender.hasPermission("blockback.migrate")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
+            return true;
+        }
+        if (args.length != 3) {
+            sender.sendMessage(ChatColor.RED + "Usage: /blockback migrate <from> <to>");
+            sender.sendMessage(ChatColor.GRAY + "Storage modes: " + storageModeList());
+            return true;
+        }
+        
+        StorageMode from = StorageMode.fromString(args[1]);
+        StorageMode to = StorageMode.fromString(args[2]);
+        if (from == null || to == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown storage mode. Use one of: " + storageModeList() + ".");
+            return true;
+        }
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        StorageMode current = pluginConfig != null ? pluginConfig.getStorageMode() : StorageMode.YAML;
+        if (from != current) {
+            sender.sendMessage(ChatColor.RED + "This server is using " + current.name().toLowerCase(Locale.ROOT)
+                    + " storage. Migrate a stopped server's data folder with the offline tool instead.");
+            return true;
+        }
+        
+        String problem = playerData.migrate(to, message -> {
+            // A player who logged off no longer gets progress; the console always does
+            if (!(sender instanceof Player player) || player.isOnline()) {
+                sender.sendMessage(ChatColor.YELLOW + message);
+            }
+        });
+        if (problem != null) {
+            sender.sendMessage(ChatColor.RED + problem);
+        } else {
+            sender.sendMessage(ChatColor.GREEN + "Migrating to " + to.name().toLowerCase(Locale.ROOT)
+                    + " storage in the background. Settings changes are saved once the copy is verified.");
+        }
+        return true;
+    }
+    
+    /**
+     * @return every storage mode as typed in commands and config.yml, comma separated
+     */
+    private static String storageModeList() {
+        StringBuilder modes = new StringBuilder();
+        for (StorageMode mode : StorageMode.values()) {
+            if (modes.length() > 0) {
+                modes.append(", ");
+            }
+            modes.append(mode.name().toLowerCase(Locale.ROOT));
+        }
+        return modes.toString();
+    }
+    
     /**
      * Helper method to handle feature toggle commands
      * @param player the player executing the command
      * @param playerData the PlayerDataManager instance
-     * @param featureName the name of the feature (e.g., "BarkBack")
-     * @param permission the permission to check (e.g., "blockback.bark")
-     * @param getCurrentState function to get current state
-     * @param setNewState function to set new state
+     * @param feature the feature to toggle
      * @return true if command was handled
      */
-    private boolean handleToggleCommand(Player player, PlayerDataManager playerData, 
-                                      String featureName, String permission,
-                                      java.util.function.Function<Player, Boolean> getCurrentState,
-                                      java.util.function.BiConsumer<Player, Boolean> setNewState) {
-        if (!player.hasPermission(permission)) {
+    private boolean handleToggleCommand(Player player, PlayerDataManager playerData, Feature feature) {
+        if (!player.hasPermission(feature.getPermission())) {
             player.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
             return true;
         }
         
         // Toggle the setting
-        boolean current = getCurrentState.apply(player);
-        setNewState.accept(player, !current);
+        boolean current = playerData.isEnabled(player, feature);
+        playerData.setEnabled(player, feature, !current);
         
         // Send confirmation message
         String status = !current ? ChatColor.GREEN + "enabled" : ChatColor.RED + "disabled";
-        player.sendMessage(ChatColor.YELLOW + featureName + " is now " + status + ChatColor.YELLOW + ".");
+        player.sendMessage(ChatColor.YELLOW + feature.getDisplayName() + " is now " + status + ChatColor.YELLOW + ".");
         
         return true;
     }
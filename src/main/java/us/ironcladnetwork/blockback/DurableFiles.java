@@ -0,0 +1,175 @@
+package us.ironcladnetwork.blockback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-consistent file replacement and checksum trailers for text data files.
+ * <p>
+ * A file is replaced by writing a sibling temp file, forcing it to disk, moving it over
+ * the original atomically and then forcing the directory, so after a crash either the
+ * old or the new contents are on disk, never a mix.
+ * <p>
+ * YAML data files end with a comment line holding the CRC32 of everything before it:
+ * <pre>
+ * # crc32: 1a2b3c4d
+ * </pre>
+ * YAML parsers ignore it, so the file stays readable and editable. A file without the
+ * line (written by an older version, or edited by hand with the line removed) is
+ * accepted after ordinary validation; a file whose line does not match is damaged.
+ */
+final class DurableFiles {
+
+    /** Start of the checksum trailer line. */
+    static final String CHECKSUM_PREFIX = "# crc32: ";
+
+    /**
+     * Result of checking a file against its checksum trailer
+     */
+    enum Integrity {
+        /** The trailer matches the contents. */
+        VALID,
+        /** There is no trailer to check. */
+        MISSING,
+        /** The trailer does not match; the file was damaged or changed outside the plugin. */
+        MISMATCH
+    }
+
+    private DurableFiles() {
+    }
+
+    /**
+     * Durably replaces a file with new contents
+     * @param target the file to replace
+     * @param data the new contents
+     * @throws IOException if the contents could not be written; the original file is left as it was
+     */
+    static void write(Path target, byte[] data) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        move(temp, target);
+    }
+
+    /**
+     * Durably replaces a file with a fully written temp file
+     * @param temp the new contents, in the same directory as target
+     * @param target the file to replace
+     * @throws IOException if the temp file could not be forced or moved
+     */
+    static void replace(Path temp, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        move(temp, target);
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Same directory, so this only happens on unusual filesystems; still a rename
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(target.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Makes a rename in the directory durable. Not supported on every platform,
+     * where the rename is left to the filesystem's own ordering.
+     */
+    private static void forceDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Windows cannot open directories as channels
+        }
+    }
+
+    /**
+     * Appends a checksum trailer, replacing any trailer already at the end
+     * @param content YAML text
+     * @return the text followed by its checksum line
+     */
+    static String appendChecksum(String content) {
+        String body = stripChecksum(content);
+        if (!body.isEmpty() && !body.endsWith("\n")) {
+            body += "\n";
+        }
+        return body + checksumLine(crc(body.getBytes(StandardCharsets.UTF_8), 0, -1));
+    }
+
+    /**
+     * @param crc CRC32 of the preceding bytes
+     * @return the trailer line for the checksum, including its newline
+     */
+    static String checksumLine(long crc) {
+        return CHECKSUM_PREFIX + String.format("%08x", crc) + "\n";
+    }
+
+    /**
+     * Checks a file's contents against its trailer in one pass, without parsing them
+     * @param data the complete file contents
+     * @return whether the trailer matches, is missing or does not match
+     */
+    static Integrity verify(byte[] data) {
+        int end = data.length;
+        while (end > 0 && (data[end - 1] == '\n' || data[end - 1] == '\r')) {
+            end--;
+        }
+        int lineStart = end;
+        while (lineStart > 0 && data[lineStart - 1] != '\n') {
+            lineStart--;
+        }
+        String last = new String(data, lineStart, end - lineStart, StandardCharsets.UTF_8);
+        if (!last.startsWith(CHECKSUM_PREFIX)) {
+            return Integrity.MISSING;
+        }
+        try {
+            long expected = Long.parseLong(last.substring(CHECKSUM_PREFIX.length()).trim(), 16);
+            return expected == crc(data, 0, lineStart) ? Integrity.VALID : Integrity.MISMATCH;
+        } catch (NumberFormatException e) {
+            return Integrity.MISMATCH;
+        }
+    }
+
+    private static String stripChecksum(String content) {
+        String body = content;
+        while (true) {
+            String trimmed = body.endsWith("\n") ? body.substring(0, body.length() - 1) : body;
+            int lineStart = trimmed.lastIndexOf('\n') + 1;
+            String last = trimmed.substring(lineStart);
+            if (last.startsWith(CHECKSUM_PREFIX) || (last.isBlank() && lineStart > 0)) {
+                body = trimmed.substring(0, lineStart);
+            } else {
+                return body;
+            }
+        }
+    }
+
+    private static long crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length < 0 ? data.length - offset : length);
+        return crc.getValue();
+    }
+}
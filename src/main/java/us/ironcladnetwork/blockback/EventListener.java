@@ -1,22 +1,18 @@
 package us.ironcladnetwork.blockback;
 
-import org.bukkit.Axis;
-import org.bukkit.Material;
 import org.bukkit.block.Block;
-import org.bukkit.block.data.BlockData;
-import org.bukkit.block.data.Orientable;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Handles player interaction events to provide BlockBack functionality.
  * Listens for right-click events with appropriate tools and reverts blocks
@@ -24,55 +20,10 @@ import java.util.Map;
  */
 public class EventListener implements Listener {
 
-    private static final EnumSet<Material> AXES = EnumSet.of(
-            Material.WOODEN_AXE, Material.STONE_AXE, Material.GOLDEN_AXE,
-            Material.IRON_AXE, Material.DIAMOND_AXE, Material.NETHERITE_AXE
-    );
-
-    private static final EnumSet<Material> SHOVELS = EnumSet.of(
-            Material.WOODEN_SHOVEL, Material.STONE_SHOVEL, Material.GOLDEN_SHOVEL,
-            Material.IRON_SHOVEL, Material.DIAMOND_SHOVEL, Material.NETHERITE_SHOVEL
-    );
-
-    private static final EnumSet<Material> HOES = EnumSet.of(
-            Material.WOODEN_HOE, Material.STONE_HOE, Material.GOLDEN_HOE,
-            Material.IRON_HOE, Material.DIAMOND_HOE, Material.NETHERITE_HOE
-    );
-
-    private static final Map<Material, Material> STRIPPED_TO_UNSTRIPPED = new HashMap<>();
-    
-
-    static {
-        // --------------------------------------------------
-        // 1) BarkBack Logic: Mapping Stripped -> Unstripped
-        // --------------------------------------------------
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_OAK_LOG, Material.OAK_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_OAK_WOOD, Material.OAK_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_SPRUCE_LOG, Material.SPRUCE_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_SPRUCE_WOOD, Material.SPRUCE_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_BIRCH_LOG, Material.BIRCH_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_BIRCH_WOOD, Material.BIRCH_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_JUNGLE_LOG, Material.JUNGLE_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_JUNGLE_WOOD, Material.JUNGLE_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_ACACIA_LOG, Material.ACACIA_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_ACACIA_WOOD, Material.ACACIA_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_DARK_OAK_LOG, Material.DARK_OAK_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_DARK_OAK_WOOD, Material.DARK_OAK_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_MANGROVE_LOG, Material.MANGROVE_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_MANGROVE_WOOD, Material.MANGROVE_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_CHERRY_LOG, Material.CHERRY_LOG);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_CHERRY_WOOD, Material.CHERRY_WOOD);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_CRIMSON_HYPHAE, Material.CRIMSON_HYPHAE);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_CRIMSON_STEM, Material.CRIMSON_STEM);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_WARPED_HYPHAE, Material.WARPED_HYPHAE);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_WARPED_STEM, Material.WARPED_STEM);
-        STRIPPED_TO_UNSTRIPPED.put(Material.STRIPPED_BAMBOO_BLOCK, Material.BAMBOO_BLOCK);
-    }
-
     /**
      * Handles player right-click events on blocks to provide BlockBack functionality.
-     * Checks for appropriate tools, permissions, and block types to determine
-     * if a block should be reverted.
+     * The held tool and the clicked block are matched against the compiled revert rules
+     * first; permissions and settings are only checked once a rule applies.
      * 
      * @param e the player interact event
      */
@@ -82,10 +33,15 @@ public class EventListener implements Listener {
         if (e.getAction() != Action.RIGHT_CLICK_BLOCK) return;
 
         Block block = e.getClickedBlock();
-        Player player = e.getPlayer();
         ItemStack item = e.getItem();
 
         if (block == null || item == null) return;
+
+        RevertRules rules = RevertRules.getInstance();
+        if (rules == null) return;
+        RevertMatcher.Revert revert = rules.match(item.getType(), block.getType());
+        if (revert == null) return;
+        Feature feature = revert.feature;
         
         // Cache instances to avoid multiple getInstance() calls
         PlayerDataManager playerData = PlayerDataManager.getInstance();
@@ -96,105 +52,105 @@ public class EventListener implements Listener {
             return; // Silently fail to avoid spam in logs during event processing
         }
         
-        // Cache item type to avoid multiple getType() calls and improve performance
-        Material itemType = item.getType();
-
-        // --------------------------
-        // 1) BarkBack (Stripped Logs)
-        // --------------------------
-        if (player.hasPermission("blockback.bark")
-                && playerData.isBarkBackEnabled(player)
-                && AXES.contains(itemType)
-                && block.getBlockData() instanceof Orientable) {
-
-            Material unstrippedMaterial = STRIPPED_TO_UNSTRIPPED.get(block.getType());
-            if (unstrippedMaterial != null) {
-                Orientable orientable = (Orientable) block.getBlockData();
-                Axis axis = orientable.getAxis();
-
-                // Replace block but preserve axis
-                if (axis != null) {
-                    setBlockWithAxis(block, unstrippedMaterial, axis);
-                } else {
-                    // If axis is null, just set the block type without preserving orientation
-                    block.setType(unstrippedMaterial);
-                }
-
-                // Play configurable sound
-                SoundConfig.SoundSettings soundSettings = soundConfig.getBarkBackSettings();
-                if (soundSettings.enabled) {
-                    player.playSound(player.getLocation(),
-                            soundSettings.sound,
-                            soundSettings.category,
-                            soundSettings.volume,
-                            soundSettings.pitch);
-                }
-                e.setCancelled(true);
-                return;
-            }
+        // Player settings are still loading in the background; leave the block alone
+        if (!playerData.isReady()) {
+            return;
         }
 
-        // -----------------------------
-        // 2) PathBack (Path -> Dirt)
-        // -----------------------------
-        if (player.hasPermission("blockback.path")
-                && playerData.isPathBackEnabled(player)
-                && SHOVELS.contains(itemType)
-                && block.getType() == Material.DIRT_PATH) {
+        Player player = e.getPlayer();
+        PermissionCache permissions = PermissionCache.getInstance();
+        boolean permitted = permissions != null
+                ? permissions.hasPermission(player, feature)
+                : player.hasPermission(feature.getPermission());
+        if (!permitted || !playerData.isEnabled(player, feature)) {
+            return;
+        }
 
-            block.setType(Material.DIRT);
-            
-            // Play configurable sound
-            SoundConfig.SoundSettings soundSettings = soundConfig.getPathBackSettings();
-            if (soundSettings.enabled) {
-                player.playSound(player.getLocation(),
-                        soundSettings.sound,
-                        soundSettings.category,
-                        soundSettings.volume,
-                        soundSettings.pitch);
-            }
+        // Clicks beyond the player's rate are swallowed without touching the block
+        RateLimiter limiter = RateLimiter.getInstance();
+        if (limiter != null && !limiter.tryAcquire(player)) {
             e.setCancelled(true);
             return;
         }
 
-        // -----------------------------
-        // 3) FarmBack (Farmland -> Dirt)
-        // -----------------------------
-        if (player.hasPermission("blockback.farm")
-                && playerData.isFarmBackEnabled(player)
-                && HOES.contains(itemType)
-                && block.getType() == Material.FARMLAND) {
-            block.setType(Material.DIRT);
-            
-            // Play configurable sound
-            SoundConfig.SoundSettings soundSettings = soundConfig.getFarmBackSettings();
-            if (soundSettings.enabled) {
+        // Sneaking with area permission reverts the connected blocks too, over the next ticks
+        AreaReverter area = AreaReverter.getInstance();
+        if (!player.isSneaking() || area == null || !area.start(player, block, revert)) {
+            PluginConfig pluginConfig = PluginConfig.getInstance();
+            // A single write; neighbours are only updated if physics are enabled
+            revert.apply(block, pluginConfig == null || pluginConfig.isRevertPhysics());
+        }
+
+        // Play configurable sound
+        SoundConfig.SoundSettings soundSettings = soundConfig.getSettings(feature);
+        if (soundSettings.enabled) {
+            SoundCoalescer sounds = SoundCoalescer.getInstance();
+            if (sounds != null) {
+                // Rapid reverts share one sound instead of a packet each
+                sounds.play(player, feature, soundSettings);
+            } else {
                 player.playSound(player.getLocation(),
                         soundSettings.sound,
                         soundSettings.category,
                         soundSettings.volume,
                         soundSettings.pitch);
             }
-            e.setCancelled(true);
+        }
+        e.setCancelled(true);
+    }
+
+    /**
+     * Loads the player's settings off the main thread while they are logging in,
+     * so the cache is warm before their first interaction.
+     * Runs at MONITOR so logins denied by other plugins are not loaded.
+     * @param event the async pre-login event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
             return;
         }
+        PlayerDataManager playerData = PlayerDataManager.getInstance();
+        if (playerData != null) {
+            playerData.preload(event.getUniqueId(), event.getName());
+        }
+    }
+
+    /**
+     * Pins the player's cached settings while they are online.
+     * 
+     * @param event the player join event
+     */
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        PlayerDataManager playerData = PlayerDataManager.getInstance();
+        if (playerData != null) {
+            playerData.handleJoin(event.getPlayer());
+        }
+        PermissionCache permissions = PermissionCache.getInstance();
+        if (permissions != null) {
+            permissions.refresh(event.getPlayer());
+        }
     }
+
     /**
-     * Helper to preserve the axis of logs/hyphae-like blocks after changing type.
+     * Resolves the player's permissions again, as permission plugins can grant
+     * different permissions per world.
+     * 
+     * @param event the world change event
      */
-    private void setBlockWithAxis(Block block, Material material, Axis axis) {
-        block.setType(material);
-        BlockData newData = block.getBlockData();
-        if (newData instanceof Orientable && axis != null) {
-            Orientable orientable = (Orientable) newData;
-            orientable.setAxis(axis);
-            block.setBlockData(orientable);
+    @EventHandler
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        PermissionCache permissions = PermissionCache.getInstance();
+        if (permissions != null) {
+            permissions.refresh(event.getPlayer());
         }
     }
 
     /**
-     * Removes player from cache when they disconnect to prevent memory leaks.
-     * This ensures the player cache doesn't grow indefinitely with offline players.
+     * Unpins the player's cached settings when they disconnect so they can be evicted.
+     * They stay cached for a while in case the player rejoins. An unfinished area
+     * revert is stopped.
      * 
      * @param event the player quit event
      */
@@ -202,7 +158,23 @@ public class EventListener implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         PlayerDataManager playerData = PlayerDataManager.getInstance();
         if (playerData != null) {
-            playerData.removeFromCache(event.getPlayer());
+            playerData.handleQuit(event.getPlayer());
+        }
+        PermissionCache permissions = PermissionCache.getInstance();
+        if (permissions != null) {
+            permissions.remove(event.getPlayer());
+        }
+        AreaReverter area = AreaReverter.getInstance();
+        if (area != null) {
+            area.cancel(event.getPlayer());
+        }
+        RateLimiter limiter = RateLimiter.getInstance();
+        if (limiter != null) {
+            limiter.remove(event.getPlayer());
+        }
+        SoundCoalescer sounds = SoundCoalescer.getInstance();
+        if (sounds != null) {
+            sounds.remove(event.getPlayer());
         }
     }
 
@@ -0,0 +1,98 @@
+package us.ironcladnetwork.blockback;
+
+/**
+ * Revert features that players can toggle individually.
+ * <p>
+ * Each feature owns one bit of a player's settings mask, taken from its ordinal.
+ * Masks are persisted, so new features must be appended at the end and existing
+ * constants must never be reordered or removed. The mask records disabled features,
+ * which means a feature added later starts out enabled for every existing player.
+ */
+public enum Feature {
+
+    /** Revert stripped logs and wood back to their bark-covered form. */
+    BARKBACK("barkback", "BarkBack", "blockback.bark", "ITEM_AXE_STRIP"),
+
+    /** Revert dirt paths back to dirt. */
+    PATHBACK("pathback", "PathBack", "blockback.path", "ITEM_SHOVEL_FLATTEN"),
+
+    /** Revert farmland back to dirt. */
+    FARMBACK("farmback", "FarmBack", "blockback.farm", "ITEM_HOE_TILL");
+
+    private static final Feature[] VALUES = values();
+
+    /** Mask with the bit of every known feature set. */
+    public static final int ALL_MASK = (1 << VALUES.length) - 1;
+
+    private final String key;
+    private final String displayName;
+    private final String permission;
+    private final String defaultSound;
+    private final int mask;
+
+    Feature(String key, String displayName, String permission, String defaultSound) {
+        this.key = key;
+        this.displayName = displayName;
+        this.permission = permission;
+        this.defaultSound = defaultSound;
+        this.mask = 1 << ordinal();
+    }
+
+    /**
+     * @return lowercase key used for the toggle command and in players.yml
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return name shown to players in messages
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return permission required to use and toggle the feature
+     */
+    public String getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return name of the Bukkit sound played on a revert unless sounds.yml sets another
+     */
+    public String getDefaultSound() {
+        return defaultSound;
+    }
+
+    /**
+     * @return this feature's bit in a settings mask
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * Looks up a feature by its key.
+     * @param key the feature key, e.g. "barkback"
+     * @return the matching feature, or null if the key is not recognised
+     */
+    public static Feature fromKey(String key) {
+        for (Feature feature : VALUES) {
+            if (feature.key.equalsIgnoreCase(key)) {
+                return feature;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up a feature by its bit index.
+     * @param index the bit index (ordinal)
+     * @return the matching feature, or null if no feature uses the index
+     */
+    public static Feature fromIndex(int index) {
+        return index >= 0 && index < VALUES.length ? VALUES[index] : null;
+    }
+}
@@ -0,0 +1,672 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads the same players.yml as {@link YamlPlayerStore} without keeping it parsed in memory.
+ * <p>
+ * Opening streams the file once and records where each top-level player entry starts
+ * and how long it is. A lookup reads just that entry from disk and parses it on its own,
+ * so memory grows with the players actually looked up rather than with every player
+ * the server has ever seen. Changes are held in a small overlay until the next save,
+ * which streams the old file into a new one, substituting changed entries and copying
+ * the rest byte for byte.
+ */
+final class IndexedYamlPlayerStore implements PlayerSettingsStore {
+
+    // Marks a pending delete in the overlay
+    private static final PlayerSettings DELETED = new PlayerSettings(null);
+
+    private final Logger logger;
+    private final Executor ioExecutor;
+    private final File configFile;
+    private final YamlSettingsCodec codec;
+
+    // Guards swapping the file, index and read channel against lookups in progress
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private OffsetIndex index = new OffsetIndex(16);
+    private FileChannel readChannel;
+
+    // Changes not yet written to players.yml
+    private final ConcurrentHashMap<UUID, PlayerSettings> overlay = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveInProgress = new AtomicBoolean(false);
+    private final AtomicBoolean pendingSave = new AtomicBoolean(false);
+
+    /**
+     * @param dataFolder the plugin data folder holding players.yml
+     * @param logger logger for status and error messages
+     * @param ioExecutor executor used for asynchronous saves
+     */
+    IndexedYamlPlayerStore(File dataFolder, Logger logger, Executor ioExecutor) {
+        this.logger = logger;
+        this.ioExecutor = ioExecutor;
+        this.configFile = new File(dataFolder, "players.yml");
+        this.codec = new YamlSettingsCodec(logger);
+    }
+
+    @Override
+    public void open() {
+        if (!configFile.exists()) {
+            try {
+                configFile.createNewFile();
+            } catch (IOException e) {
+                logger.severe("Could not create players.yml: " + e.getMessage());
+            }
+        }
+        buildIndex();
+    }
+
+    @Override
+    public PlayerSettings load(UUID uuid) {
+        PlayerSettings pending = overlay.get(uuid);
+        if (pending != null) {
+            return pending == DELETED ? null : pending;
+        }
+
+        fileLock.readLock().lock();
+        try {
+            int slot = index.find(uuid);
+            if (slot < 0 || readChannel == null) {
+                return null;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(index.lengthAt(slot));
+            long offset = index.offsetAt(slot);
+            while (entry.hasRemaining()) {
+                if (readChannel.read(entry, offset + entry.position()) < 0) {
+                    throw new IOException("unexpected end of file");
+                }
+            }
+            return parse(uuid, entry.array());
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.warning("Could not read entry for " + uuid + " from players.yml: " + e.getMessage());
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void upsert(UUID uuid, PlayerSettings settings) {
+        overlay.put(uuid, settings);
+        saveAsync();
+    }
+
+    @Override
+    public void upsertAll(Map<UUID, PlayerSettings> entries) {
+        overlay.putAll(entries);
+        // One rewrite of players.yml for the whole batch
+        saveAsync();
+    }
+
+    @Override
+    public void delete(UUID uuid) {
+        if (contains(uuid)) {
+            overlay.put(uuid, DELETED);
+            saveAsync();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) {
+        boolean changed = false;
+        for (UUID uuid : uuids) {
+            if (contains(uuid)) {
+                overlay.put(uuid, DELETED);
+                changed = true;
+            }
+        }
+        if (changed) {
+            saveAsync();
+        }
+    }
+
+    /**
+     * Checks for an entry without reading it from the file
+     */
+    private boolean contains(UUID uuid) {
+        PlayerSettings pending = overlay.get(uuid);
+        if (pending != null) {
+            return pending != DELETED;
+        }
+        fileLock.readLock().lock();
+        try {
+            return index.find(uuid) >= 0;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        // No lock is held while visiting. A save that swaps the file meanwhile only drops
+        // entries from the overlay once they are in the new file, so taking the overlay
+        // before opening the file sees every player in one or the other.
+        Map<UUID, PlayerSettings> pending = new HashMap<>(overlay);
+        try {
+            Set<UUID> visited = new HashSet<>();
+            scan((key, offset, content) -> {
+                UUID uuid = parseUuid(key);
+                if (uuid == null || !visited.add(uuid) || pending.containsKey(uuid)) {
+                    return;
+                }
+                try {
+                    PlayerSettings settings = parse(uuid, content);
+                    if (settings != null) {
+                        visitor.accept(uuid, settings);
+                    }
+                } catch (InvalidConfigurationException e) {
+                    logger.warning("Skipping unreadable entry for " + uuid + " in players.yml: " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.severe("Could not read players.yml: " + e.getMessage());
+            return;
+        }
+        for (Map.Entry<UUID, PlayerSettings> entry : pending.entrySet()) {
+            if (entry.getValue() != DELETED) {
+                visitor.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void reload() {
+        // Nothing in the overlay may be lost, so write it out before re-reading. Both run on
+        // the writer, so the caller never waits for a rewrite of players.yml.
+        ioExecutor.execute(() -> {
+            save();
+            buildIndex();
+        });
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return readChannel != null && configFile.getParentFile().canWrite();
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            // Let an in-flight asynchronous save finish first
+            while (saveInProgress.get()) {
+                if (System.nanoTime() > deadline) {
+                    logger.warning("Timeout waiting for player data save to complete during shutdown");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting for player data save during shutdown");
+            return false;
+        }
+
+        // The scheduler may no longer accept tasks at this point, so write the rest here
+        boolean success = overlay.isEmpty() || save();
+        fileLock.writeLock().lock();
+        try {
+            closeReadChannel();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return success;
+    }
+
+    /**
+     * Stream players.yml and replace the index with one describing its current contents
+     */
+    private void buildIndex() {
+        long start = System.nanoTime();
+        OffsetIndex built = new OffsetIndex(1024);
+        try {
+            DurableFiles.Integrity integrity = scan((key, offset, content) -> {
+                UUID uuid = parseUuid(key);
+                if (uuid == null) {
+                    logger.warning("Skipping invalid player key '" + key + "'");
+                    return;
+                }
+                built.put(uuid, offset, content.length);
+            });
+            if (integrity == DurableFiles.Integrity.MISMATCH && recoverFromBackup()) {
+                buildIndex();
+                return;
+            }
+        } catch (IOException e) {
+            logger.severe("Could not index players.yml: " + e.getMessage());
+            return;
+        }
+
+        fileLock.writeLock().lock();
+        try {
+            index = built;
+            reopenReadChannel();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        logger.info("Indexed " + built.size() + " players in players.yml in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * Save the overlay asynchronously. Only one save runs at a time;
+     * changes made while it runs are picked up by the next one.
+     */
+    private void saveAsync() {
+        pendingSave.set(true);
+        if (!saveInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        ioExecutor.execute(() -> {
+            try {
+                while (pendingSave.compareAndSet(true, false)) {
+                    save();
+                }
+            } finally {
+                saveInProgress.set(false);
+
+                // Check if another save was requested while we were finishing
+                if (pendingSave.get()) {
+                    saveAsync();
+                }
+            }
+        });
+    }
+
+    /**
+     * Rewrite players.yml with the overlay applied, on the calling thread
+     * @return true if the file was written
+     */
+    private synchronized boolean save() {
+        if (overlay.isEmpty()) {
+            return true;
+        }
+
+        // Entries changed after this point stay in the overlay for the next save
+        Map<UUID, PlayerSettings> changes = new HashMap<>(overlay);
+        Set<UUID> written = new HashSet<>();
+        OffsetIndex rebuilt = new OffsetIndex(Math.max(1024, index.size() + changes.size()));
+        File tempFile = new File(configFile.getAbsolutePath() + ".tmp");
+
+        CheckedOutputStream checked;
+        try (OutputStream out = new BufferedOutputStream(
+                checked = new CheckedOutputStream(Files.newOutputStream(tempFile.toPath()), new CRC32()), 1 << 16)) {
+            long[] position = {0};
+            scan((key, offset, content) -> {
+                UUID uuid = parseUuid(key);
+                byte[] bytes = content;
+                if (uuid != null) {
+                    if (!written.add(uuid)) {
+                        return; // Duplicate key; the first entry wins, as in the index
+                    }
+                    PlayerSettings changed = changes.get(uuid);
+                    if (changed == DELETED) {
+                        return;
+                    }
+                    if (changed != null) {
+                        bytes = YamlSettingsCodec.formatEntry(uuid, changed).getBytes(StandardCharsets.UTF_8);
+                    }
+                    rebuilt.put(uuid, position[0], bytes.length);
+                }
+                out.write(bytes);
+                position[0] += bytes.length;
+            });
+
+            // Players not in the file yet go at the end
+            for (Map.Entry<UUID, PlayerSettings> entry : changes.entrySet()) {
+                if (entry.getValue() == DELETED || written.contains(entry.getKey())) {
+                    continue;
+                }
+                byte[] bytes = YamlSettingsCodec.formatEntry(entry.getKey(), entry.getValue()).getBytes(StandardCharsets.UTF_8);
+                rebuilt.put(entry.getKey(), position[0], bytes.length);
+                out.write(bytes);
+                position[0] += bytes.length;
+            }
+
+            out.flush();
+            out.write(DurableFiles.checksumLine(checked.getChecksum().getValue()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.severe("Could not save players.yml: " + e.getMessage());
+            if (tempFile.exists() && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+            return false;
+        }
+
+        try {
+            // Lookups keep reading the old file through the open channel until the swap below
+            DurableFiles.replace(tempFile.toPath(), configFile.toPath());
+        } catch (IOException e) {
+            logger.severe("Could not replace players.yml: " + e.getMessage());
+            return false;
+        }
+
+        fileLock.writeLock().lock();
+        try {
+            index = rebuilt;
+            reopenReadChannel();
+            // Drop saved entries unless a newer value arrived while we were writing
+            for (Map.Entry<UUID, PlayerSettings> entry : changes.entrySet()) {
+                overlay.remove(entry.getKey(), entry.getValue());
+            }
+            return true;
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace a players.yml that failed its checksum with the newest readable backup snapshot.
+     * The damaged file is kept alongside in case it was edited by hand rather than damaged.
+     * @return true if a snapshot was restored
+     */
+    private boolean recoverFromBackup() {
+        logger.severe("players.yml does not match its checksum and may be damaged, attempting recovery...");
+        File copy = new File(configFile.getParentFile(), "players.yml.damaged-" + System.currentTimeMillis());
+        try {
+            Files.copy(configFile.toPath(), copy.toPath());
+            logger.warning("Kept the damaged file as " + copy.getName());
+        } catch (IOException e) {
+            logger.warning("Could not keep a copy of the damaged players.yml: " + e.getMessage());
+        }
+
+        for (File snapshot : BackupManager.listSnapshots(BackupManager.getBackupFolder(configFile.getParentFile()))) {
+            try {
+                String contents = BackupManager.readSnapshot(snapshot);
+                new YamlConfiguration().loadFromString(contents); // Test if it's readable
+                DurableFiles.write(configFile.toPath(),
+                        DurableFiles.appendChecksum(contents).getBytes(StandardCharsets.UTF_8));
+                logger.info("Successfully recovered from backup: " + snapshot.getName());
+                return true;
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.warning("Failed to recover from " + snapshot.getName() + ": " + e.getMessage());
+            }
+        }
+        logger.warning("Recovery failed, reading players.yml as it is");
+        return false;
+    }
+
+    private PlayerSettings parse(UUID uuid, byte[] content) throws InvalidConfigurationException {
+        YamlConfiguration entry = new YamlConfiguration();
+        entry.loadFromString(new String(content, StandardCharsets.UTF_8));
+        return codec.read(entry, uuid.toString());
+    }
+
+    private void reopenReadChannel() {
+        closeReadChannel();
+        try {
+            readChannel = FileChannel.open(configFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            logger.severe("Could not open players.yml for reading: " + e.getMessage());
+        }
+    }
+
+    private void closeReadChannel() {
+        if (readChannel != null) {
+            try {
+                readChannel.close();
+            } catch (IOException e) {
+                logger.warning("Could not close players.yml: " + e.getMessage());
+            }
+            readChannel = null;
+        }
+    }
+
+    private static UUID parseUuid(String key) {
+        try {
+            return UUID.fromString(key);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Receives each top-level entry found while streaming players.yml
+     */
+    private interface EntryVisitor {
+        /**
+         * @param key the entry's key with any quotes removed
+         * @param offset byte offset of the entry's first line
+         * @param content the entry's raw bytes, including trailing blank and comment lines
+         */
+        void accept(String key, long offset, byte[] content) throws IOException;
+    }
+
+    /**
+     * Stream players.yml, splitting it into top-level entries. An entry starts at a line
+     * beginning in column 0 with a key followed by ':' and runs until the next such line.
+     * Lines in column 0 that are not keys, such as the "{}" Bukkit writes for an empty
+     * file, end the previous entry and are dropped, as is the checksum trailer, which is
+     * verified in the same pass.
+     * @return whether the file matched its checksum trailer
+     */
+    private DurableFiles.Integrity scan(EntryVisitor visitor) throws IOException {
+        if (!configFile.exists()) {
+            return DurableFiles.Integrity.MISSING;
+        }
+        byte[] checksumPrefix = DurableFiles.CHECKSUM_PREFIX.getBytes(StandardCharsets.UTF_8);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(configFile.toPath()), 1 << 16)) {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream(128);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            CRC32 crc = new CRC32();
+            String key = null;
+            long entryOffset = 0;
+            long position = 0;
+            // Checksum of the bytes before the last trailer line seen, and the value it recorded
+            long crcBeforeTrailer = -1;
+            String trailer = null;
+            boolean contentAfterTrailer = false;
+
+            while (true) {
+                line.reset();
+                int b;
+                while ((b = in.read()) != -1) {
+                    line.write(b);
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+                if (line.size() == 0) {
+                    break;
+                }
+
+                byte[] bytes = line.toByteArray();
+                if (startsWith(bytes, checksumPrefix)) {
+                    if (key != null) {
+                        visitor.accept(key, entryOffset, entry.toByteArray());
+                    }
+                    entry.reset();
+                    key = null;
+                    crcBeforeTrailer = crc.getValue();
+                    trailer = new String(bytes, StandardCharsets.UTF_8).substring(checksumPrefix.length).trim();
+                    contentAfterTrailer = false;
+                } else {
+                    int first = bytes[0];
+                    boolean topLevel = first != ' ' && first != '\t' && first != '#' && first != '-'
+                            && first != '\n' && first != '\r';
+                    if (topLevel) {
+                        if (key != null) {
+                            visitor.accept(key, entryOffset, entry.toByteArray());
+                        }
+                        entry.reset();
+                        key = keyOf(bytes);
+                        entryOffset = position;
+                    }
+                    if (key != null) {
+                        entry.write(bytes);
+                    }
+                    if (trailer != null && !new String(bytes, StandardCharsets.UTF_8).isBlank()) {
+                        contentAfterTrailer = true;
+                    }
+                }
+                crc.update(bytes, 0, bytes.length);
+                position += bytes.length;
+
+                if (b == -1) {
+                    break;
+                }
+            }
+            if (key != null) {
+                visitor.accept(key, entryOffset, entry.toByteArray());
+            }
+
+            if (trailer == null || contentAfterTrailer) {
+                return DurableFiles.Integrity.MISSING;
+            }
+            try {
+                return Long.parseLong(trailer, 16) == crcBeforeTrailer
+                        ? DurableFiles.Integrity.VALID : DurableFiles.Integrity.MISMATCH;
+            } catch (NumberFormatException e) {
+                return DurableFiles.Integrity.MISMATCH;
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the key of a top-level line, or null if the line is not a "key:" line
+     */
+    private static String keyOf(byte[] line) {
+        String text = new String(line, StandardCharsets.UTF_8);
+        int colon = text.indexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        String key = text.substring(0, colon).trim();
+        if (key.length() >= 2 && (key.charAt(0) == '\'' || key.charAt(0) == '"')
+                && key.charAt(key.length() - 1) == key.charAt(0)) {
+            key = key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    /**
+     * Open-addressed hash table from UUID to entry position, stored in primitive arrays
+     * so each player costs a few dozen bytes. Built once and never modified afterwards.
+     */
+    private static final class OffsetIndex {
+        private static final double MAX_LOAD_FACTOR = 0.6;
+
+        private long[] keys;     // msb, lsb pairs
+        private long[] offsets;
+        private int[] lengths;   // 0 marks an empty slot
+        private int size;
+
+        OffsetIndex(int expected) {
+            int capacity = Integer.highestOneBit((int) Math.max(16, expected / MAX_LOAD_FACTOR) * 2 - 1);
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity * 2];
+            offsets = new long[capacity];
+            lengths = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Adds an entry; the first entry for a UUID wins, matching how the file is rewritten
+         */
+        void put(UUID uuid, long offset, int length) {
+            if (size + 1 > lengths.length * MAX_LOAD_FACTOR) {
+                grow();
+            }
+            int slot = slotFor(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (lengths[slot] != 0) {
+                return;
+            }
+            keys[slot * 2] = uuid.getMostSignificantBits();
+            keys[slot * 2 + 1] = uuid.getLeastSignificantBits();
+            offsets[slot] = offset;
+            lengths[slot] = Math.max(1, length);
+            size++;
+        }
+
+        /**
+         * @return the slot holding the UUID, or -1 if it is not indexed
+         */
+        int find(UUID uuid) {
+            int slot = slotFor(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            return lengths[slot] != 0 ? slot : -1;
+        }
+
+        long offsetAt(int slot) {
+            return offsets[slot];
+        }
+
+        int lengthAt(int slot) {
+            return lengths[slot];
+        }
+
+        private int slotFor(long msb, long lsb) {
+            int mask = lengths.length - 1;
+            int slot = MappedPlayerStore.hash(msb, lsb) & mask;
+            while (lengths[slot] != 0 && (keys[slot * 2] != msb || keys[slot * 2 + 1] != lsb)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldOffsets = offsets;
+            int[] oldLengths = lengths;
+            allocate(oldLengths.length * 2);
+            for (int slot = 0; slot < oldLengths.length; slot++) {
+                if (oldLengths[slot] != 0) {
+                    int target = slotFor(oldKeys[slot * 2], oldKeys[slot * 2 + 1]);
+                    keys[target * 2] = oldKeys[slot * 2];
+                    keys[target * 2 + 1] = oldKeys[slot * 2 + 1];
+                    offsets[target] = oldOffsets[slot];
+                    lengths[target] = oldLengths[slot];
+                }
+            }
+        }
+    }
+}
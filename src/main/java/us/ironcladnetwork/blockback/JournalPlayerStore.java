@@ -0,0 +1,570 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Stores player settings as a binary snapshot plus an append-only journal.
+ * <p>
+ * Each toggle appends one fixed-size record to players.journal instead of rewriting
+ * a whole file. Once the journal passes the configured size it is folded into
+ * players.snapshot by the writer and truncated. Startup reads the snapshot and
+ * replays any journal records newer than it.
+ * <p>
+ * Journal record layout (30 bytes, big-endian):
+ * <pre>
+ * long  uuid most significant bits
+ * long  uuid least significant bits
+ * byte  feature code ({@link Feature} ordinal, -1 delete player)
+ * byte  value (0 or 1)
+ * long  sequence number
+ * int   CRC32 of the preceding 26 bytes
+ * </pre>
+ * Player names are not journaled; they are written with the next snapshot.
+ * Snapshot entries store the mask of disabled features as an int.
+ * Snapshots end with the CRC32 of everything before it. A snapshot that cannot be read,
+ * whether it fails the check, is cut short or has an unknown format, is set aside and the
+ * newest backup is loaded in its place. If it cannot be set aside, compaction is refused
+ * so the snapshot is never overwritten with what little could be loaded.
+ */
+final class JournalPlayerStore implements PlayerSettingsStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x42425333; // "BBS3"
+    private static final int RECORD_SIZE = 30;
+    private static final int RECORD_DATA_SIZE = RECORD_SIZE - 4;
+
+    private static final byte DELETE_PLAYER = -1;
+
+    private final Logger logger;
+    private final Executor ioExecutor;
+    private final File dataFolder;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final long compactThresholdBytes;
+
+    // Current state of every known player; values are immutable snapshots
+    private final ConcurrentHashMap<UUID, PlayerSettings> players = new ConcurrentHashMap<>();
+    // Encoded records waiting to be appended by the writer
+    private final Deque<ByteBuffer> pendingRecords = new ConcurrentLinkedDeque<>();
+    private final AtomicBoolean writeInProgress = new AtomicBoolean(false);
+    // Guards sequence assignment so a snapshot always matches a known sequence
+    private final Object sequenceLock = new Object();
+    private long lastSequence;
+    private FileChannel journal;
+    // Set while an unreadable players.snapshot is still in place; compacting would overwrite it
+    private volatile boolean snapshotBlocked;
+
+    /**
+     * @param dataFolder the plugin data folder
+     * @param logger logger for status and error messages
+     * @param ioExecutor executor used for journal appends and compaction
+     * @param compactThresholdBytes journal size that triggers compaction into the snapshot
+     */
+    JournalPlayerStore(File dataFolder, Logger logger, Executor ioExecutor, long compactThresholdBytes) {
+        this.logger = logger;
+        this.ioExecutor = ioExecutor;
+        this.dataFolder = dataFolder;
+        this.snapshotFile = new File(dataFolder, "players.snapshot");
+        this.journalFile = new File(dataFolder, "players.journal");
+        this.compactThresholdBytes = compactThresholdBytes;
+    }
+
+    @Override
+    public void open() {
+        replay();
+        // Until a conversion succeeds players.yml stays in place, so a failed one is retried
+        convertLegacyFile();
+    }
+
+    @Override
+    public PlayerSettings load(UUID uuid) {
+        return players.get(uuid);
+    }
+
+    @Override
+    public void upsert(UUID uuid, PlayerSettings settings) {
+        synchronized (sequenceLock) {
+            PlayerSettings previous = players.put(uuid, settings);
+            int changed = (previous != null ? previous.disabled : 0) ^ settings.disabled;
+
+            // Only changed features are journaled; a new player at defaults needs no record
+            for (Feature feature : Feature.values()) {
+                if ((changed & feature.getMask()) != 0) {
+                    pendingRecords.add(encode(uuid, (byte) feature.ordinal(), settings.isEnabled(feature), ++lastSequence));
+                }
+            }
+        }
+        scheduleWrite();
+    }
+
+    @Override
+    public void delete(UUID uuid) {
+        synchronized (sequenceLock) {
+            if (players.remove(uuid) == null) {
+                return;
+            }
+            pendingRecords.add(encode(uuid, DELETE_PLAYER, false, ++lastSequence));
+        }
+        scheduleWrite();
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        players.forEach(visitor);
+    }
+
+    @Override
+    public void reload() {
+        writePending();
+        closeJournal();
+        players.clear();
+        replay();
+    }
+
+    @Override
+    public boolean isHealthy() {
+        FileChannel channel = journal;
+        return channel != null && channel.isOpen() && dataFolder.canWrite();
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            // Let an in-flight asynchronous write finish first
+            while (writeInProgress.get()) {
+                if (System.nanoTime() > deadline) {
+                    logger.warning("Timeout waiting for player data save to complete during shutdown");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting for player data save during shutdown");
+            return false;
+        }
+
+        // The scheduler may no longer accept tasks at this point, so finish here.
+        // Compacting on shutdown also stores names and keeps the next startup replay short.
+        boolean success = writePending() && compact();
+        closeJournal();
+        return success;
+    }
+
+    /**
+     * Start an asynchronous write if none is running. After a failed write the records stay
+     * queued and are retried with the next change or at shutdown, rather than straight away.
+     */
+    private void scheduleWrite() {
+        if (!writeInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        ioExecutor.execute(() -> {
+            boolean written = false;
+            try {
+                written = writePending();
+                if (written && !snapshotBlocked && journalSize() > compactThresholdBytes) {
+                    compact();
+                }
+            } finally {
+                writeInProgress.set(false);
+
+                // Check if more records were queued while we were finishing
+                if (written && !pendingRecords.isEmpty()) {
+                    scheduleWrite();
+                }
+            }
+        });
+    }
+
+    /**
+     * Append every queued record to the journal on the calling thread. If the append fails
+     * the journal is cut back to where it was and the records go back to the front of the
+     * queue, in order, for the next attempt.
+     * @return true if all records were written
+     */
+    private synchronized boolean writePending() {
+        if (pendingRecords.isEmpty()) {
+            return true;
+        }
+        List<ByteBuffer> batch = new ArrayList<>();
+        ByteBuffer record;
+        while ((record = pendingRecords.poll()) != null) {
+            batch.add(record);
+        }
+
+        long start = -1;
+        try {
+            FileChannel channel = journal();
+            start = channel.position();
+            ByteBuffer[] records = batch.toArray(new ByteBuffer[0]);
+            long remaining = (long) records.length * RECORD_SIZE;
+            // A gathering write may stop short; carry on until every record is out
+            while (remaining > 0) {
+                remaining -= channel.write(records);
+            }
+            channel.force(false);
+            return true;
+        } catch (IOException e) {
+            logger.severe("Could not append to players.journal: " + e.getMessage());
+            if (start >= 0) {
+                try {
+                    // Drop any partial record so later appends stay on record boundaries
+                    journal.truncate(start);
+                    journal.position(start);
+                } catch (IOException truncateException) {
+                    logger.warning("Could not cut players.journal back after a failed append: " + truncateException.getMessage());
+                }
+            }
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                pendingRecords.addFirst(batch.get(i).rewind());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fold the current state into a new snapshot and truncate the journal.
+     * Records queued after the snapshot's sequence are replayed on top of it,
+     * so appends racing with compaction are never lost.
+     * @return true if compaction succeeded
+     */
+    private synchronized boolean compact() {
+        if (snapshotBlocked) {
+            logger.severe("Not compacting players.journal: players.snapshot could not be read or set aside; "
+                    + "move it out of the way by hand and reload");
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        Map<UUID, PlayerSettings> state;
+        long sequence;
+        synchronized (sequenceLock) {
+            state = new HashMap<>(players);
+            sequence = lastSequence;
+        }
+
+        if (!writeSnapshot(state, sequence)) {
+            return false;
+        }
+
+        try {
+            // Everything already appended is covered by the snapshot
+            journal().truncate(0);
+        } catch (IOException e) {
+            logger.warning("Could not truncate players.journal after compaction: " + e.getMessage());
+            return false;
+        }
+        logger.fine("Compacted players.journal into snapshot of " + state.size() + " players in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * Write a snapshot to a temporary file and move it into place
+     * @return true if the snapshot was written
+     */
+    private boolean writeSnapshot(Map<UUID, PlayerSettings> state, long sequence) {
+        File tempFile = new File(snapshotFile.getAbsolutePath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())), crc))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(state.size());
+            for (Map.Entry<UUID, PlayerSettings> entry : state.entrySet()) {
+                PlayerSettings settings = entry.getValue();
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeInt(settings.disabled);
+                out.writeUTF(settings.name != null ? settings.name : "");
+            }
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            logger.severe("Could not write players.snapshot: " + e.getMessage());
+            if (tempFile.exists() && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+            return false;
+        }
+
+        try {
+            DurableFiles.replace(tempFile.toPath(), snapshotFile.toPath());
+            return true;
+        } catch (IOException e) {
+            logger.severe("Could not replace players.snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Load the snapshot and replay newer journal records, reporting how long it took
+     */
+    private void replay() {
+        long start = System.nanoTime();
+        long snapshotSequence = readSnapshot();
+        int snapshotPlayers = players.size();
+        lastSequence = snapshotSequence;
+
+        int replayed = 0;
+        try {
+            FileChannel channel = journal();
+            long validLength = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            CRC32 crc = new CRC32();
+            channel.position(0);
+            readLoop:
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < RECORD_SIZE) {
+                    break;
+                }
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    crc.reset();
+                    crc.update(buffer.array(), buffer.position(), RECORD_DATA_SIZE);
+                    if ((int) crc.getValue() != buffer.getInt(buffer.position() + RECORD_DATA_SIZE)) {
+                        logger.warning("Corrupt record in players.journal at offset " + validLength + "; discarding the rest of the journal");
+                        break readLoop;
+                    }
+                    UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                    byte feature = buffer.get();
+                    boolean value = buffer.get() != 0;
+                    long sequence = buffer.getLong();
+                    buffer.getInt();
+                    validLength += RECORD_SIZE;
+
+                    if (sequence > snapshotSequence) {
+                        apply(uuid, feature, value);
+                        replayed++;
+                    }
+                    lastSequence = Math.max(lastSequence, sequence);
+                }
+                buffer.compact();
+            }
+
+            if (channel.size() != validLength) {
+                // Drop a torn or corrupt tail so new records line up on record boundaries
+                logger.warning("Truncating players.journal from " + channel.size() + " to " + validLength + " bytes");
+                channel.truncate(validLength);
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            logger.severe("Could not replay players.journal: " + e.getMessage());
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Loaded " + snapshotPlayers + " players from players.snapshot and replayed "
+                + replayed + " journal records in " + elapsedMillis + "ms");
+    }
+
+    /**
+     * Read the snapshot into memory
+     * @return the journal sequence number the snapshot includes, or 0 if there is none
+     */
+    private long readSnapshot() {
+        snapshotBlocked = false;
+        if (!snapshotFile.exists()) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile.toPath())), crc))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC) {
+                logger.severe("players.snapshot has an unknown format");
+                return recoverFromBackup();
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                int disabled = in.readInt();
+                String name = in.readUTF();
+                players.put(uuid, new PlayerSettings(name.isEmpty() ? null : name, disabled));
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() == expected) {
+                return sequence;
+            }
+        } catch (EOFException e) {
+            logger.severe("players.snapshot is truncated");
+            return recoverFromBackup();
+        } catch (IOException e) {
+            logger.severe("Could not read players.snapshot: " + e.getMessage());
+            return recoverFromBackup();
+        }
+        logger.severe("players.snapshot does not match its checksum");
+        return recoverFromBackup();
+    }
+
+    /**
+     * Set a damaged snapshot aside and load the newest readable backup in its place, dropping
+     * whatever was read from the damaged one. Journal records are all newer than the damaged
+     * snapshot, so they are replayed on top.
+     * @return 0, the sequence number to replay the journal from
+     */
+    private long recoverFromBackup() {
+        players.clear();
+        File damaged = new File(dataFolder, "players.snapshot.damaged-" + System.currentTimeMillis());
+        if (snapshotFile.renameTo(damaged)) {
+            logger.warning("Kept the damaged snapshot as " + damaged.getName());
+        } else {
+            snapshotBlocked = true;
+            logger.severe("Could not set players.snapshot aside; it will not be compacted over until it is moved by hand");
+        }
+        YamlSettingsCodec codec = new YamlSettingsCodec(logger);
+        for (File backup : BackupManager.listSnapshots(BackupManager.getBackupFolder(dataFolder))) {
+            try {
+                YamlConfiguration config = new YamlConfiguration();
+                config.loadFromString(BackupManager.readSnapshot(backup));
+                int restored = codec.readAll(config, players::put);
+                logger.warning("Restored " + restored + " players from backup " + backup.getName());
+                return 0;
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.warning("Could not restore from " + backup.getName() + ": " + e.getMessage());
+            }
+        }
+        logger.severe("No usable backup; starting from the journal only");
+        return 0;
+    }
+
+    /**
+     * Apply a single replayed journal record to the in-memory state
+     */
+    private void apply(UUID uuid, byte feature, boolean value) {
+        if (feature == DELETE_PLAYER) {
+            players.remove(uuid);
+            return;
+        }
+        Feature target = Feature.fromIndex(feature);
+        if (target == null) {
+            logger.warning("Unknown feature code " + feature + " in players.journal for player " + uuid);
+            return;
+        }
+        players.compute(uuid, (key, current) -> (current != null ? current : new PlayerSettings(null)).withEnabled(target, value));
+    }
+
+    /**
+     * Encode a journal record including its checksum
+     */
+    private static ByteBuffer encode(UUID uuid, byte feature, boolean value, long sequence) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        buffer.put(feature);
+        buffer.put((byte) (value ? 1 : 0));
+        buffer.putLong(sequence);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, RECORD_DATA_SIZE);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return the open journal channel, opening it if needed
+     */
+    private synchronized FileChannel journal() throws IOException {
+        if (journal == null || !journal.isOpen()) {
+            journal = FileChannel.open(journalFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journal.position(journal.size());
+        }
+        return journal;
+    }
+
+    /**
+     * @return current journal size in bytes, or 0 if unknown
+     */
+    private long journalSize() {
+        try {
+            return journal().size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private synchronized void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warning("Could not close players.journal: " + e.getMessage());
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Conversion of an existing players.yml into the snapshot, after the snapshot and journal
+     * have been read. Players already stored are left alone, so retrying after a failed
+     * conversion never replaces settings changed since. The original file is kept as
+     * players.yml.migrated.
+     */
+    private void convertLegacyFile() {
+        File legacyFile = new File(dataFolder, "players.yml");
+        if (!legacyFile.exists() || legacyFile.length() == 0) {
+            return;
+        }
+
+        logger.info("Converting players.yml to journal storage...");
+        YamlConfiguration legacy = new YamlConfiguration();
+        try {
+            legacy.load(legacyFile);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.severe("Could not read players.yml for conversion: " + e.getMessage());
+            logger.warning("players.yml has been left in place and will be converted at the next start");
+            return;
+        }
+
+        int[] converted = {0};
+        new YamlSettingsCodec(logger).readAll(legacy, (uuid, settings) -> {
+            if (players.putIfAbsent(uuid, settings) == null) {
+                converted[0]++;
+            }
+        });
+        // The new players are in no journal record, so they only reach disk in a snapshot
+        if (!compact()) {
+            logger.severe("Conversion failed; players.yml has been left in place and will be converted at the next start");
+            return;
+        }
+
+        File migrated = new File(dataFolder, "players.yml.migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Could not rename players.yml to " + migrated.getName()
+                    + "; remove it by hand or players deleted from the journal will be imported again");
+        }
+        logger.info("Converted " + converted[0] + " players into players.snapshot");
+    }
+}
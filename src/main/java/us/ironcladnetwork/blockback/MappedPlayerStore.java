@@ -0,0 +1,716 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Stores player settings in a memory-mapped file of fixed-width records.
+ * <p>
+ * players.dat is itself an open-addressed hash table (linear probing) keyed by UUID,
+ * so a lookup is a hash probe into mapped pages and startup only maps the file and
+ * checks the header. Updates are in-place writes to the mapping and are forced to
+ * disk periodically. Player names live in a side string table, players.names,
+ * referenced by offset.
+ * <p>
+ * players.dat layout:
+ * <pre>
+ * header (32 bytes): int magic, int version, int capacity, int count, int name bytes in use, padding
+ * slot   (24 bytes): long uuid msb, long uuid lsb, byte flags, 3 bytes padding, int name offset
+ * </pre>
+ * Flag bit 7 marks an occupied slot; bits 0-6 are the mask of disabled {@link Feature}s.
+ * players.names holds entries of one length byte followed by UTF-8 bytes. Renamed and
+ * deleted players leave their old entries behind; the header counts the bytes still in use.
+ * <p>
+ * Growing the table, or compacting players.names at startup once most of it is unused,
+ * writes a new pair of files, players.dat.grown-N and players.names.grown-N for capacity N,
+ * and switches to them. Windows cannot replace or delete a file while it is mapped, so the
+ * new pair takes over the usual names at the next start, before anything is mapped. The new
+ * table's header is written last; a pair left incomplete by a crash is discarded at startup.
+ */
+final class MappedPlayerStore implements PlayerSettingsStore {
+
+    private static final int MAGIC = 0x42424D31; // "BBM1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 24;
+    static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_COUNT = 12;
+    private static final int OFFSET_NAME_BYTES = 16;
+    private static final int SLOT_FLAGS = 16;
+    private static final int SLOT_NAME = 20;
+
+    private static final int FLAG_OCCUPIED = 0x80;
+    // Room for seven features in the flags byte
+    private static final int FEATURE_BITS = 0x7F;
+
+    private static final String REBUILT_SUFFIX = ".grown-";
+    // Unused players.names bytes tolerated before a compaction, as well as the bytes in use
+    private static final long COMPACT_MIN_BYTES = 1 << 16;
+
+    private final Logger logger;
+    private final File dataFolder;
+    // players.dat and players.names, or the pair written by the last rebuild until the next start
+    private File dataFile;
+    private File namesFile;
+    private final long forceIntervalMillis;
+
+    private FileChannel dataChannel;
+    private FileChannel namesChannel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int count;
+    private int nameBytes;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private ScheduledExecutorService syncExecutor;
+
+    /**
+     * @param dataFolder the plugin data folder
+     * @param logger logger for status and error messages
+     * @param forceIntervalMillis how often pending in-place updates are forced to disk
+     */
+    MappedPlayerStore(File dataFolder, Logger logger, long forceIntervalMillis) {
+        this.logger = logger;
+        this.dataFolder = dataFolder;
+        this.dataFile = new File(dataFolder, "players.dat");
+        this.namesFile = new File(dataFolder, "players.names");
+        this.forceIntervalMillis = forceIntervalMillis;
+    }
+
+    @Override
+    public synchronized void open() {
+        long start = System.nanoTime();
+        try {
+            installRebuiltFiles();
+            namesChannel = FileChannel.open(namesFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!dataFile.exists()) {
+                createTable(dataFile, INITIAL_CAPACITY);
+            }
+            mapTable();
+        } catch (IOException e) {
+            logger.severe("Could not open players.dat: " + e.getMessage());
+            return;
+        }
+
+        long unused = 0;
+        try {
+            unused = namesChannel.size() - nameBytes;
+            if (unused > Math.max(nameBytes, COMPACT_MIN_BYTES)) {
+                rebuild(capacity);
+                logger.info("Compacted players.names, dropping " + unused + " unused bytes");
+            }
+        } catch (IOException e) {
+            logger.warning("Could not compact players.names (" + unused + " unused bytes): " + e.getMessage());
+        }
+
+        // Until a conversion succeeds players.yml stays in place, so a failed one is retried
+        convertLegacyFile();
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BlockBack-mapped-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::forceIfDirty, forceIntervalMillis, forceIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Mapped players.dat with " + count + " players (capacity " + capacity + ") in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    @Override
+    public synchronized PlayerSettings load(UUID uuid) {
+        if (table == null) {
+            return null;
+        }
+        int slot = findSlot(uuid);
+        int base = slotOffset(slot);
+        int flags = table.get(base + SLOT_FLAGS);
+        if ((flags & FLAG_OCCUPIED) == 0) {
+            return null;
+        }
+        return new PlayerSettings(readName(table.getInt(base + SLOT_NAME)),
+                flags & FEATURE_BITS);
+    }
+
+    @Override
+    public synchronized void upsert(UUID uuid, PlayerSettings settings) {
+        if (table == null) {
+            logger.warning("players.dat is not open; settings for " + uuid + " were not saved");
+            return;
+        }
+        try {
+            put(uuid, settings);
+        } catch (IOException e) {
+            logger.severe("Could not save settings for " + uuid + " to players.dat: " + e.getMessage());
+            return;
+        }
+        dirty.set(true);
+    }
+
+    @Override
+    public synchronized void delete(UUID uuid) {
+        if (table == null) {
+            return;
+        }
+        int slot = findSlot(uuid);
+        if ((table.get(slotOffset(slot) + SLOT_FLAGS) & FLAG_OCCUPIED) == 0) {
+            return;
+        }
+        releaseName(table.getInt(slotOffset(slot) + SLOT_NAME));
+
+        // Backward-shift deletion keeps every probe chain unbroken without tombstones
+        int mask = capacity - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int nextBase = slotOffset(next);
+            if ((table.get(nextBase + SLOT_FLAGS) & FLAG_OCCUPIED) == 0) {
+                break;
+            }
+            int home = hash(table.getLong(nextBase), table.getLong(nextBase + 8)) & mask;
+            // Move the entry back if its home slot is not between the hole and its current slot
+            boolean movable = hole <= next
+                    ? (home <= hole || home > next)
+                    : (home <= hole && home > next);
+            if (movable) {
+                int holeBase = slotOffset(hole);
+                writeSlot(table, holeBase, new UUID(table.getLong(nextBase), table.getLong(nextBase + 8)),
+                        table.get(nextBase + SLOT_FLAGS), table.getInt(nextBase + SLOT_NAME));
+                hole = next;
+            }
+        }
+        table.put(slotOffset(hole) + SLOT_FLAGS, (byte) 0);
+        count--;
+        table.putInt(OFFSET_COUNT, count);
+        dirty.set(true);
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        // Copy the slots and names under the lock and visit the copy after releasing it,
+        // so lookups and updates are not held up by whatever the visitor does
+        ByteBuffer slots;
+        ByteBuffer names;
+        synchronized (this) {
+            if (table == null) {
+                return;
+            }
+            try {
+                ByteBuffer source = table.duplicate();
+                source.position(HEADER_SIZE).limit((int) tableSize(capacity));
+                slots = ByteBuffer.allocate(source.remaining());
+                slots.put(source).flip();
+                names = ByteBuffer.allocate((int) namesChannel.size());
+                while (names.hasRemaining()) {
+                    if (namesChannel.read(names, names.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                logger.severe("Could not read players.names: " + e.getMessage());
+                return;
+            }
+        }
+
+        for (int base = 0; base + SLOT_SIZE <= slots.limit(); base += SLOT_SIZE) {
+            int flags = slots.get(base + SLOT_FLAGS);
+            if ((flags & FLAG_OCCUPIED) == 0) {
+                continue;
+            }
+            String name = null;
+            int nameOffset = slots.getInt(base + SLOT_NAME);
+            if (nameOffset >= 0 && nameOffset < names.capacity()) {
+                int length = Math.min(names.get(nameOffset) & 0xFF, names.capacity() - nameOffset - 1);
+                name = new String(names.array(), nameOffset + 1, length, StandardCharsets.UTF_8);
+            }
+            visitor.accept(new UUID(slots.getLong(base), slots.getLong(base + 8)),
+                    new PlayerSettings(name, flags & FEATURE_BITS));
+        }
+    }
+
+    @Override
+    public synchronized void reload() {
+        forceIfDirty();
+        try {
+            mapTable();
+        } catch (IOException e) {
+            logger.severe("Could not remap players.dat: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return table != null && dataFile.canWrite();
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+            try {
+                syncExecutor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            boolean success = forceIfDirty();
+            try {
+                if (dataChannel != null) {
+                    dataChannel.close();
+                }
+                if (namesChannel != null) {
+                    namesChannel.close();
+                }
+            } catch (IOException e) {
+                logger.warning("Could not close players.dat: " + e.getMessage());
+            }
+            table = null;
+            return success;
+        }
+    }
+
+    /**
+     * Insert or update a player's slot in place, growing the table if needed
+     */
+    private void put(UUID uuid, PlayerSettings settings) throws IOException {
+        int slot = findSlot(uuid);
+        int base = slotOffset(slot);
+        int oldFlags = table.get(base + SLOT_FLAGS);
+        boolean isNew = (oldFlags & FLAG_OCCUPIED) == 0;
+
+        if (isNew && count + 1 > capacity * MAX_LOAD_FACTOR) {
+            grow();
+            slot = findSlot(uuid);
+            base = slotOffset(slot);
+        }
+
+        // Only append a name to the string table when it actually changed
+        int nameOffset = isNew ? -1 : table.getInt(base + SLOT_NAME);
+        if (settings.name != null && !settings.name.equals(readName(nameOffset))) {
+            releaseName(nameOffset);
+            nameOffset = appendName(settings.name);
+        }
+
+        writeSlot(table, base, uuid, settings.disabled & FEATURE_BITS, nameOffset);
+        if (isNew) {
+            count++;
+            table.putInt(OFFSET_COUNT, count);
+        }
+    }
+
+    /**
+     * Linear probe for the player's slot
+     * @return index of the slot holding the UUID, or of the empty slot where it belongs
+     */
+    private int findSlot(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = capacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int base = slotOffset(slot);
+            if ((table.get(base + SLOT_FLAGS) & FLAG_OCCUPIED) == 0
+                    || (table.getLong(base) == msb && table.getLong(base + 8) == lsb)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Rebuild the table at twice the capacity
+     */
+    private void grow() throws IOException {
+        rebuild(capacity * 2);
+        logger.info("Grew players.dat to capacity " + capacity);
+    }
+
+    /**
+     * Copy every player into a new pair of files with the given table capacity, keeping only
+     * the names still in use, and switch to them. The current files stay as they are, so a
+     * failed rebuild leaves the store working on them.
+     */
+    private void rebuild(int newCapacity) throws IOException {
+        File newDataFile = new File(dataFolder, "players.dat" + REBUILT_SUFFIX + newCapacity);
+        File newNamesFile = new File(dataFolder, "players.names" + REBUILT_SUFFIX + newCapacity);
+        if (newDataFile.equals(dataFile)) {
+            throw new IOException(newDataFile.getName() + " is in use until the next start");
+        }
+
+        FileChannel newNames = null;
+        FileChannel newData = null;
+        boolean switched = false;
+        try {
+            newNames = FileChannel.open(newNamesFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            newData = FileChannel.open(newDataFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Extend to full size; unwritten slots read as zero (empty)
+            newData.write(ByteBuffer.allocate(1), tableSize(newCapacity) - 1);
+            MappedByteBuffer newTable = newData.map(FileChannel.MapMode.READ_WRITE, 0, tableSize(newCapacity));
+
+            ByteBuffer names = ByteBuffer.allocate(1 << 16);
+            int newNameBytes = 0;
+            int mask = newCapacity - 1;
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = slotOffset(slot);
+                int flags = table.get(base + SLOT_FLAGS);
+                if ((flags & FLAG_OCCUPIED) == 0) {
+                    continue;
+                }
+                int nameOffset = -1;
+                byte[] entry = readNameEntry(table.getInt(base + SLOT_NAME));
+                if (entry != null) {
+                    if (names.remaining() < entry.length) {
+                        writeFully(newNames, names);
+                    }
+                    names.put(entry);
+                    nameOffset = newNameBytes;
+                    newNameBytes += entry.length;
+                }
+                long msb = table.getLong(base);
+                long lsb = table.getLong(base + 8);
+                int target = hash(msb, lsb) & mask;
+                while ((newTable.get(slotOffset(target) + SLOT_FLAGS) & FLAG_OCCUPIED) != 0) {
+                    target = (target + 1) & mask;
+                }
+                writeSlot(newTable, slotOffset(target), new UUID(msb, lsb), flags, nameOffset);
+            }
+            writeFully(newNames, names);
+            newNames.force(true);
+
+            newTable.putInt(4, VERSION);
+            newTable.putInt(OFFSET_CAPACITY, newCapacity);
+            newTable.putInt(OFFSET_COUNT, count);
+            newTable.putInt(OFFSET_NAME_BYTES, newNameBytes);
+            newTable.force();
+            // The magic goes last, marking the pair complete
+            newTable.putInt(0, MAGIC);
+            newTable.force();
+
+            FileChannel oldData = dataChannel;
+            FileChannel oldNames = namesChannel;
+            File oldDataFile = dataFile;
+            File oldNamesFile = namesFile;
+            dataChannel = newData;
+            namesChannel = newNames;
+            table = newTable;
+            capacity = newCapacity;
+            nameBytes = newNameBytes;
+            dataFile = newDataFile;
+            namesFile = newNamesFile;
+            switched = true;
+
+            closeQuietly(oldData);
+            closeQuietly(oldNames);
+            if (oldDataFile.getName().contains(REBUILT_SUFFIX)) {
+                // An earlier rebuild from this session; if still mapped, the next start removes it
+                oldDataFile.delete();
+                oldNamesFile.delete();
+            }
+        } finally {
+            if (!switched) {
+                closeQuietly(newData);
+                closeQuietly(newNames);
+                newDataFile.delete();
+                newNamesFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Move the newest complete pair of files left by a rebuild into the place of players.dat
+     * and players.names, and delete any other. Runs before anything is mapped.
+     */
+    private void installRebuiltFiles() throws IOException {
+        File[] rebuilt = dataFolder.listFiles((dir, name) -> name.startsWith("players.dat" + REBUILT_SUFFIX));
+        if (rebuilt == null || rebuilt.length == 0) {
+            return;
+        }
+        File newest = null;
+        int newestCapacity = 0;
+        for (File file : rebuilt) {
+            int fileCapacity = completeCapacity(file);
+            if (fileCapacity > newestCapacity) {
+                newest = file;
+                newestCapacity = fileCapacity;
+            }
+        }
+
+        if (newest != null) {
+            File names = new File(dataFolder, "players.names" + REBUILT_SUFFIX + newestCapacity);
+            // Names first: if the table's move is interrupted, the table left behind is still
+            // the newest and its names are already in place
+            if (names.exists()) {
+                DurableFiles.replace(names.toPath(), namesFile.toPath());
+            }
+            DurableFiles.replace(newest.toPath(), dataFile.toPath());
+            logger.info("Replaced players.dat with " + newest.getName());
+        }
+
+        File[] leftover = dataFolder.listFiles((dir, name) -> name.startsWith("players.dat" + REBUILT_SUFFIX)
+                || name.startsWith("players.names" + REBUILT_SUFFIX));
+        if (leftover != null) {
+            for (File file : leftover) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * @return the capacity in a table file's header, or 0 if the file is not a complete table
+     */
+    private static int completeCapacity(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            return header != null ? header.getInt(OFFSET_CAPACITY) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the table header, or null if the file is not a table of this version or is
+     *         shorter than its header says
+     */
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return null;
+        }
+        int storedCapacity = header.getInt(OFFSET_CAPACITY);
+        if (Integer.bitCount(storedCapacity) != 1 || channel.size() < tableSize(storedCapacity)) {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * Map players.dat and read its header
+     */
+    private void mapTable() throws IOException {
+        if (dataChannel != null && dataChannel.isOpen()) {
+            dataChannel.close();
+        }
+        dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = readHeader(dataChannel);
+        if (header == null) {
+            throw new IOException(dataFile.getName() + " has an unknown format or does not match its header");
+        }
+        capacity = header.getInt(OFFSET_CAPACITY);
+        count = header.getInt(OFFSET_COUNT);
+        nameBytes = header.getInt(OFFSET_NAME_BYTES);
+        table = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, tableSize(capacity));
+    }
+
+    /**
+     * Create an empty table file with the given capacity
+     */
+    private static void createTable(File file, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(0);
+            header.rewind();
+            channel.write(header, 0);
+            // Extend to full size; unwritten slots read as zero (empty)
+            channel.write(ByteBuffer.allocate(1), tableSize(capacity) - 1);
+        }
+    }
+
+    /**
+     * Force pending in-place updates to disk
+     * @return true if the data is on disk
+     */
+    private synchronized boolean forceIfDirty() {
+        if (!dirty.getAndSet(false) || table == null) {
+            return true;
+        }
+        try {
+            table.force();
+            namesChannel.force(false);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            logger.severe("Could not flush players.dat to disk: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private String readName(int offset) {
+        try {
+            byte[] entry = readNameEntry(offset);
+            return entry != null ? new String(entry, 1, entry.length - 1, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            logger.warning("Could not read player name from players.names: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return a players.names entry with its length byte, or null for offset -1
+     */
+    private byte[] readNameEntry(int offset) throws IOException {
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer length = ByteBuffer.allocate(1);
+        namesChannel.read(length, offset);
+        ByteBuffer entry = ByteBuffer.allocate(1 + (length.get(0) & 0xFF));
+        namesChannel.read(entry, offset);
+        return entry.array();
+    }
+
+    private int appendName(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 255);
+        long offset = namesChannel.size();
+        ByteBuffer entry = ByteBuffer.allocate(1 + length);
+        entry.put((byte) length).put(bytes, 0, length).flip();
+        namesChannel.write(entry, offset);
+        nameBytes += 1 + length;
+        table.putInt(OFFSET_NAME_BYTES, nameBytes);
+        return (int) offset;
+    }
+
+    /**
+     * Stop counting a name entry as in use once no slot refers to it
+     */
+    private void releaseName(int offset) {
+        if (offset < 0) {
+            return;
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(1);
+            namesChannel.read(length, offset);
+            nameBytes = Math.max(0, nameBytes - 1 - (length.get(0) & 0xFF));
+            table.putInt(OFFSET_NAME_BYTES, nameBytes);
+        } catch (IOException e) {
+            // Only the compaction estimate is affected
+            logger.warning("Could not read player name from players.names: " + e.getMessage());
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Could not close players.dat: " + e.getMessage());
+        }
+    }
+
+    private static void writeSlot(ByteBuffer table, int base, UUID uuid, int flags, int nameOffset) {
+        table.putLong(base, uuid.getMostSignificantBits());
+        table.putLong(base + 8, uuid.getLeastSignificantBits());
+        table.putInt(base + SLOT_NAME, nameOffset);
+        // Flags last so a slot only becomes occupied once its key is in place
+        table.put(base + SLOT_FLAGS, (byte) (flags | FLAG_OCCUPIED));
+    }
+
+    /**
+     * Hash of a UUID for open-addressed tables, also used by {@link IndexedYamlPlayerStore}.
+     * Slot positions in players.dat depend on it, so it must never change.
+     * @param msb the UUID's most significant bits
+     * @param lsb the UUID's least significant bits
+     * @return the hash; mask it to the table size
+     */
+    static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long tableSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE;
+    }
+
+    /**
+     * Conversion of an existing players.yml into players.dat. Players the table already
+     * has are left alone, so retrying after a failed conversion never replaces settings
+     * changed since. The original file is kept as players.yml.migrated.
+     */
+    private void convertLegacyFile() {
+        File legacyFile = new File(dataFolder, "players.yml");
+        if (!legacyFile.exists() || legacyFile.length() == 0) {
+            return;
+        }
+
+        logger.info("Converting players.yml to mapped storage...");
+        YamlConfiguration legacy = new YamlConfiguration();
+        try {
+            legacy.load(legacyFile);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.severe("Could not read players.yml for conversion: " + e.getMessage());
+            logger.warning("players.yml has been left in place and will be converted at the next start");
+            return;
+        }
+
+        int[] converted = {0};
+        boolean[] failed = {false};
+        new YamlSettingsCodec(logger).readAll(legacy, (uuid, settings) -> {
+            if (failed[0] || load(uuid) != null) {
+                return;
+            }
+            try {
+                put(uuid, settings);
+                converted[0]++;
+            } catch (IOException e) {
+                logger.severe("Could not convert settings for " + uuid + ": " + e.getMessage());
+                failed[0] = true;
+            }
+        });
+        dirty.set(true);
+        if (!forceIfDirty() || failed[0]) {
+            logger.severe("Conversion failed; players.yml has been left in place and will be converted at the next start");
+            return;
+        }
+
+        File migrated = new File(dataFolder, "players.yml.migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Could not rename players.yml to " + migrated.getName()
+                    + "; remove it by hand or players deleted from players.dat will be imported again");
+        }
+        logger.info("Converted " + converted[0] + " players into players.dat");
+    }
+}
@@ -0,0 +1,145 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Caches which {@link Feature} permissions each online player has as a bitmask,
+ * so a block click checks an int instead of asking the permissions plugin.
+ * <p>
+ * A player's mask is resolved when they join or change world, and every online player
+ * is re-resolved once per refresh interval to pick up permission changes. The refresh
+ * is spread over the interval a few players per tick, so a large server never resolves
+ * everyone in the same tick. Permission checks are not thread-safe in Bukkit, so all of
+ * this runs on the main thread.
+ */
+public class PermissionCache {
+
+    private static PermissionCache instance;
+    private final JavaPlugin plugin;
+    private long refreshIntervalTicks;
+
+    // Main thread only
+    private final Map<UUID, Integer> masks = new HashMap<>();
+    private final ArrayDeque<Player> refreshQueue = new ArrayDeque<>();
+    private int refreshPerTick;
+    private long roundTicksLeft;
+    private int taskId = -1;
+
+    /**
+     * Initialize the PermissionCache and start the refresh task
+     * @param plugin the JavaPlugin instance
+     */
+    public static void init(JavaPlugin plugin) {
+        instance = new PermissionCache(plugin);
+    }
+
+    /**
+     * Get the PermissionCache instance
+     * @return the PermissionCache instance
+     */
+    public static PermissionCache getInstance() {
+        return instance;
+    }
+
+    private PermissionCache(JavaPlugin plugin) {
+        this.plugin = plugin;
+        reloadConfig();
+
+        // Players already online (e.g. after /reload) are resolved like any other join
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            refresh(player);
+        }
+        taskId = plugin.getServer().getScheduler().runTaskTimer(plugin, this::refreshSome, 1, 1).getTaskId();
+    }
+
+    /**
+     * Checks a feature permission against the cached mask, resolving it on a miss
+     * @param player the player
+     * @param feature the feature whose permission to check
+     * @return true if the player had the permission when last resolved
+     */
+    public boolean hasPermission(Player player, Feature feature) {
+        Integer mask = masks.get(player.getUniqueId());
+        int resolved = mask != null ? mask : refresh(player);
+        return (resolved & feature.getMask()) != 0;
+    }
+
+    /**
+     * Resolves a player's feature permissions now
+     * @param player the player
+     * @return the player's new mask
+     */
+    public int refresh(Player player) {
+        int mask = 0;
+        for (Feature feature : Feature.values()) {
+            if (player.hasPermission(feature.getPermission())) {
+                mask |= feature.getMask();
+            }
+        }
+        masks.put(player.getUniqueId(), mask);
+        return mask;
+    }
+
+    /**
+     * Forgets a player who left
+     * @param player the player
+     */
+    public void remove(Player player) {
+        masks.remove(player.getUniqueId());
+    }
+
+    /**
+     * Forgets every player; masks are resolved again on next use
+     */
+    public void clear() {
+        masks.clear();
+        refreshQueue.clear();
+    }
+
+    /**
+     * Re-reads the refresh interval and forgets every player, so masks are resolved again
+     * on next use and the next round starts on the following tick
+     */
+    public void reloadConfig() {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        long refreshSeconds = pluginConfig != null ? pluginConfig.getPermissionRefreshSeconds() : 30;
+        refreshIntervalTicks = refreshSeconds * 20;
+        roundTicksLeft = 0;
+        clear();
+    }
+
+    /**
+     * Stops the refresh task
+     */
+    public void stop() {
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+
+    /**
+     * Re-resolves this tick's share of online players. Each round covers the players
+     * online when it starts and lasts one refresh interval.
+     */
+    private void refreshSome() {
+        if (--roundTicksLeft <= 0) {
+            refreshQueue.clear();
+            refreshQueue.addAll(plugin.getServer().getOnlinePlayers());
+            refreshPerTick = (int) ((refreshQueue.size() + refreshIntervalTicks - 1) / refreshIntervalTicks);
+            roundTicksLeft = refreshIntervalTicks;
+        }
+        for (int i = 0; i < refreshPerTick && !refreshQueue.isEmpty(); i++) {
+            Player player = refreshQueue.poll();
+            if (player.isOnline()) {
+                refresh(player);
+            }
+        }
+    }
+}
@@ -1,75 +1,110 @@
 package us.ironcladnetwork.blockback;
 
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Iterator;
+import java.util.Objects;
+import java.util.logging.Logger;
 
 /**
- * Manages persistent player settings for barkback, pathback, and farmback toggles.
- * Each player's data is stored in players.yml under their UUID. By default, all options are enabled.
+ * Manages persistent player settings for the {@link Feature} toggles.
+ * Each player's data is stored under their UUID by the {@link PlayerSettingsStore} selected
+ * with storage.mode in config.yml. By default, all options are enabled, and players
+ * who leave them that way have no stored entry.
  * Uses in-memory caching for improved performance.
  */
 public class PlayerDataManager {
 
     /**
-     * Represents cached player settings in memory
+     * Immutable snapshot of a player's settings. Changes produce a new instance,
+     * so a snapshot can be shared between threads and stores without copying.
      */
-    public static class PlayerSettings {
-        public boolean barkback = true;
-        public boolean pathback = true;
-        public boolean farmback = true;
-        public String name;
-        public long lastAccessed;
+    public static final class PlayerSettings {
+        // Bits of disabled features (see Feature); 0 means everything is enabled
+        public final int disabled;
+        public final String name;
         
         public PlayerSettings(String name) {
-            this.name = name;
-            this.lastAccessed = System.currentTimeMillis();
+            this(name, 0);
         }
         
-        public PlayerSettings(String name, boolean barkback, boolean pathback, boolean farmback) {
+        public PlayerSettings(String name, int disabled) {
             this.name = name;
-            this.barkback = barkback;
-            this.pathback = pathback;
-            this.farmback = farmback;
-            this.lastAccessed = System.currentTimeMillis();
+            this.disabled = disabled;
+        }
+        
+        public boolean isEnabled(Feature feature) {
+            return (disabled & feature.getMask()) == 0;
+        }
+        
+        public PlayerSettings withEnabled(Feature feature, boolean enabled) {
+            int updated = enabled ? disabled & ~feature.getMask() : disabled | feature.getMask();
+            return updated == disabled ? this : new PlayerSettings(name, updated);
         }
         
-        public void updateLastAccessed() {
-            this.lastAccessed = System.currentTimeMillis();
+        public PlayerSettings withName(String name) {
+            return Objects.equals(this.name, name) ? this : new PlayerSettings(name, disabled);
+        }
+        
+        /**
+         * @return true if every feature is enabled; such players are not stored at all
+         */
+        public boolean isDefault() {
+            return disabled == 0;
         }
     }
 
     private static PlayerDataManager instance;
     private final JavaPlugin plugin;
-    private final File configFile;
-    private FileConfiguration config;
-    private final AtomicBoolean saveInProgress = new AtomicBoolean(false);
-    private final AtomicBoolean pendingSave = new AtomicBoolean(false);
-    private volatile CountDownLatch shutdownLatch;
+    private final PlayerSettingsStore store;
+    // Applies every change to the store, so the main thread only enqueues
+    private final WriterThread writer;
+    private final WriteCoalescer writeCoalescer;
+    private int flushTaskId = -1;
+    private int changePollTaskId = -1;
+    private int purgeTaskId = -1;
+    private BackupManager backupManager;
+    
+    // Storage migration started with /blockback migrate; only one runs at a time
+    private volatile StoreMigration migration;
+    private volatile boolean migrationVerified;
+    private volatile boolean migrationCancelled;
     
     // Cache configuration
-    private static final int MAX_CACHE_SIZE = 100; // Maximum number of players to cache
-    private static final long CACHE_EXPIRY_MINUTES = 30; // Cache entries expire after 30 minutes of inactivity
+    private static final long CACHE_EXPIRY_TICKS = TickClock.TICKS_PER_SECOND * 60 * 30; // Offline entries expire after 30 minutes of inactivity
     private static final long CACHE_CLEANUP_INTERVAL_TICKS = 20 * 60 * 5; // Clean cache every 5 minutes
     
-    // In-memory cache for player settings - thread-safe concurrent map
-    private final ConcurrentHashMap<UUID, PlayerSettings> playerCache = new ConcurrentHashMap<>();
+    // First purge after startup has settled; deletes are handed to the store this many at a time
+    private static final long PURGE_DELAY_TICKS = 20 * 60 * 10;
+    private static final int PURGE_BATCH_SIZE = 500;
+    // Last-played lookups read player data files, so only this many run per tick
+    private static final int PURGE_LOOKUPS_PER_TICK = 50;
+    
+    // In-memory cache for player settings; online players are pinned
+    private final SettingsCache playerCache;
+    private final TickClock tickClock;
     private int cacheCleanupTaskId = -1;
+    
+    // Opening the store can take seconds on large servers, so it happens off the main thread.
+    // storeOpened is released once the store can be read; ready is set on the main thread
+    // after online players have been loaded, and gates reverts and commands until then.
+    private final CountDownLatch storeOpened = new CountDownLatch(1);
+    private volatile boolean ready;
+    private static final long PRELOAD_WAIT_SECONDS = 30;
+    // Longest a reload or migration waits for queued writes to reach the store
+    private static final long WRITE_WAIT_SECONDS = 30;
 
     /**
      * Initialize the PlayerDataManager. This must be called from the main plugin class.
@@ -93,282 +128,179 @@ public class PlayerDataManager {
         if (!dataFolder.exists()) {
             dataFolder.mkdirs();
         }
-        this.configFile = new File(dataFolder, "players.yml");
-        if (!configFile.exists()) {
-            try {
-                configFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not create players.yml: " + e.getMessage());
-            }
-        }
-        loadConfiguration();
+        this.writer = new WriterThread("BlockBack Writer", plugin.getLogger());
+        this.store = createStore(plugin, dataFolder, writer);
         
-        // Clean up any orphaned temp files from previous sessions
-        cleanupOrphanedTempFiles();
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        int maxDirty = pluginConfig != null ? pluginConfig.getFlushMaxDirty() : 500;
+        int cacheSize = pluginConfig != null ? pluginConfig.getCacheMaxSize() : 1000;
+        long flushIntervalTicks = pluginConfig != null ? pluginConfig.getFlushIntervalTicks() : 100;
+        this.writeCoalescer = new WriteCoalescer(store, writer, maxDirty);
+        startFlushTask(flushIntervalTicks);
+        
+        // Players already online (e.g. after /reload) are pinned like any other join
+        this.tickClock = new TickClock(plugin);
+        tickClock.start();
+        this.playerCache = new SettingsCache(cacheSize, tickClock);
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            playerCache.pin(player.getUniqueId());
+        }
         
         // Start cache cleanup task
         startCacheCleanupTask();
-    }
-
-    // Set default values for a new player
-    private void setDefaults(String uuid, String name) {
-        config.set(uuid + ".name", name);
-        config.set(uuid + ".barkback", true);
-        config.set(uuid + ".pathback", true);
-        config.set(uuid + ".farmback", true);
+        
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, this::openStore);
     }
     
     /**
-     * Load configuration with error handling and recovery
+     * Opens the store off the main thread, then finishes startup on the main thread
      */
-    private void loadConfiguration() {
+    private void openStore() {
+        StartupTimer timer = new StartupTimer();
         try {
-            config = YamlConfiguration.loadConfiguration(configFile);
-            
-            // Validate the loaded configuration
-            if (!validateConfiguration()) {
-                plugin.getLogger().warning("Configuration validation failed, attempting recovery...");
-                if (!recoverFromBackup()) {
-                    plugin.getLogger().warning("Recovery failed, creating new configuration with defaults");
-                    createEmptyConfiguration();
-                }
-            }
-            
+            store.open();
         } catch (Exception e) {
-            plugin.getLogger().severe("Failed to load players.yml: " + e.getMessage());
-            plugin.getLogger().warning("Attempting to recover from backup...");
-            
-            if (!recoverFromBackup()) {
-                plugin.getLogger().warning("Recovery failed, creating new configuration");
-                createEmptyConfiguration();
-            }
+            // Stores fall back to empty data themselves; carry on so players get defaults
+            plugin.getLogger().severe("Failed to open player data store: " + e.getMessage());
+        } finally {
+            storeOpened.countDown();
         }
+        timer.phase("open store");
+        plugin.getServer().getScheduler().runTask(plugin, () -> finishStartup(timer));
     }
     
     /**
-     * Validate the loaded configuration structure
-     * @return true if configuration is valid
+     * Loads online players and starts backups once the store is open
+     * @param timer timer started when the store began opening
      */
-    private boolean validateConfiguration() {
+    private void finishStartup(StartupTimer timer) {
         try {
-            // Check if the config object is valid
-            if (config == null) {
-                return false;
-            }
-            
-            // Try to access configuration methods to ensure it's not corrupted
-            config.getKeys(false);
-            
-            // If we have player data, validate a few entries
-            for (String key : config.getKeys(false)) {
-                if (key != null && !key.isEmpty()) {
-                    // Try to access player data to ensure structure is valid
-                    config.getConfigurationSection(key);
-                }
-            }
-            
-            return true;
+            preloadOnlinePlayers();
         } catch (Exception e) {
-            plugin.getLogger().warning("Configuration validation failed: " + e.getMessage());
-            return false;
+            plugin.getLogger().warning("Failed to load settings for online players: " + e.getMessage());
         }
-    }
-    
-    /**
-     * Create a backup of the current players.yml file
-     */
-    private void createBackup() {
-        if (!configFile.exists()) {
-            return;
+        timer.phase("load online players");
+        
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        if (pluginConfig != null && pluginConfig.isBackupsEnabled()) {
+            backupManager = new BackupManager(plugin, store, pluginConfig.getBackupKeepHourly(),
+                    pluginConfig.getBackupKeepDaily(), pluginConfig.getBackupKeepWeekly());
+            backupManager.start(pluginConfig.getBackupIntervalMinutes());
+        }
+        if (pluginConfig != null && pluginConfig.isPurgeEnabled()) {
+            startPurgeTask(pluginConfig.getPurgeIntervalHours(), pluginConfig.getPurgeInactiveDays());
         }
+        timer.phase("start backups");
         
-        try {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-            File backupFile = new File(configFile.getParent(), "players.yml.backup." + timestamp);
-            Files.copy(configFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            plugin.getLogger().info("Created backup: " + backupFile.getName());
-            
-            // Keep only the last 5 backups
-            cleanupOldBackups();
-            
-        } catch (IOException e) {
-            plugin.getLogger().warning("Failed to create backup: " + e.getMessage());
+        if (store instanceof SharedPlayerStore) {
+            startChangePollTask((SharedPlayerStore) store, pluginConfig.getSharedPollIntervalTicks());
         }
+        
+        ready = true;
+        plugin.getLogger().info("Player data ready in " + timer.summary());
     }
     
     /**
-     * Clean up old backup files, keeping only the last 5
+     * Player data is loaded in the background during startup. Until it is ready,
+     * lookups answer with default settings and changes are ignored.
+     * @return true once player settings can be read and changed
      */
-    private void cleanupOldBackups() {
-        File dataFolder = configFile.getParentFile();
-        File[] backups = dataFolder.listFiles((dir, name) -> name.startsWith("players.yml.backup."));
-        
-        if (backups != null && backups.length > 5) {
-            // Sort by modification time (oldest first)
-            java.util.Arrays.sort(backups, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
-            
-            // Delete oldest backups, keep only 5 most recent
-            for (int i = 0; i < backups.length - 5; i++) {
-                if (backups[i].delete()) {
-                    plugin.getLogger().info("Deleted old backup: " + backups[i].getName());
-                }
-            }
-        }
+    public boolean isReady() {
+        return ready;
     }
-    
+
     /**
-     * Attempt to recover from the most recent backup
-     * @return true if recovery was successful
+     * Creates the storage backend selected in config.yml
+     * @param plugin the JavaPlugin instance
+     * @param dataFolder the plugin data folder
+     * @param ioExecutor executor the store writes its files on
+     * @return the configured store (not yet opened)
      */
-    private boolean recoverFromBackup() {
-        File dataFolder = configFile.getParentFile();
-        File[] backups = dataFolder.listFiles((dir, name) -> name.startsWith("players.yml.backup."));
-        
-        if (backups == null || backups.length == 0) {
-            plugin.getLogger().warning("No backup files found for recovery");
-            return false;
+    private static PlayerSettingsStore createStore(JavaPlugin plugin, File dataFolder, Executor ioExecutor) {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        StorageMode mode = pluginConfig != null ? pluginConfig.getStorageMode() : StorageMode.YAML;
+
+        if (mode == StorageMode.SHARED) {
+            File sharedFolder = pluginConfig.getSharedDirectory();
+            plugin.getLogger().info("Using shared player storage in " + sharedFolder.getAbsolutePath());
+            return new SharedPlayerStore(sharedFolder, plugin.getLogger(),
+                    new SqlitePlayerStore(sharedFolder, plugin.getLogger(), true),
+                    pluginConfig.getSharedMaxLogBytes());
         }
-        
-        // Sort by modification time (newest first)
-        java.util.Arrays.sort(backups, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-        
-        for (File backup : backups) {
-            try {
-                plugin.getLogger().info("Attempting recovery from: " + backup.getName());
-                
-                // Try to load the backup file
-                FileConfiguration backupConfig = YamlConfiguration.loadConfiguration(backup);
-                backupConfig.getKeys(false); // Test if it's readable
-                
-                // If successful, copy backup to main file
-                Files.copy(backup.toPath(), configFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                config = YamlConfiguration.loadConfiguration(configFile);
-                
-                plugin.getLogger().info("Successfully recovered from backup: " + backup.getName());
-                return true;
-                
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to recover from " + backup.getName() + ": " + e.getMessage());
-                // Continue to next backup
-            }
+        if (mode != StorageMode.YAML) {
+            plugin.getLogger().info("Using " + mode.name().toLowerCase(Locale.ROOT) + " player storage");
         }
-        
-        plugin.getLogger().severe("All backup recovery attempts failed");
-        return false;
+        return createStore(mode, dataFolder, plugin.getLogger(), ioExecutor);
     }
-    
+
     /**
-     * Create a new empty configuration with proper structure
+     * Creates a store of the given layout in a folder. Tuning options come from config.yml
+     * when the plugin is loaded and fall back to their defaults otherwise.
+     * Shared storage is not supported here, as it lives outside the data folder.
+     * @param mode the storage layout
+     * @param dataFolder folder holding the store's files
+     * @param logger logger for status and error messages
+     * @param ioExecutor executor used for asynchronous writes
+     * @return the store (not yet opened)
      */
-    private void createEmptyConfiguration() {
-        config = new YamlConfiguration();
-        plugin.getLogger().info("Created new empty configuration file");
-        saveConfig(); // Save the empty config to disk
+    static PlayerSettingsStore createStore(StorageMode mode, File dataFolder, Logger logger, Executor ioExecutor) {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        switch (mode) {
+            case SHARDED:
+                return new ShardedYamlPlayerStore(dataFolder, logger, ioExecutor,
+                        pluginConfig != null ? pluginConfig.getShardPrefixLength() : 2);
+            case JOURNAL:
+                return new JournalPlayerStore(dataFolder, logger, ioExecutor,
+                        pluginConfig != null ? pluginConfig.getJournalCompactThresholdBytes() : 1024 * 1024);
+            case MAPPED:
+                return new MappedPlayerStore(dataFolder, logger,
+                        pluginConfig != null ? pluginConfig.getMappedForceIntervalMillis() : 5000);
+            case SQLITE:
+                return new SqlitePlayerStore(dataFolder, logger);
+            case INDEXED:
+                return new IndexedYamlPlayerStore(dataFolder, logger, ioExecutor);
+            case SHARED:
+                throw new IllegalArgumentException("Shared storage is not kept in the data folder");
+            case YAML:
+            default:
+                return new YamlPlayerStore(dataFolder, logger, ioExecutor);
+        }
     }
     
     /**
-     * Load and validate player settings from configuration
-     * @param uuid the player's UUID as string
+     * Load and validate player settings from the store
+     * @param uuid the player's UUID
      * @param playerName the player's current name
      * @return validated PlayerSettings object
      */
-    private PlayerSettings loadAndValidatePlayerSettings(String uuid, String playerName) {
+    private PlayerSettings loadAndValidatePlayerSettings(UUID uuid, String playerName) {
+        // Changes not yet flushed are newer than anything in the store
+        PlayerSettings pending = writeCoalescer.getPending(uuid);
+        if (pending != null) {
+            return pending;
+        }
+        
         try {
-            // Attempt to load player data with validation
-            String name = config.getString(uuid + ".name");
-            Object barkbackObj = config.get(uuid + ".barkback");
-            Object pathbackObj = config.get(uuid + ".pathback");
-            Object farmbackObj = config.get(uuid + ".farmback");
-            
-            // Validate and convert values
-            boolean barkback = validateBooleanSetting(barkbackObj, true, "barkback", uuid);
-            boolean pathback = validateBooleanSetting(pathbackObj, true, "pathback", uuid);
-            boolean farmback = validateBooleanSetting(farmbackObj, true, "farmback", uuid);
+            PlayerSettings settings = store.load(uuid);
+            if (settings == null) {
+                // No entry means defaults; nothing is written until a toggle changes
+                return new PlayerSettings(playerName);
+            }
             
             // Use current player name if stored name is invalid
-            if (name == null || name.trim().isEmpty()) {
-                name = playerName;
-                config.set(uuid + ".name", name);
-                saveConfig();
+            if (settings.name == null) {
+                settings = settings.withName(playerName);
+                if (!settings.isDefault()) {
+                    markDirty(uuid, settings);
+                }
             }
             
-            return new PlayerSettings(name, barkback, pathback, farmback);
+            return settings;
             
         } catch (Exception e) {
             plugin.getLogger().warning("Failed to load settings for player " + uuid + ": " + e.getMessage());
             plugin.getLogger().info("Using default settings for player " + playerName);
-            
-            // Create and save default settings
-            PlayerSettings defaults = new PlayerSettings(playerName);
-            setDefaults(uuid, playerName);
-            saveConfig();
-            
-            return defaults;
-        }
-    }
-    
-    /**
-     * Validate a boolean setting value
-     * @param value the value to validate
-     * @param defaultValue the default value to use if invalid
-     * @param settingName the name of the setting for logging
-     * @param uuid the player's UUID for logging
-     * @return validated boolean value
-     */
-    private boolean validateBooleanSetting(Object value, boolean defaultValue, String settingName, String uuid) {
-        if (value == null) {
-            plugin.getLogger().warning("Missing " + settingName + " setting for player " + uuid + ", using default: " + defaultValue);
-            return defaultValue;
-        }
-        
-        if (value instanceof Boolean) {
-            return (Boolean) value;
-        }
-        
-        if (value instanceof String) {
-            String strValue = ((String) value).trim();
-            
-            // Handle empty strings
-            if (strValue.isEmpty()) {
-                plugin.getLogger().warning("Empty " + settingName + " setting for player " + uuid + ", using default: " + defaultValue);
-                return defaultValue;
-            }
-            
-            // Remove any special characters and normalize
-            strValue = strValue.replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
-            
-            // Check for true values
-            if ("true".equals(strValue) || "yes".equals(strValue) || "y".equals(strValue) || 
-                "1".equals(strValue) || "on".equals(strValue) || "enabled".equals(strValue) || 
-                "enable".equals(strValue) || "t".equals(strValue)) {
-                return true;
-            }
-            
-            // Check for false values
-            if ("false".equals(strValue) || "no".equals(strValue) || "n".equals(strValue) || 
-                "0".equals(strValue) || "off".equals(strValue) || "disabled".equals(strValue) || 
-                "disable".equals(strValue) || "f".equals(strValue)) {
-                return false;
-            }
-            
-            // If we get here, the string doesn't match any known boolean representation
-            plugin.getLogger().warning("Invalid " + settingName + " value '" + value + "' for player " + uuid + ", using default: " + defaultValue);
-            return defaultValue;
-        }
-        
-        if (value instanceof Number) {
-            // Consider 0 as false, any other number as true
-            return ((Number) value).intValue() != 0;
-        }
-        
-        // Handle any other object types by attempting string conversion
-        try {
-            String strValue = value.toString().trim();
-            // Recursively call with string value
-            return validateBooleanSetting(strValue, defaultValue, settingName, uuid);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Cannot parse " + settingName + " value '" + value + "' (type: " + value.getClass().getSimpleName() + ") for player " + uuid + ", using default: " + defaultValue);
-            return defaultValue;
+            return new PlayerSettings(playerName);
         }
     }
     
@@ -379,7 +311,7 @@ public class PlayerDataManager {
      */
     private PlayerSettings getEmergencyDefaults(Player player) {
         plugin.getLogger().warning("Using emergency defaults for player " + player.getName() + " due to data corruption");
-        return new PlayerSettings(player.getName(), true, true, true);
+        return new PlayerSettings(player.getName());
     }
     
     /**
@@ -388,55 +320,35 @@ public class PlayerDataManager {
      */
     public boolean isConfigurationHealthy() {
         try {
-            return config != null && configFile != null && configFile.getParentFile().canWrite();
+            return store.isHealthy();
         } catch (Exception e) {
             return false;
         }
     }
 
     /**
-     * Generic method to get a player's feature setting with caching
+     * Gets a player's cached settings, loading them from the store on a cache miss
      * @param player the player
-     * @param featureName the feature name (e.g., "barkback", "pathback", "farmback")
-     * @return true if the feature is enabled (defaults to true)
+     * @return the player's settings
      */
-    private boolean getFeatureSetting(Player player, String featureName) {
+    private PlayerSettings getSettings(Player player) {
         UUID uuid = player.getUniqueId();
+        if (!ready) {
+            // Not cached, so the real settings are loaded on first use once ready
+            return new PlayerSettings(player.getName());
+        }
         
         // Check cache first
         PlayerSettings cached = playerCache.get(uuid);
         if (cached != null) {
-            cached.updateLastAccessed();
-            switch (featureName) {
-                case "barkback": return cached.barkback;
-                case "pathback": return cached.pathback;
-                case "farmback": return cached.farmback;
-                default: return true;
-            }
+            return cached;
         }
         
-        // Load from file if not in cache
-        String uuidStr = uuid.toString();
+        // Load from the store if not in cache
         PlayerSettings settings;
         
         try {
-            if (!config.contains(uuidStr)) {
-                // New player - create defaults
-                settings = new PlayerSettings(player.getName());
-                setDefaults(uuidStr, player.getName());
-                saveConfig();
-            } else {
-                // Load existing settings with validation
-                settings = loadAndValidatePlayerSettings(uuidStr, player.getName());
-            }
-            
-            // Cache the settings (check size limit first)
-            if (playerCache.size() >= MAX_CACHE_SIZE) {
-                // Remove oldest entry before adding new one
-                playerCache.entrySet().stream()
-                    .min((e1, e2) -> Long.compare(e1.getValue().lastAccessed, e2.getValue().lastAccessed))
-                    .ifPresent(entry -> playerCache.remove(entry.getKey()));
-            }
+            settings = loadAndValidatePlayerSettings(uuid, player.getName());
             playerCache.put(uuid, settings);
             
         } catch (Exception e) {
@@ -446,76 +358,140 @@ public class PlayerDataManager {
             playerCache.put(uuid, settings);
         }
         
-        // Return the requested setting
-        switch (featureName) {
-            case "barkback": return settings.barkback;
-            case "pathback": return settings.pathback;
-            case "farmback": return settings.farmback;
-            default: return true;
+        return settings;
+    }
+
+    /**
+     * Loads a joining player's settings into the cache so their first interaction
+     * does not touch the store on the main thread. Called from AsyncPlayerPreLoginEvent,
+     * off the main thread.
+     * @param uuid the joining player's UUID
+     * @param playerName the joining player's name
+     */
+    public void preload(UUID uuid, String playerName) {
+        try {
+            // Logins during startup wait here, off the main thread, for the store to open
+            if (!storeOpened.await(PRELOAD_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                return;
+            }
+            PlayerSettings settings = loadAndValidatePlayerSettings(uuid, playerName);
+            // Never replace settings the main thread cached or changed in the meantime
+            playerCache.putIfAbsent(uuid, settings);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The main thread will load them on first use instead
+            plugin.getLogger().warning("Failed to preload settings for player " + playerName + ": " + e.getMessage());
         }
     }
 
     /**
-     * Generic method to set a player's feature setting with cache update
+     * Checks whether a feature is enabled for a player, using the cache
+     * @param player the player
+     * @param feature the feature to check
+     * @return true if the feature is enabled (defaults to true)
+     */
+    public boolean isEnabled(Player player, Feature feature) {
+        return getSettings(player).isEnabled(feature);
+    }
+
+    /**
+     * Enables or disables a feature for a player and queues the change to be saved.
+     * Ignored until {@link #isReady()}.
      * @param player the player
-     * @param featureName the feature name (e.g., "barkback", "pathback", "farmback")
+     * @param feature the feature to change
      * @param enabled whether the feature should be enabled
      */
-    private void setFeatureSetting(Player player, String featureName, boolean enabled) {
+    public void setEnabled(Player player, Feature feature, boolean enabled) {
+        updateSettings(player, current -> current.withEnabled(feature, enabled).withName(player.getName()));
+    }
+
+    /**
+     * Atomically replaces a player's cached settings and queues the result to be saved
+     * @param player the player
+     * @param change computes the new settings from the current ones
+     */
+    private void updateSettings(Player player, UnaryOperator<PlayerSettings> change) {
+        if (!ready) {
+            return;
+        }
         UUID uuid = player.getUniqueId();
-        String uuidStr = uuid.toString();
-        
-        // Update file configuration
-        config.set(uuidStr + ".name", player.getName());
-        config.set(uuidStr + "." + featureName, enabled);
-        saveConfig();
-        
-        // Update cache
-        PlayerSettings cached = playerCache.get(uuid);
-        if (cached == null) {
-            // Create new cache entry if doesn't exist
-            cached = new PlayerSettings(player.getName());
-            // Check size limit before adding
-            if (playerCache.size() >= MAX_CACHE_SIZE) {
-                playerCache.entrySet().stream()
-                    .min((e1, e2) -> Long.compare(e1.getValue().lastAccessed, e2.getValue().lastAccessed))
-                    .ifPresent(entry -> playerCache.remove(entry.getKey()));
-            }
-            playerCache.put(uuid, cached);
-        } else {
-            cached.updateLastAccessed();
+        PlayerSettings updated = null;
+        while (updated == null) {
+            // Load through the cache so the player's other settings are preserved
+            getSettings(player);
+            updated = playerCache.update(uuid, current -> {
+                PlayerSettings next = change.apply(current);
+                // Queued inside the update so concurrent changes reach the coalescer in the order they were applied
+                if (next != current) {
+                    writeCoalescer.markDirty(uuid, next);
+                }
+                return next;
+            });
         }
-        
-        // Update the specific setting in cache
-        switch (featureName) {
-            case "barkback": cached.barkback = enabled; break;
-            case "pathback": cached.pathback = enabled; break;
-            case "farmback": cached.farmback = enabled; break;
+        flushIfDue();
+    }
+
+    /**
+     * Queue a player's settings for the next flush, flushing early if too many are waiting
+     * @param uuid the player's UUID
+     * @param settings the player's current settings
+     */
+    private void markDirty(UUID uuid, PlayerSettings settings) {
+        writeCoalescer.markDirty(uuid, settings);
+        flushIfDue();
+    }
+
+    private void flushIfDue() {
+        // Early flushes only run on the main thread; async preloads leave them to the flush timer
+        if (writeCoalescer.isFlushDue() && plugin.getServer().isPrimaryThread()) {
+            flushPendingWrites();
+        }
+    }
+
+    /**
+     * Queues all changed settings for the writer thread in one batch.
+     * Runs on the flush timer, and early when the dirty threshold is reached.
+     */
+    public void flushPendingWrites() {
+        StoreMigration running = migration;
+        if (running != null && !migrationVerified && !migrationCancelled) {
+            // Held back while the store is being copied, so the copy sees a fixed set of players
+            return;
+        }
+        try {
+            Map<UUID, PlayerSettings> written = writeCoalescer.flush();
+            if (!written.isEmpty()) {
+                if (running != null && migrationVerified) {
+                    // Keep the migrated store current until it is installed at shutdown
+                    writer.execute(() -> WriteCoalescer.write(running.getTarget(), written));
+                }
+                plugin.getLogger().fine("Flushed settings for " + written.size() + " players");
+            }
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to flush player settings: " + e.getMessage());
         }
-        
-        // Update name in cache
-        cached.name = player.getName();
     }
 
     /**
      * @return true if the player's barkback is enabled (defaults to true)
      */
     public boolean isBarkBackEnabled(Player player) {
-        return getFeatureSetting(player, "barkback");
+        return isEnabled(player, Feature.BARKBACK);
     }
 
     /**
      * @return true if the player's pathback is enabled (defaults to true)
      */
     public boolean isPathBackEnabled(Player player) {
-        return getFeatureSetting(player, "pathback");
+        return isEnabled(player, Feature.PATHBACK);
     }
 
     /**
      * @return true if the player's farmback is enabled (defaults to true)
      */
     public boolean isFarmBackEnabled(Player player) {
-        return getFeatureSetting(player, "farmback");
+        return isEnabled(player, Feature.FARMBACK);
     }
 
     /**
@@ -524,7 +500,7 @@ public class PlayerDataManager {
      * @param enabled true to enable, false to disable
      */
     public void setBarkBack(Player player, boolean enabled) {
-        setFeatureSetting(player, "barkback", enabled);
+        setEnabled(player, Feature.BARKBACK, enabled);
     }
 
     /**
@@ -533,7 +509,7 @@ public class PlayerDataManager {
      * @param enabled true to enable, false to disable
      */
     public void setPathBack(Player player, boolean enabled) {
-        setFeatureSetting(player, "pathback", enabled);
+        setEnabled(player, Feature.PATHBACK, enabled);
     }
 
     /**
@@ -542,128 +518,83 @@ public class PlayerDataManager {
      * @param enabled true to enable, false to disable
      */
     public void setFarmBack(Player player, boolean enabled) {
-        setFeatureSetting(player, "farmback", enabled);
-    }
-
-    // Save the configuration to players.yml asynchronously to avoid blocking the main thread.
-    // Uses atomic boolean to prevent race conditions and queue pending saves.
-    private void saveConfig() {
-        pendingSave.set(true);
-        
-        // If a save is already in progress, just mark that we have a pending save
-        if (!saveInProgress.compareAndSet(false, true)) {
-            return;
-        }
-        
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            File tempFile = null;
-            try {
-                // Keep saving while there are pending changes
-                do {
-                    pendingSave.set(false);
-                    
-                    // Create a temporary file for atomic write operations
-                    tempFile = new File(configFile.getAbsolutePath() + ".tmp");
-                    boolean tempFileCreated = false;
-                    
-                    try {
-                        // Create backup before saving if file exists and has content
-                        if (configFile.exists() && configFile.length() > 0) {
-                            createBackup();
-                        }
-                        
-                        // Mark that we're about to create the temp file
-                        tempFileCreated = true;
-                        config.save(tempFile);
-                        
-                        // Atomic rename to replace the original file
-                        if (!tempFile.renameTo(configFile)) {
-                            // Fallback to direct save if rename fails
-                            plugin.getLogger().warning("Atomic rename failed, falling back to direct save");
-                            config.save(configFile);
-                            
-                            // Try to delete the temp file since rename failed
-                            if (tempFile.exists() && !tempFile.delete()) {
-                                // Schedule deletion on JVM exit as last resort
-                                tempFile.deleteOnExit();
-                                plugin.getLogger().warning("Failed to delete temporary file, scheduled for deletion on exit: " + tempFile.getAbsolutePath());
-                            }
-                        }
-                        // If rename succeeded, tempFile no longer exists at original path
-                        tempFile = null;
-                        
-                    } catch (IOException saveException) {
-                        plugin.getLogger().severe("Failed to save to temporary file: " + saveException.getMessage());
-                        
-                        // Clean up temp file before trying direct save
-                        if (tempFileCreated && tempFile != null && tempFile.exists()) {
-                            if (!tempFile.delete()) {
-                                tempFile.deleteOnExit();
-                            }
-                        }
-                        
-                        // Try direct save as last resort
-                        try {
-                            config.save(configFile);
-                        } catch (IOException directSaveException) {
-                            plugin.getLogger().severe("Direct save also failed: " + directSaveException.getMessage());
-                            throw directSaveException;
-                        }
-                    } finally {
-                        // Clean up temporary file if it still exists
-                        if (tempFile != null && tempFile.exists()) {
-                            if (!tempFile.delete()) {
-                                tempFile.deleteOnExit();
-                                plugin.getLogger().warning("Failed to delete temporary file, scheduled for deletion on exit: " + tempFile.getAbsolutePath());
-                            }
-                        }
-                    }
-                    
-                } while (pendingSave.compareAndSet(true, false));
-                
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not save players.yml asynchronously: " + e.getMessage());
-            } finally {
-                // Final cleanup attempt for any lingering temp files
-                if (tempFile != null && tempFile.exists()) {
-                    if (!tempFile.delete()) {
-                        tempFile.deleteOnExit();
-                    }
-                }
-                saveInProgress.set(false);
-                
-                // Notify shutdown latch if waiting
-                CountDownLatch latch = shutdownLatch;
-                if (latch != null) {
-                    latch.countDown();
-                }
-                
-                // Check if another save was requested while we were finishing
-                if (pendingSave.get()) {
-                    saveConfig();
-                }
-            }
-        });
+        setEnabled(player, Feature.FARMBACK, enabled);
     }
 
     /**
-     * Reloads the players.yml configuration and clears cache with error recovery.
+     * Reloads player data from the store and clears cache with error recovery.
+     * Changing storage.mode requires a restart.
      */
     public void reloadConfig() {
         // Clear cache first to ensure fresh data
         playerCache.clear();
         
-        try {
-            loadConfiguration();
+        // Write out pending changes so the reload cannot discard them
+        flushPendingWrites();
+        // The reload changes the store's files and state, so it runs on the writer like every
+        // other change, behind the writes just flushed
+        boolean[] reloaded = {false};
+        boolean finished = writer.runAndWait(() -> {
+            try {
+                store.reload();
+                reloaded[0] = true;
+            } catch (Exception e) {
+                plugin.getLogger().severe("Failed to reload player configuration: " + e.getMessage());
+                plugin.getLogger().warning("Player data may be using fallback defaults until next restart");
+            }
+        }, WRITE_WAIT_SECONDS, TimeUnit.SECONDS);
+        if (!finished) {
+            plugin.getLogger().warning("Timed out waiting for the player data reload; it will finish in the background"
+                    + " and players are loaded as they are next needed");
+            return;
+        }
+        if (reloaded[0]) {
+            preloadOnlinePlayers();
             plugin.getLogger().info("Player configuration reloaded successfully");
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to reload player configuration: " + e.getMessage());
-            plugin.getLogger().warning("Player data may be using fallback defaults until next restart");
         }
     }
     
     /**
-     * Removes a player from the cache (typically called on player disconnect)
+     * Loads settings for everyone currently online in a single batch
+     * so the first interaction after a reload does not hit the store.
+     */
+    private void preloadOnlinePlayers() {
+        Map<UUID, String> online = new HashMap<>();
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            online.put(player.getUniqueId(), player.getName());
+        }
+        if (online.isEmpty()) {
+            return;
+        }
+        
+        Map<UUID, PlayerSettings> loaded = store.loadAll(online.keySet());
+        for (Map.Entry<UUID, PlayerSettings> entry : loaded.entrySet()) {
+            PlayerSettings settings = entry.getValue();
+            if (settings.name == null) {
+                settings = settings.withName(online.get(entry.getKey()));
+            }
+            playerCache.put(entry.getKey(), settings);
+        }
+    }
+    
+    /**
+     * Pins a joining player's settings so they are never evicted while online
+     * @param player the player who joined
+     */
+    public void handleJoin(Player player) {
+        playerCache.pin(player.getUniqueId());
+    }
+    
+    /**
+     * Unpins a leaving player's settings; they stay cached until evicted or idle
+     * @param player the player who quit
+     */
+    public void handleQuit(Player player) {
+        playerCache.unpin(player.getUniqueId());
+    }
+    
+    /**
+     * Removes a player from the cache
      * @param player the player to remove from cache
      */
     public void removeFromCache(Player player) {
@@ -686,6 +617,34 @@ public class PlayerDataManager {
         return playerCache.size();
     }
     
+    /**
+     * @return number of online players currently cached
+     */
+    public int getPinnedCacheSize() {
+        return playerCache.pinnedSize();
+    }
+    
+    /**
+     * @return number of cache lookups that found the player
+     */
+    public long getCacheHits() {
+        return playerCache.getHits();
+    }
+    
+    /**
+     * @return number of cache lookups that had to go to the store
+     */
+    public long getCacheMisses() {
+        return playerCache.getMisses();
+    }
+    
+    /**
+     * @return number of offline players evicted to stay within the configured size
+     */
+    public long getCacheEvictions() {
+        return playerCache.getEvictions();
+    }
+    
     /**
      * Clears all cached player data
      */
@@ -700,51 +659,321 @@ public class PlayerDataManager {
      * @return true if all saves completed, false if timeout occurred
      */
     public boolean shutdown(int timeoutSeconds) {
-        // Stop the cache cleanup task
+        // Stop the cache cleanup, flush, clock and backup tasks
         stopCacheCleanupTask();
-        
-        if (!saveInProgress.get() && !pendingSave.get()) {
-            return true; // No saves pending
+        tickClock.stop();
+        stopFlushTask();
+        stopChangePollTask();
+        stopPurgeTask();
+        if (backupManager != null) {
+            backupManager.stop();
         }
         
-        shutdownLatch = new CountDownLatch(1);
-        
+        // A store still opening must finish before it can be closed
         try {
-            // Wait for the current save to complete
-            boolean completed = shutdownLatch.await(timeoutSeconds, TimeUnit.SECONDS);
-            if (!completed) {
-                plugin.getLogger().warning("Timeout waiting for player data save to complete during shutdown");
+            if (!storeOpened.await(timeoutSeconds, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Player data store was still opening at shutdown");
+                return false;
             }
-            return completed;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            plugin.getLogger().warning("Interrupted while waiting for player data save during shutdown");
             return false;
-        } finally {
-            shutdownLatch = null;
         }
+        
+        // An unfinished migration is abandoned; its thread discards the copy
+        StoreMigration running = migration;
+        if (running != null && !migrationVerified) {
+            migrationCancelled = true;
+            plugin.getLogger().warning("Storage migration was still running at shutdown and has been cancelled");
+        }
+        
+        // Hand any remaining changes to the store and let the writer finish before it closes
+        flushPendingWrites();
+        boolean closed = writer.shutdown(timeoutSeconds);
+        closed &= store.close(timeoutSeconds);
+        
+        if (running != null && migrationVerified) {
+            // Switch over now that nothing else is writing to either store
+            if (running.install(timeoutSeconds)) {
+                PluginConfig pluginConfig = PluginConfig.getInstance();
+                if (pluginConfig != null) {
+                    pluginConfig.setStorageMode(running.getTo());
+                }
+            } else {
+                closed = false;
+            }
+        }
+        return closed;
     }
     
     /**
-     * Cleans up any orphaned .tmp files from previous sessions
+     * @return true while a storage migration is copying or waiting to be installed
      */
-    private void cleanupOrphanedTempFiles() {
-        File dataFolder = configFile.getParentFile();
-        if (dataFolder.exists() && dataFolder.isDirectory()) {
-            File[] tempFiles = dataFolder.listFiles((dir, name) -> name.endsWith(".tmp"));
-            if (tempFiles != null && tempFiles.length > 0) {
-                for (File tempFile : tempFiles) {
-                    if (tempFile.delete()) {
-                        plugin.getLogger().info("Cleaned up orphaned temp file: " + tempFile.getName());
-                    } else {
-                        tempFile.deleteOnExit();
-                        plugin.getLogger().warning("Failed to delete orphaned temp file, scheduled for deletion on exit: " + tempFile.getName());
-                    }
+    public boolean isMigrating() {
+        return migration != null;
+    }
+    
+    /**
+     * Copies every player from the current store to a new storage layout off the main thread.
+     * Changes are held back while copying. Once both sides are counted and checksummed,
+     * later changes are written to both stores and the new layout is installed on shutdown.
+     * Must be called on the main thread.
+     * @param to the layout to migrate to
+     * @param messages receives progress and the outcome, on the main thread
+     * @return why the migration cannot start, or null if it has started
+     */
+    public String migrate(StorageMode to, Consumer<String> messages) {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        StorageMode from = pluginConfig != null ? pluginConfig.getStorageMode() : StorageMode.YAML;
+        if (migration != null) {
+            return "A storage migration is already in progress.";
+        }
+        String problem = StoreMigration.checkModes(from, to);
+        if (problem != null) {
+            return problem;
+        }
+        
+        flushPendingWrites();
+        StoreMigration started = new StoreMigration(plugin.getDataFolder(), plugin.getLogger(), from, to);
+        migrationVerified = false;
+        migrationCancelled = false;
+        migration = started;
+        
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            StoreMigration.Result result = null;
+            try {
+                // The copy starts from everything flushed above
+                writer.awaitQueued(WRITE_WAIT_SECONDS, TimeUnit.SECONDS);
+                result = started.run(store, (copied, perSecond) -> {
+                    String message = "Copied " + copied + " players (" + perSecond + "/s)";
+                    plugin.getLogger().info(message);
+                    plugin.getServer().getScheduler().runTask(plugin, () -> messages.accept(message));
+                });
+            } catch (Exception e) {
+                plugin.getLogger().severe("Storage migration failed: " + e.getMessage());
+            }
+            
+            StoreMigration.Result finished = result;
+            if (migrationCancelled) {
+                started.abort();
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> completeMigration(started, finished, messages));
+        });
+        return null;
+    }
+    
+    /**
+     * Accepts a verified migration, or discards one that failed. Runs on the main thread.
+     */
+    private void completeMigration(StoreMigration finished, StoreMigration.Result result, Consumer<String> messages) {
+        if (result == null || !result.isVerified()) {
+            finished.abort();
+            migration = null;
+            String message = result == null ? "Storage migration failed, see the server log. Nothing was changed."
+                    : "Storage migration did not verify (" + result + "). Nothing was changed.";
+            plugin.getLogger().severe(message);
+            messages.accept(message);
+            return;
+        }
+        
+        finished.writeInBackground(task -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task));
+        migrationVerified = true;
+        // Changes held back during the copy go to both stores
+        flushPendingWrites();
+        String message = "Storage migration verified: " + result
+                + ". " + finished.getTo().name().toLowerCase(Locale.ROOT) + " storage will be used after a restart.";
+        plugin.getLogger().info(message);
+        messages.accept(message);
+    }
+    
+    /**
+     * Starts the write-behind flush task. It runs on the main thread so flushed
+     * settings are never read while a command is changing them.
+     * @param intervalTicks ticks between flushes
+     */
+    private void startFlushTask(long intervalTicks) {
+        flushTaskId = plugin.getServer().getScheduler().runTaskTimer(plugin,
+                this::flushPendingWrites, intervalTicks, intervalTicks).getTaskId();
+    }
+    
+    /**
+     * Stops the write-behind flush task
+     */
+    private void stopFlushTask() {
+        if (flushTaskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(flushTaskId);
+            flushTaskId = -1;
+        }
+    }
+    
+    /**
+     * Starts polling for changes other servers made to the shared store
+     * @param sharedStore the shared store
+     * @param intervalTicks ticks between polls
+     */
+    private void startChangePollTask(SharedPlayerStore sharedStore, long intervalTicks) {
+        ChangeLog.Listener listener = new ChangeLog.Listener() {
+            @Override
+            public void changed(UUID uuid, PlayerSettings settings) {
+                // A local change still waiting to be flushed is newer and will be announced in turn
+                if (writeCoalescer.getPending(uuid) != null) {
+                    return;
                 }
+                if (settings == null) {
+                    playerCache.remove(uuid);
+                } else {
+                    // Only players already cached are updated; others load on demand as usual
+                    playerCache.update(uuid, current -> settings.name != null ? settings : settings.withName(current.name));
+                }
+            }
+            
+            @Override
+            public void reset() {
+                plugin.getLogger().warning("Missed changes from other servers, reloading cached player settings");
+                playerCache.clear();
+                plugin.getServer().getScheduler().runTask(plugin, PlayerDataManager.this::preloadOnlinePlayers);
             }
+        };
+        changePollTaskId = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            int received = sharedStore.pollChanges(listener);
+            if (received > 0) {
+                plugin.getLogger().fine("Applied " + received + " changes from other servers");
+            }
+        }, intervalTicks, intervalTicks).getTaskId();
+    }
+    
+    /**
+     * Stops polling the shared store for changes
+     */
+    private void stopChangePollTask() {
+        if (changePollTaskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(changePollTaskId);
+            changePollTaskId = -1;
+        }
+    }
+    
+    /**
+     * Starts the periodic purge of stored players that do not need an entry
+     * @param intervalHours hours between purges
+     * @param inactiveDays days without joining after which a player is removed, or 0 to keep them
+     */
+    private void startPurgeTask(long intervalHours, int inactiveDays) {
+        long intervalTicks = intervalHours * 60 * 60 * 20;
+        purgeTaskId = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                () -> purgeStoredPlayers(inactiveDays), PURGE_DELAY_TICKS, intervalTicks).getTaskId();
+    }
+    
+    private void stopPurgeTask() {
+        if (purgeTaskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(purgeTaskId);
+            purgeTaskId = -1;
         }
     }
     
+    /**
+     * Removes entries the store does not need: players whose settings are all defaults and,
+     * if inactiveDays is set, players who have not joined for that long. Streams through the
+     * store off the main thread, collecting UUIDs only; last-played times are then read on
+     * the main thread a few per tick. Online players and players with unsaved changes are kept.
+     * @param inactiveDays days without joining after which a player is removed, or 0 to keep them
+     */
+    private void purgeStoredPlayers(int inactiveDays) {
+        if (isMigrating()) {
+            // The copy must see a fixed set of players; try again next time
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // Last-played times are per server, so they say nothing about a shared store
+        long cutoff = inactiveDays > 0 && !(store instanceof SharedPlayerStore)
+                ? start - TimeUnit.DAYS.toMillis(inactiveDays) : 0;
+        
+        List<UUID> defaults = new ArrayList<>();
+        List<UUID> candidates = new ArrayList<>();
+        store.forEach((uuid, settings) -> {
+            if (settings.isDefault()) {
+                defaults.add(uuid);
+            } else if (cutoff > 0) {
+                candidates.add(uuid);
+            }
+        });
+        
+        int removedDefaults = deleteInBatches(defaults);
+        if (candidates.isEmpty()) {
+            reportPurge(start, removedDefaults, 0, inactiveDays, cutoff);
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> findInactive(candidates, 0, cutoff, new ArrayList<>(),
+                inactive -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                    if (isMigrating()) {
+                        return;
+                    }
+                    int removedInactive = deleteInBatches(inactive);
+                    for (UUID uuid : inactive) {
+                        if (!playerCache.isOnline(uuid)) {
+                            playerCache.remove(uuid);
+                        }
+                    }
+                    reportPurge(start, removedDefaults, removedInactive, inactiveDays, cutoff);
+                })));
+    }
+    
+    /**
+     * Checks up to {@link #PURGE_LOOKUPS_PER_TICK} players' last-played times and continues
+     * on the next tick until every candidate is checked. Main thread only.
+     * @param candidates players to check
+     * @param from index of the first player to check this tick
+     * @param cutoff last-played time before which a player is inactive
+     * @param inactive collects the inactive players
+     * @param done receives the inactive players once every candidate is checked
+     */
+    private void findInactive(List<UUID> candidates, int from, long cutoff, List<UUID> inactive, Consumer<List<UUID>> done) {
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        int end = Math.min(from + PURGE_LOOKUPS_PER_TICK, candidates.size());
+        for (int i = from; i < end; i++) {
+            long lastPlayed = plugin.getServer().getOfflinePlayer(candidates.get(i)).getLastPlayed();
+            if (lastPlayed > 0 && lastPlayed < cutoff) {
+                inactive.add(candidates.get(i));
+            }
+        }
+        if (end < candidates.size()) {
+            plugin.getServer().getScheduler().runTask(plugin, () -> findInactive(candidates, end, cutoff, inactive, done));
+        } else {
+            done.accept(inactive);
+        }
+    }
+    
+    private void reportPurge(long start, int removedDefaults, int removedInactive, int inactiveDays, long cutoff) {
+        if (removedDefaults + removedInactive > 0) {
+            plugin.getLogger().info("Purged " + removedDefaults + " players with default settings"
+                    + (cutoff > 0 ? " and " + removedInactive + " inactive for " + inactiveDays + " days" : "")
+                    + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+    
+    /**
+     * Deletes offline players without unsaved changes, a batch at a time so a flush
+     * on the main thread never waits long for the purge
+     * @return number of players deleted
+     */
+    private int deleteInBatches(List<UUID> uuids) {
+        int deleted = 0;
+        List<UUID> batch = new ArrayList<>(PURGE_BATCH_SIZE);
+        for (int i = 0; i < uuids.size(); i++) {
+            UUID uuid = uuids.get(i);
+            if (!playerCache.isOnline(uuid)) {
+                batch.add(uuid);
+            }
+            if (batch.size() == PURGE_BATCH_SIZE || i == uuids.size() - 1) {
+                deleted += writeCoalescer.deleteUnchanged(batch);
+                batch.clear();
+            }
+        }
+        return deleted;
+    }
+    
     /**
      * Starts the cache cleanup task to prevent memory leaks
      */
@@ -765,41 +994,13 @@ public class PlayerDataManager {
     }
     
     /**
-     * Cleans up expired cache entries and enforces size limits
+     * Removes offline players that have not been used within the expiry time.
+     * The cache enforces its size limit itself on insertion.
      */
     private void cleanupCache() {
-        long now = System.currentTimeMillis();
-        long expiryTime = CACHE_EXPIRY_MINUTES * 60 * 1000;
-        
-        // Remove expired entries
-        Iterator<Map.Entry<UUID, PlayerSettings>> iterator = playerCache.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<UUID, PlayerSettings> entry = iterator.next();
-            PlayerSettings settings = entry.getValue();
-            
-            // Check if player is still online
-            if (plugin.getServer().getPlayer(entry.getKey()) != null) {
-                settings.updateLastAccessed();
-                continue;
-            }
-            
-            // Remove if expired
-            if (now - settings.lastAccessed > expiryTime) {
-                iterator.remove();
-                plugin.getLogger().fine("Removed expired cache entry for player: " + settings.name);
-            }
-        }
-        
-        // Enforce maximum cache size by removing oldest entries
-        if (playerCache.size() > MAX_CACHE_SIZE) {
-            // Convert to list and sort by last accessed time
-            playerCache.entrySet().stream()
-                .sorted((e1, e2) -> Long.compare(e1.getValue().lastAccessed, e2.getValue().lastAccessed))
-                .limit(playerCache.size() - MAX_CACHE_SIZE)
-                .forEach(entry -> {
-                    playerCache.remove(entry.getKey());
-                    plugin.getLogger().fine("Removed cache entry due to size limit: " + entry.getValue().name);
-                });
+        int removed = playerCache.removeIdle(CACHE_EXPIRY_TICKS);
+        if (removed > 0) {
+            plugin.getLogger().fine("Removed " + removed + " expired cache entries");
         }
     }
-} 
\ No newline at end of file
+}
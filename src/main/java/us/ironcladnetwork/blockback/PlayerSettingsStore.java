@@ -0,0 +1,105 @@
+package us.ironcladnetwork.blockback;
+
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Backing storage for persistent player settings.
+ * Implementations own their data files and are responsible for writing changes
+ * to disk without blocking the main thread. Settings are immutable snapshots,
+ * so stores may keep the instances they are given and return them directly.
+ */
+interface PlayerSettingsStore {
+
+    /**
+     * Opens the store, loading and validating any backing files.
+     */
+    void open();
+
+    /**
+     * Loads the stored settings for a player.
+     * @param uuid the player's UUID
+     * @return the stored settings (name may be null if missing), or null if the player has no entry
+     */
+    PlayerSettings load(UUID uuid);
+
+    /**
+     * Loads the stored settings for several players at once.
+     * @param uuids the players to load
+     * @return settings keyed by UUID; players without an entry are absent
+     */
+    default Map<UUID, PlayerSettings> loadAll(Collection<UUID> uuids) {
+        Map<UUID, PlayerSettings> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            PlayerSettings settings = load(uuid);
+            if (settings != null) {
+                result.put(uuid, settings);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inserts or replaces a player's settings and schedules them to be written to disk.
+     * @param uuid the player's UUID
+     * @param settings the settings to store
+     */
+    void upsert(UUID uuid, PlayerSettings settings);
+
+    /**
+     * Inserts or replaces settings for several players at once.
+     * @param entries settings keyed by UUID
+     */
+    default void upsertAll(Map<UUID, PlayerSettings> entries) {
+        for (Map.Entry<UUID, PlayerSettings> entry : entries.entrySet()) {
+            upsert(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes a player's entry. Does nothing if the player has no entry.
+     * @param uuid the player's UUID
+     */
+    void delete(UUID uuid);
+
+    /**
+     * Removes several players' entries at once. Players without an entry are skipped.
+     * @param uuids the players to remove
+     */
+    default void deleteAll(Collection<UUID> uuids) {
+        for (UUID uuid : uuids) {
+            delete(uuid);
+        }
+    }
+
+    /**
+     * Visits every stored player. Implementations stream from disk where they can
+     * rather than loading everything into memory, and never call the visitor while holding
+     * a lock that lookups or writes wait on, so a slow visitor does not stall logins.
+     * The visitor must not modify the store.
+     * @param visitor receives each player's UUID and settings
+     */
+    void forEach(BiConsumer<UUID, PlayerSettings> visitor);
+
+    /**
+     * Discards in-memory state and re-reads the backing files.
+     */
+    void reload();
+
+    /**
+     * @return true if the store can safely save and load data
+     */
+    boolean isHealthy();
+
+    /**
+     * Waits for pending writes to finish. Called once during plugin shutdown.
+     * @param timeoutSeconds maximum time to wait for writes to complete
+     * @return true if all writes completed, false if timeout occurred
+     */
+    boolean close(int timeoutSeconds);
+}
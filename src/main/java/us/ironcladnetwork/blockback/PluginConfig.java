@@ -0,0 +1,579 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manages general plugin settings stored in config.yml.
+ * Missing keys are filled in with defaults on load so that existing files
+ * pick up new options after an upgrade.
+ */
+public class PluginConfig {
+
+    private static PluginConfig instance;
+    private final JavaPlugin plugin;
+    private final File configFile;
+    private FileConfiguration config;
+
+    // Storage settings
+    private StorageMode storageMode;
+    private long flushIntervalTicks;
+    private int flushMaxDirty;
+    private int shardPrefixLength;
+    private long journalCompactThresholdBytes;
+    private long mappedForceIntervalMillis;
+    private File sharedDirectory;
+    private long sharedPollIntervalTicks;
+    private long sharedMaxLogBytes;
+
+    // Revert settings
+    private boolean revertPhysics;
+    private boolean areaEnabled;
+    private int areaMaxBlocks;
+    private long areaTickBudgetNanos;
+    private boolean rateLimitEnabled;
+    private int rateLimitPerSecond;
+    private int rateLimitBurst;
+
+    // Cache settings
+    private int cacheMaxSize;
+    private long permissionRefreshSeconds;
+
+    // Backup settings
+    private boolean backupsEnabled;
+    private long backupIntervalMinutes;
+    private int backupKeepHourly;
+    private int backupKeepDaily;
+    private int backupKeepWeekly;
+
+    // Purge settings
+    private boolean purgeEnabled;
+    private long purgeIntervalHours;
+    private int purgeInactiveDays;
+
+    /**
+     * Initialize the PluginConfig. This must be called from the main plugin class
+     * before any other manager is initialized.
+     * @param plugin the JavaPlugin instance
+     */
+    public static void init(JavaPlugin plugin) {
+        instance = new PluginConfig(plugin);
+    }
+
+    /**
+     * Get the PluginConfig instance
+     * @return the PluginConfig instance
+     */
+    public static PluginConfig getInstance() {
+        return instance;
+    }
+
+    private PluginConfig(JavaPlugin plugin) {
+        this.plugin = plugin;
+        File dataFolder = plugin.getDataFolder();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+
+        this.configFile = new File(dataFolder, "config.yml");
+        loadConfig();
+    }
+
+    /**
+     * A configuration key's default value and the comment written above it
+     */
+    private static final class Option {
+        final Object value;
+        final List<String> comments;
+
+        Option(Object value, String... comments) {
+            this.value = value;
+            this.comments = Arrays.asList(comments);
+        }
+    }
+
+    /**
+     * Default values for every supported key, in the order they are written to a new file.
+     * @return map of configuration path to default option
+     */
+    private static Map<String, Option> defaults() {
+        Map<String, Option> defaults = new LinkedHashMap<>();
+        defaults.put("storage.mode", new Option("yaml",
+                "How player settings are stored. Changes take effect after a restart.",
+                "  yaml    - all players in a single players.yml",
+                "  sharded - bucket files under players/ keyed by UUID prefix",
+                "  journal - binary players.snapshot plus an append-only players.journal",
+                "  mapped  - memory-mapped fixed-width records in players.dat",
+                "  sqlite  - embedded SQLite database in players.db",
+                "  indexed - players.yml indexed by offset, entries parsed on demand",
+                "  shared  - SQLite database in storage.shared.directory, shared by several servers",
+                "An existing players.yml is converted automatically the first time another mode starts",
+                "(indexed reads players.yml as it is)."));
+        defaults.put("storage.flush-interval-ticks", new Option(100,
+                "Changed settings are written in one batch at most this often (20 ticks = 1 second)."));
+        defaults.put("storage.flush-max-dirty", new Option(500,
+                "Write early once this many players have unsaved changes."));
+        defaults.put("storage.sharded.prefix-length", new Option(2,
+                "UUID hex characters per bucket file (1-3); 2 gives 256 files.",
+                "Fixed once the players/ folder has been created."));
+        defaults.put("storage.journal.compact-threshold-kb", new Option(1024,
+                "Journal size that triggers folding it into the snapshot."));
+        defaults.put("storage.mapped.force-interval-seconds", new Option(5,
+                "How often in-place updates to players.dat are forced to disk."));
+        defaults.put("storage.shared.directory", new Option("",
+                "Directory holding the shared database and change log in shared mode.",
+                "Every server must point at the same directory; relative paths start from the server folder.",
+                "The directory must support file locking, e.g. servers on the same machine."));
+        defaults.put("storage.shared.poll-interval-ticks", new Option(20,
+                "How often to check for changes made on other servers (20 ticks = 1 second)."));
+        defaults.put("storage.shared.max-log-kb", new Option(1024,
+                "Change log size at which it is started afresh; servers that fall behind then reload online players."));
+        defaults.put("reverts.apply-physics", new Option(true,
+                "Update neighbouring blocks when a block is reverted, as placing a block would.",
+                "Turning this off saves work per revert, but e.g. crops on reverted farmland stay floating."));
+        defaults.put("reverts.area.enabled", new Option(false,
+                "Let players with blockback.area sneak and right-click to revert all connected blocks of the same type.",
+                "Off by default, as each area revert can change hundreds of blocks."));
+        defaults.put("reverts.area.max-blocks", new Option(256,
+                "Most blocks one area revert changes."));
+        defaults.put("reverts.area.tick-budget-micros", new Option(2000,
+                "Time per tick spent on area reverts, shared by all players (1000 = 1 ms of the 50 ms tick).",
+                "Larger areas carry on over the following ticks."));
+        defaults.put("reverts.rate-limit.enabled", new Option(true,
+                "Drop reverts from players clicking faster than the limits below, e.g. with an autoclicker.",
+                "Dropped reverts are counted in /blockback stats, not logged."));
+        defaults.put("reverts.rate-limit.per-second", new Option(10,
+                "Reverts per second a player can keep up. Holding right-click manages about 5."));
+        defaults.put("reverts.rate-limit.burst", new Option(20,
+                "Reverts a player can make in quick succession before the per-second limit applies."));
+        defaults.put("cache.max-size", new Option(1000,
+                "Offline players whose settings are kept in memory.",
+                "Online players are always cached and do not count towards this limit."));
+        defaults.put("cache.permission-refresh-seconds", new Option(30,
+                "How often every online player's BlockBack permissions are checked again.",
+                "They are also checked on join and world change."));
+        defaults.put("backups.enabled", new Option(true,
+                "Write compressed snapshots of all player settings to backups/.",
+                "A snapshot is skipped if nothing changed since the previous one."));
+        defaults.put("backups.interval-minutes", new Option(60,
+                "Minutes between snapshots."));
+        defaults.put("backups.keep-hourly", new Option(24,
+                "Keep the newest snapshot from each of this many recent hours."));
+        defaults.put("backups.keep-daily", new Option(7,
+                "Keep the newest snapshot from each of this many recent days."));
+        defaults.put("backups.keep-weekly", new Option(4,
+                "Keep the newest snapshot from each of this many recent weeks."));
+        defaults.put("purge.enabled", new Option(true,
+                "Periodically remove stored players whose settings are all defaults.",
+                "Players without an entry get the defaults, so nothing is lost."));
+        defaults.put("purge.interval-hours", new Option(24,
+                "Hours between purges. The first runs shortly after startup."));
+        defaults.put("purge.inactive-days", new Option(0,
+                "Also remove players who have not joined this server for this many days; 0 keeps them.",
+                "Not used in shared mode, where players may be playing on another server."));
+        return defaults;
+    }
+
+    /**
+     * Load the configuration from file, adding any missing default keys
+     */
+    private void loadConfig() {
+        boolean created = !configFile.exists();
+        config = YamlConfiguration.loadConfiguration(configFile);
+
+        boolean changed = false;
+        for (Map.Entry<String, Option> entry : defaults().entrySet()) {
+            if (!config.contains(entry.getKey())) {
+                config.set(entry.getKey(), entry.getValue().value);
+                config.setComments(entry.getKey(), entry.getValue().comments);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            config.options().setHeader(Arrays.asList(
+                "BlockBack Configuration",
+                "Missing options are added with their defaults when the plugin loads."
+            ));
+            try {
+                config.save(configFile);
+                if (created) {
+                    plugin.getLogger().info("Created default config.yml configuration file");
+                }
+            } catch (IOException e) {
+                plugin.getLogger().severe("Could not save config.yml: " + e.getMessage());
+            }
+        }
+
+        loadSettings();
+    }
+
+    /**
+     * Read and validate settings from the loaded configuration
+     */
+    private void loadSettings() {
+        String modeName = config.getString("storage.mode", "yaml");
+        StorageMode mode = StorageMode.fromString(modeName);
+        if (mode == null) {
+            plugin.getLogger().warning("Invalid storage mode '" + modeName + "', using default yaml");
+            mode = StorageMode.YAML;
+        }
+        String sharedPath = config.getString("storage.shared.directory", "");
+        sharedDirectory = sharedPath == null || sharedPath.trim().isEmpty() ? null : new File(sharedPath.trim());
+        if (mode == StorageMode.SHARED && sharedDirectory == null) {
+            plugin.getLogger().warning("storage.mode is shared but storage.shared.directory is not set, using default yaml");
+            mode = StorageMode.YAML;
+        }
+        storageMode = mode;
+
+        int flushInterval = config.getInt("storage.flush-interval-ticks", 100);
+        if (flushInterval < 1) {
+            plugin.getLogger().warning("storage.flush-interval-ticks " + flushInterval + " is below minimum (1), using 1");
+            flushInterval = 1;
+        }
+        flushIntervalTicks = flushInterval;
+
+        int maxDirty = config.getInt("storage.flush-max-dirty", 500);
+        if (maxDirty < 1) {
+            plugin.getLogger().warning("storage.flush-max-dirty " + maxDirty + " is below minimum (1), using 1");
+            maxDirty = 1;
+        }
+        flushMaxDirty = maxDirty;
+
+        int prefixLength = config.getInt("storage.sharded.prefix-length", 2);
+        if (prefixLength < 1 || prefixLength > 3) {
+            plugin.getLogger().warning("storage.sharded.prefix-length " + prefixLength + " is outside 1-3, using 2");
+            prefixLength = 2;
+        }
+        shardPrefixLength = prefixLength;
+
+        int compactThresholdKb = config.getInt("storage.journal.compact-threshold-kb", 1024);
+        if (compactThresholdKb < 1) {
+            plugin.getLogger().warning("storage.journal.compact-threshold-kb " + compactThresholdKb + " is below minimum (1), using 1024");
+            compactThresholdKb = 1024;
+        }
+        journalCompactThresholdBytes = compactThresholdKb * 1024L;
+
+        int forceIntervalSeconds = config.getInt("storage.mapped.force-interval-seconds", 5);
+        if (forceIntervalSeconds < 1) {
+            plugin.getLogger().warning("storage.mapped.force-interval-seconds " + forceIntervalSeconds + " is below minimum (1), using 1");
+            forceIntervalSeconds = 1;
+        }
+        mappedForceIntervalMillis = forceIntervalSeconds * 1000L;
+
+        int pollInterval = config.getInt("storage.shared.poll-interval-ticks", 20);
+        if (pollInterval < 1) {
+            plugin.getLogger().warning("storage.shared.poll-interval-ticks " + pollInterval + " is below minimum (1), using 1");
+            pollInterval = 1;
+        }
+        sharedPollIntervalTicks = pollInterval;
+
+        int maxLogKb = config.getInt("storage.shared.max-log-kb", 1024);
+        if (maxLogKb < 16) {
+            plugin.getLogger().warning("storage.shared.max-log-kb " + maxLogKb + " is below minimum (16), using 16");
+            maxLogKb = 16;
+        }
+        sharedMaxLogBytes = maxLogKb * 1024L;
+
+        revertPhysics = config.getBoolean("reverts.apply-physics", true);
+        areaEnabled = config.getBoolean("reverts.area.enabled", false);
+
+        int maxBlocks = config.getInt("reverts.area.max-blocks", 256);
+        if (maxBlocks < 1) {
+            plugin.getLogger().warning("reverts.area.max-blocks " + maxBlocks + " is below minimum (1), using 1");
+            maxBlocks = 1;
+        }
+        areaMaxBlocks = maxBlocks;
+
+        int budgetMicros = config.getInt("reverts.area.tick-budget-micros", 2000);
+        if (budgetMicros < 50) {
+            plugin.getLogger().warning("reverts.area.tick-budget-micros " + budgetMicros + " is below minimum (50), using 50");
+            budgetMicros = 50;
+        }
+        areaTickBudgetNanos = budgetMicros * 1000L;
+
+        rateLimitEnabled = config.getBoolean("reverts.rate-limit.enabled", true);
+
+        int perSecond = config.getInt("reverts.rate-limit.per-second", 10);
+        if (perSecond < 1) {
+            plugin.getLogger().warning("reverts.rate-limit.per-second " + perSecond + " is below minimum (1), using 1");
+            perSecond = 1;
+        }
+        rateLimitPerSecond = perSecond;
+
+        int burst = config.getInt("reverts.rate-limit.burst", 20);
+        if (burst < 1) {
+            plugin.getLogger().warning("reverts.rate-limit.burst " + burst + " is below minimum (1), using 1");
+            burst = 1;
+        }
+        rateLimitBurst = burst;
+
+        int maxSize = config.getInt("cache.max-size", 1000);
+        if (maxSize < 1) {
+            plugin.getLogger().warning("cache.max-size " + maxSize + " is below minimum (1), using 1");
+            maxSize = 1;
+        }
+        cacheMaxSize = maxSize;
+
+        int refreshSeconds = config.getInt("cache.permission-refresh-seconds", 30);
+        if (refreshSeconds < 1) {
+            plugin.getLogger().warning("cache.permission-refresh-seconds " + refreshSeconds + " is below minimum (1), using 1");
+            refreshSeconds = 1;
+        }
+        permissionRefreshSeconds = refreshSeconds;
+
+        backupsEnabled = config.getBoolean("backups.enabled", true);
+
+        int intervalMinutes = config.getInt("backups.interval-minutes", 60);
+        if (intervalMinutes < 1) {
+            plugin.getLogger().warning("backups.interval-minutes " + intervalMinutes + " is below minimum (1), using 60");
+            intervalMinutes = 60;
+        }
+        backupIntervalMinutes = intervalMinutes;
+
+        backupKeepHourly = readRetention("backups.keep-hourly", 24);
+        backupKeepDaily = readRetention("backups.keep-daily", 7);
+        backupKeepWeekly = readRetention("backups.keep-weekly", 4);
+
+        purgeEnabled = config.getBoolean("purge.enabled", true);
+
+        int purgeInterval = config.getInt("purge.interval-hours", 24);
+        if (purgeInterval < 1) {
+            plugin.getLogger().warning("purge.interval-hours " + purgeInterval + " is below minimum (1), using 24");
+            purgeInterval = 24;
+        }
+        purgeIntervalHours = purgeInterval;
+
+        int inactiveDays = config.getInt("purge.inactive-days", 0);
+        if (inactiveDays < 0) {
+            plugin.getLogger().warning("purge.inactive-days " + inactiveDays + " is below minimum (0), using 0");
+            inactiveDays = 0;
+        }
+        purgeInactiveDays = inactiveDays;
+    }
+
+    private int readRetention(String path, int defaultValue) {
+        int value = config.getInt(path, defaultValue);
+        if (value < 0) {
+            plugin.getLogger().warning(path + " " + value + " is below minimum (0), using " + defaultValue);
+            value = defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Reload the configuration from file.
+     * Storage and cache settings only take effect after a restart.
+     */
+    public void reloadConfig() {
+        loadConfig();
+        plugin.getLogger().info("Plugin configuration reloaded");
+    }
+
+    /**
+     * @return the configured storage layout for player settings
+     */
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Changes storage.mode in config.yml, after a migration has installed the new layout.
+     * Takes effect on the next start.
+     * @param mode the new storage layout
+     */
+    public void setStorageMode(StorageMode mode) {
+        storageMode = mode;
+        config.set("storage.mode", mode.name().toLowerCase(java.util.Locale.ROOT));
+        try {
+            config.save(configFile);
+            plugin.getLogger().info("Set storage.mode to " + mode.name().toLowerCase(java.util.Locale.ROOT) + " in config.yml");
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not save config.yml, set storage.mode to "
+                    + mode.name().toLowerCase(java.util.Locale.ROOT) + " by hand: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return ticks between write-behind flushes of changed player settings
+     */
+    public long getFlushIntervalTicks() {
+        return flushIntervalTicks;
+    }
+
+    /**
+     * @return number of players with unsaved changes that triggers an early flush
+     */
+    public int getFlushMaxDirty() {
+        return flushMaxDirty;
+    }
+
+    /**
+     * @return number of UUID hex characters used to pick a bucket file in sharded mode
+     */
+    public int getShardPrefixLength() {
+        return shardPrefixLength;
+    }
+
+    /**
+     * @return journal size in bytes that triggers compaction in journal mode
+     */
+    public long getJournalCompactThresholdBytes() {
+        return journalCompactThresholdBytes;
+    }
+
+    /**
+     * @return how often mapped storage forces pending updates to disk, in milliseconds
+     */
+    public long getMappedForceIntervalMillis() {
+        return mappedForceIntervalMillis;
+    }
+
+    /**
+     * @return directory shared between servers in shared mode, or null if not configured
+     */
+    public File getSharedDirectory() {
+        return sharedDirectory;
+    }
+
+    /**
+     * @return ticks between checks for changes made on other servers in shared mode
+     */
+    public long getSharedPollIntervalTicks() {
+        return sharedPollIntervalTicks;
+    }
+
+    /**
+     * @return change log size in bytes at which it is started afresh in shared mode
+     */
+    public long getSharedMaxLogBytes() {
+        return sharedMaxLogBytes;
+    }
+
+    /**
+     * @return true if neighbouring blocks are updated when a block is reverted
+     */
+    public boolean isRevertPhysics() {
+        return revertPhysics;
+    }
+
+    /**
+     * @return true if sneaking players with permission can revert connected blocks at once
+     */
+    public boolean isAreaEnabled() {
+        return areaEnabled;
+    }
+
+    /**
+     * @return most blocks a single area revert changes
+     */
+    public int getAreaMaxBlocks() {
+        return areaMaxBlocks;
+    }
+
+    /**
+     * @return nanoseconds per tick that area reverts may spend
+     */
+    public long getAreaTickBudgetNanos() {
+        return areaTickBudgetNanos;
+    }
+
+    /**
+     * @return true if players' reverts are rate limited
+     */
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    /**
+     * @return sustained reverts per second allowed per player
+     */
+    public int getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    /**
+     * @return reverts a player can make in a burst
+     */
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * @return maximum number of offline players kept in the settings cache
+     */
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    /**
+     * @return seconds between permission checks for every online player
+     */
+    public long getPermissionRefreshSeconds() {
+        return permissionRefreshSeconds;
+    }
+
+    /**
+     * @return true if periodic backup snapshots are enabled
+     */
+    public boolean isBackupsEnabled() {
+        return backupsEnabled;
+    }
+
+    /**
+     * @return minutes between backup snapshots
+     */
+    public long getBackupIntervalMinutes() {
+        return backupIntervalMinutes;
+    }
+
+    /**
+     * @return number of recent hours to keep one backup snapshot for
+     */
+    public int getBackupKeepHourly() {
+        return backupKeepHourly;
+    }
+
+    /**
+     * @return number of recent days to keep one backup snapshot for
+     */
+    public int getBackupKeepDaily() {
+        return backupKeepDaily;
+    }
+
+    /**
+     * @return number of recent weeks to keep one backup snapshot for
+     */
+    public int getBackupKeepWeekly() {
+        return backupKeepWeekly;
+    }
+
+    /**
+     * @return true if stored players with default settings are purged periodically
+     */
+    public boolean isPurgeEnabled() {
+        return purgeEnabled;
+    }
+
+    /**
+     * @return hours between purges
+     */
+    public long getPurgeIntervalHours() {
+        return purgeIntervalHours;
+    }
+
+    /**
+     * @return days without joining after which a player is purged, or 0 to keep them
+     */
+    public int getPurgeInactiveDays() {
+        return purgeInactiveDays;
+    }
+}
@@ -0,0 +1,122 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-player token bucket limiting how fast a player can revert blocks.
+ * <p>
+ * Each player's bucket holds up to the burst size in tokens and refills at the sustained
+ * rate; a revert takes one token, and a revert with none left is dropped. Ordinary
+ * right-clicking never comes close, but an autoclicker would otherwise cost a block update
+ * and a sound packet per click. Dropped reverts are counted for /blockback stats rather
+ * than logged, so an abusive client cannot flood the console either. Main thread only.
+ */
+public class RateLimiter {
+
+    private static RateLimiter instance;
+
+    // Main thread only
+    private final Map<UUID, Bucket> buckets = new HashMap<>();
+    private boolean enabled;
+    private double burst;
+    private double tokensPerNano;
+    private long rejected;
+
+    /**
+     * Tokens left and when they were last topped up
+     */
+    private static final class Bucket {
+        double tokens;
+        long refilledAt;
+
+        Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+
+    /**
+     * Initialize the RateLimiter from the plugin configuration
+     */
+    public static void init() {
+        instance = new RateLimiter();
+    }
+
+    /**
+     * Get the RateLimiter instance
+     * @return the RateLimiter instance
+     */
+    public static RateLimiter getInstance() {
+        return instance;
+    }
+
+    private RateLimiter() {
+        reloadConfig();
+    }
+
+    /**
+     * Re-reads the limits and starts every player with a full bucket
+     */
+    public void reloadConfig() {
+        PluginConfig pluginConfig = PluginConfig.getInstance();
+        enabled = pluginConfig == null || pluginConfig.isRateLimitEnabled();
+        burst = pluginConfig != null ? pluginConfig.getRateLimitBurst() : 20;
+        double perSecond = pluginConfig != null ? pluginConfig.getRateLimitPerSecond() : 10;
+        tokensPerNano = perSecond / 1_000_000_000d;
+        buckets.clear();
+    }
+
+    /**
+     * Takes a token for one revert
+     * @param player the player reverting a block
+     * @return true if the revert may go ahead, false if it should be dropped
+     */
+    public boolean tryAcquire(Player player) {
+        return tryAcquire(player.getUniqueId(), System.nanoTime());
+    }
+
+    /**
+     * Takes a token for one revert at the given time
+     * @param uuid the player's UUID
+     * @param now the current {@link System#nanoTime()}
+     * @return true if the revert may go ahead, false if it should be dropped
+     */
+    boolean tryAcquire(UUID uuid, long now) {
+        if (!enabled) {
+            return true;
+        }
+        Bucket bucket = buckets.get(uuid);
+        if (bucket == null) {
+            bucket = new Bucket(burst, now);
+            buckets.put(uuid, bucket);
+        }
+        double tokens = Math.min(burst, bucket.tokens + (now - bucket.refilledAt) * tokensPerNano);
+        bucket.refilledAt = now;
+        if (tokens < 1) {
+            bucket.tokens = tokens;
+            rejected++;
+            return false;
+        }
+        bucket.tokens = tokens - 1;
+        return true;
+    }
+
+    /**
+     * Forgets a player who left
+     * @param player the player
+     */
+    public void remove(Player player) {
+        buckets.remove(player.getUniqueId());
+    }
+
+    /**
+     * @return reverts dropped for exceeding the rate limit since startup
+     */
+    public long getRejected() {
+        return rejected;
+    }
+}
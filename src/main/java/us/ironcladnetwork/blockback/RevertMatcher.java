@@ -0,0 +1,188 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Revert rules compiled for lookup by the clicked block and the held tool.
+ * <p>
+ * The rules are laid out in arrays indexed by Material.ordinal(). The listener sees every
+ * right-click on the server, so anything that is not some rule's tool or source block is
+ * rejected after two array reads, before any permission or settings lookup, however many
+ * rules are configured. A matcher is never changed once built; reloading rules.yml
+ * compiles a new one.
+ */
+final class RevertMatcher {
+
+    /**
+     * What a clicked block reverts to, with which tools, and which feature does it.
+     * <p>
+     * The target block data is built once. Where the rule keeps block states, the data for
+     * each state of the source block is built the first time that state is clicked and
+     * reused after that, so a click is a map lookup rather than a copy. Block data can be
+     * shared because setBlockData only reads the state it holds.
+     */
+    static final class Revert {
+        final Feature feature;
+        final EnumSet<Material> tools;
+        final Material source;
+        final Material target;
+        final BlockData template;
+        private final String[] keep;
+        // Clicked block data -> data to set. Main thread only; bounded by the source block's states
+        private final Map<BlockData, BlockData> converted = new HashMap<>();
+
+        Revert(Feature feature, EnumSet<Material> tools, Material source, Material target, List<String> keep) {
+            this(feature, tools, source, target, target.createBlockData(), keep);
+        }
+
+        /**
+         * @param template the target's default block data, set where no states are kept
+         */
+        Revert(Feature feature, EnumSet<Material> tools, Material source, Material target, BlockData template,
+               List<String> keep) {
+            this.feature = feature;
+            this.tools = tools;
+            this.source = source;
+            this.target = target;
+            this.template = template;
+            this.keep = keep.toArray(new String[0]);
+        }
+
+        /**
+         * Replaces a block of the source type with a single write
+         * @param block the block to revert
+         * @param physics true to update neighbouring blocks
+         */
+        void apply(Block block, boolean physics) {
+            // One read of the block's data, only where states have to be carried over
+            block.setBlockData(keepsStates() ? dataFor(block.getBlockData()) : template, physics);
+        }
+
+        /**
+         * @return true if the clicked block's data is needed to build the target
+         */
+        boolean keepsStates() {
+            return keep.length > 0;
+        }
+
+        /**
+         * @param current the clicked block's data
+         * @return the data to replace it with, carrying over the kept states
+         */
+        BlockData dataFor(BlockData current) {
+            BlockData data = converted.get(current);
+            if (data == null) {
+                data = convert(current);
+                converted.put(current, data);
+            }
+            return data;
+        }
+
+        private BlockData convert(BlockData current) {
+            Map<String, String> states = states(current);
+            StringBuilder kept = new StringBuilder();
+            for (String name : keep) {
+                String value = states.get(name);
+                if (value != null) {
+                    kept.append(kept.length() == 0 ? "[" : ",").append(name).append('=').append(value);
+                }
+            }
+            if (kept.length() == 0) {
+                return template;
+            }
+            try {
+                return target.createBlockData(kept.append(']').toString());
+            } catch (IllegalArgumentException e) {
+                // Both blocks have the state, but the target does not allow this value
+                return template;
+            }
+        }
+    }
+
+    private static final Revert[] NONE = new Revert[0];
+
+    // Indexed by Material.ordinal()
+    private final boolean[] tools = new boolean[Material.values().length];
+    private final Revert[][] bySource = new Revert[Material.values().length][];
+    private final int size;
+
+    /**
+     * Compiles reverts into lookup tables. Where two reverts share a source block and a
+     * tool, the one listed first is used.
+     * @param reverts the reverts, in rule order
+     */
+    RevertMatcher(Collection<Revert> reverts) {
+        Map<Material, List<Revert>> grouped = new LinkedHashMap<>();
+        for (Revert revert : reverts) {
+            grouped.computeIfAbsent(revert.source, source -> new ArrayList<>()).add(revert);
+            for (Material tool : revert.tools) {
+                tools[tool.ordinal()] = true;
+            }
+        }
+        for (Map.Entry<Material, List<Revert>> entry : grouped.entrySet()) {
+            bySource[entry.getKey().ordinal()] = entry.getValue().toArray(NONE);
+        }
+        this.size = reverts.size();
+    }
+
+    /**
+     * @param tool the held item
+     * @param block the clicked block
+     * @return the revert to apply, or null if no rule reverts this block with this tool
+     */
+    Revert match(Material tool, Material block) {
+        if (!tools[tool.ordinal()]) {
+            return null;
+        }
+        Revert[] candidates = bySource[block.ordinal()];
+        if (candidates == null) {
+            return null;
+        }
+        // Almost always a single revert; only rules sharing a source block add more
+        for (Revert revert : candidates) {
+            if (revert.tools.contains(tool)) {
+                return revert;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of source block and target pairs compiled
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Reads block states from block data's string form, e.g. {@code minecraft:oak_log[axis=x]}
+     * @param data the block data
+     * @return state names mapped to their values, empty if the block has none
+     */
+    static Map<String, String> states(BlockData data) {
+        String text = data.getAsString();
+        int open = text.indexOf('[');
+        int close = text.lastIndexOf(']');
+        if (open < 0 || close < open) {
+            return Map.of();
+        }
+        Map<String, String> states = new HashMap<>();
+        for (String pair : text.substring(open + 1, close).split(",")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                states.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+            }
+        }
+        return states;
+    }
+}
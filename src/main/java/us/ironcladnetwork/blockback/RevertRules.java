@@ -0,0 +1,271 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Tag;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Loads the revert rules from rules.yml and compiles them into a {@link RevertMatcher}.
+ * <p>
+ * Each rule names a feature, the tools that trigger it, the block states to carry over
+ * and a map of source blocks to the blocks they revert to. Tools are item names or item
+ * tags such as {@code #minecraft:axes}. Rules with problems are skipped with a warning
+ * so one typo does not disable every other revert.
+ */
+public class RevertRules {
+
+    private static RevertRules instance;
+    private final JavaPlugin plugin;
+    private final File rulesFile;
+
+    // Replaced as a whole on reload; main thread only
+    private RevertMatcher matcher;
+
+    // Logs and wood that an axe strips, each reverted from its stripped_ variant
+    private static final String[] BARK_BLOCKS = {
+            "oak_log", "oak_wood", "spruce_log", "spruce_wood", "birch_log", "birch_wood",
+            "jungle_log", "jungle_wood", "acacia_log", "acacia_wood", "dark_oak_log", "dark_oak_wood",
+            "mangrove_log", "mangrove_wood", "cherry_log", "cherry_wood", "crimson_hyphae", "crimson_stem",
+            "warped_hyphae", "warped_stem", "bamboo_block"
+    };
+
+    /**
+     * Initialize the RevertRules and compile rules.yml
+     * @param plugin the JavaPlugin instance
+     */
+    public static void init(JavaPlugin plugin) {
+        instance = new RevertRules(plugin);
+    }
+
+    /**
+     * Get the RevertRules instance
+     * @return the RevertRules instance
+     */
+    public static RevertRules getInstance() {
+        return instance;
+    }
+
+    private RevertRules(JavaPlugin plugin) {
+        this.plugin = plugin;
+        File dataFolder = plugin.getDataFolder();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+
+        this.rulesFile = new File(dataFolder, "rules.yml");
+        loadRules();
+    }
+
+    /**
+     * Reload the rules from file. If the file cannot be parsed the current rules are kept.
+     */
+    public void reloadConfig() {
+        loadRules();
+    }
+
+    /**
+     * @param tool the held item
+     * @param block the clicked block
+     * @return the revert to apply, or null if no rule reverts this block with this tool
+     */
+    RevertMatcher.Revert match(Material tool, Material block) {
+        return matcher.match(tool, block);
+    }
+
+    /**
+     * @return number of source block and target pairs in the current rules
+     */
+    public int getRevertCount() {
+        return matcher.size();
+    }
+
+    private void loadRules() {
+        if (!rulesFile.exists()) {
+            createDefaultRules();
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(rulesFile);
+        } catch (IOException | InvalidConfigurationException e) {
+            if (matcher != null) {
+                plugin.getLogger().severe("Could not load rules.yml, keeping the current rules: " + e.getMessage());
+                return;
+            }
+            plugin.getLogger().severe("Could not load rules.yml, using the built-in rules: " + e.getMessage());
+            config = defaultRules();
+        }
+
+        matcher = compile(config);
+        plugin.getLogger().info("Loaded " + matcher.size() + " block reverts from rules.yml");
+    }
+
+    /**
+     * Create default rules file, reproducing the built-in reverts
+     */
+    private void createDefaultRules() {
+        try {
+            defaultRules().save(rulesFile);
+            plugin.getLogger().info("Created default rules.yml configuration file");
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not create rules.yml: " + e.getMessage());
+        }
+    }
+
+    private static YamlConfiguration defaultRules() {
+        YamlConfiguration config = new YamlConfiguration();
+
+        // BarkBack: stripped logs and wood back to bark, keeping their orientation
+        config.set("rules.bark.feature", "barkback");
+        config.set("rules.bark.tools", List.of("#minecraft:axes"));
+        config.set("rules.bark.keep", List.of("axis"));
+        for (String block : BARK_BLOCKS) {
+            config.set("rules.bark.blocks.stripped_" + block, block);
+        }
+
+        // PathBack: dirt paths back to dirt
+        config.set("rules.path.feature", "pathback");
+        config.set("rules.path.tools", List.of("#minecraft:shovels"));
+        config.set("rules.path.blocks.dirt_path", "dirt");
+
+        // FarmBack: farmland back to dirt
+        config.set("rules.farm.feature", "farmback");
+        config.set("rules.farm.tools", List.of("#minecraft:hoes"));
+        config.set("rules.farm.blocks.farmland", "dirt");
+
+        config.options().setHeader(java.util.Arrays.asList(
+                "BlockBack Revert Rules",
+                "Each rule reverts the blocks listed under 'blocks' (source: target) when a player",
+                "right-clicks them holding one of its tools.",
+                "",
+                "feature: barkback, pathback or farmback; decides the permission, toggle and sound",
+                "tools: item names, or item tags starting with # (e.g. '#minecraft:axes')",
+                "keep: block states copied from the clicked block when the target has them (e.g. axis)",
+                "",
+                "Use /blockback reload after editing."
+        ));
+        return config;
+    }
+
+    private RevertMatcher compile(YamlConfiguration config) {
+        List<RevertMatcher.Revert> reverts = new ArrayList<>();
+        ConfigurationSection rules = config.getConfigurationSection("rules");
+        if (rules == null) {
+            plugin.getLogger().warning("rules.yml has no 'rules' section; no blocks will be reverted");
+            return new RevertMatcher(reverts);
+        }
+
+        for (String name : rules.getKeys(false)) {
+            ConfigurationSection rule = rules.getConfigurationSection(name);
+            if (rule == null) {
+                plugin.getLogger().warning("Skipping rule '" + name + "': not a section");
+                continue;
+            }
+            Feature feature = Feature.fromKey(rule.getString("feature", ""));
+            if (feature == null) {
+                plugin.getLogger().warning("Skipping rule '" + name + "': unknown feature '" + rule.getString("feature") + "'");
+                continue;
+            }
+            EnumSet<Material> tools = parseTools(name, rule.getStringList("tools"));
+            if (tools.isEmpty()) {
+                plugin.getLogger().warning("Skipping rule '" + name + "': no valid tools");
+                continue;
+            }
+            ConfigurationSection blocks = rule.getConfigurationSection("blocks");
+            if (blocks == null || blocks.getKeys(false).isEmpty()) {
+                plugin.getLogger().warning("Skipping rule '" + name + "': no blocks");
+                continue;
+            }
+
+            for (String from : blocks.getKeys(false)) {
+                Material source = parseBlock(name, from);
+                Material target = parseBlock(name, blocks.getString(from, ""));
+                if (source == null || target == null) {
+                    continue;
+                }
+                for (RevertMatcher.Revert earlier : reverts) {
+                    if (earlier.source == source && !Collections.disjoint(earlier.tools, tools)) {
+                        plugin.getLogger().warning("Rule '" + name + "': " + key(source)
+                                + " is already reverted by an earlier rule for some of these tools; the earlier rule wins");
+                        break;
+                    }
+                }
+                reverts.add(new RevertMatcher.Revert(feature, tools, source, target,
+                        keptStates(name, source, target, rule.getStringList("keep"))));
+            }
+        }
+        return new RevertMatcher(reverts);
+    }
+
+    private EnumSet<Material> parseTools(String rule, List<String> entries) {
+        EnumSet<Material> tools = EnumSet.noneOf(Material.class);
+        for (String entry : entries) {
+            if (entry.startsWith("#")) {
+                NamespacedKey key = NamespacedKey.fromString(entry.substring(1).toLowerCase(Locale.ROOT));
+                Tag<Material> tag = key != null ? Bukkit.getTag(Tag.REGISTRY_ITEMS, key, Material.class) : null;
+                if (tag == null) {
+                    plugin.getLogger().warning("Rule '" + rule + "': unknown item tag '" + entry + "'");
+                } else {
+                    tools.addAll(tag.getValues());
+                }
+                continue;
+            }
+            Material tool = Material.matchMaterial(entry);
+            if (tool == null || tool.isLegacy() || !tool.isItem()) {
+                plugin.getLogger().warning("Rule '" + rule + "': unknown item '" + entry + "'");
+            } else {
+                tools.add(tool);
+            }
+        }
+        return tools;
+    }
+
+    private Material parseBlock(String rule, String name) {
+        Material block = Material.matchMaterial(name);
+        if (block == null || block.isLegacy() || !block.isBlock()) {
+            plugin.getLogger().warning("Rule '" + rule + "': unknown block '" + name + "'");
+            return null;
+        }
+        return block;
+    }
+
+    /**
+     * @return the kept states that both blocks have; any other is dropped with a warning
+     */
+    private List<String> keptStates(String rule, Material source, Material target, List<String> keep) {
+        if (keep.isEmpty()) {
+            return keep;
+        }
+        Set<String> sourceStates = RevertMatcher.states(source.createBlockData()).keySet();
+        Set<String> targetStates = RevertMatcher.states(target.createBlockData()).keySet();
+        List<String> kept = new ArrayList<>();
+        for (String state : keep) {
+            String name = state.toLowerCase(Locale.ROOT);
+            if (sourceStates.contains(name) && targetStates.contains(name)) {
+                kept.add(name);
+            } else {
+                plugin.getLogger().warning("Rule '" + rule + "': " + key(source) + " and " + key(target)
+                        + " do not both have state '" + state + "'; it is not kept");
+            }
+        }
+        return kept;
+    }
+
+    private static String key(Material material) {
+        return material.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,419 @@
+package us.ironcladnetwork.blockback;
+
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded in-memory cache of player settings.
+ * <p>
+ * Online players are pinned: their settings live in a separate concurrent map that is
+ * never evicted. Everyone else is held in a segmented LRU. New entries go into a probation
+ * segment and move to a protected segment on their second hit, so a burst of one-off
+ * lookups cannot flush out players who come back regularly. Every operation is constant
+ * time; eviction drops the eldest probation entry.
+ * <p>
+ * Lookups never lock. Every cached player is also in a concurrent map, and a hit on an
+ * offline player is recorded in a small ring buffer. The buffer is replayed into the LRU
+ * order under the lock, before any change to the cache and whenever it fills up. When it
+ * is full and the lock is busy, hits are dropped, which only makes the LRU order less exact.
+ * <p>
+ * Cached values are immutable snapshots. Changes go through {@link #update}, which
+ * replaces a player's snapshot atomically, so readers on any thread always see a
+ * complete snapshot without locking.
+ */
+final class SettingsCache {
+
+    // Share of the bounded capacity reserved for entries that have been hit more than once
+    private static final double PROTECTED_RATIO = 0.8;
+    // Recorded hits held between replays; a power of two
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    // Number of recorded hits at which a lookup replays the buffer if the lock is free
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private final ConcurrentHashMap<UUID, PlayerSettings> pinned = new ConcurrentHashMap<>();
+    // Players currently online; changed under the lock
+    private final Set<UUID> online = ConcurrentHashMap.newKeySet();
+    // Every offline player in either segment, for lookups; changed under the lock
+    private final ConcurrentHashMap<UUID, Node> unpinned = new ConcurrentHashMap<>();
+
+    // Guards the segments and the replay of the read buffer
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered, eldest first; guarded by lock
+    private final LinkedHashMap<UUID, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<UUID, Node> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final int probationCapacity;
+    private final int protectedCapacity;
+    private final TickClock clock;
+
+    // Hits on offline players not yet applied to the LRU order
+    private final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readBufferWrites = new AtomicLong();
+    // Written under the lock, read by lookups to tell whether the buffer is full
+    private volatile long readBufferReads;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize maximum number of offline players to keep; online players are not counted
+     * @param clock clock used to stamp entries for idle expiry
+     */
+    SettingsCache(int maxSize, TickClock clock) {
+        this.clock = clock;
+        this.protectedCapacity = (int) (maxSize * PROTECTED_RATIO);
+        this.probationCapacity = Math.max(1, maxSize - protectedCapacity);
+    }
+
+    /**
+     * @param uuid the player's UUID
+     * @return the cached settings, or null on a miss
+     */
+    PlayerSettings get(UUID uuid) {
+        PlayerSettings settings = pinned.get(uuid);
+        if (settings == null) {
+            Node node = unpinned.get(uuid);
+            if (node != null) {
+                settings = node.settings;
+                node.touch(clock.now());
+                recordHit(node);
+            }
+        }
+        if (settings != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return settings;
+    }
+
+    /**
+     * Adds a hit to the read buffer, replaying the buffer if it is filling up and nobody
+     * holds the lock. A hit is dropped if the buffer is full.
+     */
+    private void recordHit(Node node) {
+        long writes = readBufferWrites.get();
+        long pending = writes - readBufferReads;
+        if (pending < READ_BUFFER_SIZE && readBufferWrites.compareAndSet(writes, writes + 1)) {
+            readBuffer.lazySet((int) (writes & READ_BUFFER_MASK), node);
+            pending++;
+        }
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies recorded hits to the LRU order, oldest first. Must hold the lock.
+     */
+    private void drainReadBuffer() {
+        long writes = readBufferWrites.get();
+        long reads = readBufferReads;
+        for (; reads < writes; reads++) {
+            Node node = readBuffer.getAndSet((int) (reads & READ_BUFFER_MASK), null);
+            if (node == null) {
+                // Claimed but not stored yet; replayed next time
+                break;
+            }
+            applyHit(node);
+        }
+        readBufferReads = reads;
+    }
+
+    private void applyHit(Node node) {
+        if (unpinned.get(node.uuid) != node) {
+            // Evicted, replaced or pinned since the hit
+            return;
+        }
+        if (node.isProtected) {
+            protectedSegment.get(node.uuid);
+            return;
+        }
+        // Second hit: promote, demoting the protected segment's eldest if it is full
+        probation.remove(node.uuid);
+        node.isProtected = true;
+        protectedSegment.put(node.uuid, node);
+        if (protectedSegment.size() > protectedCapacity) {
+            Iterator<Node> eldest = protectedSegment.values().iterator();
+            Node demoted = eldest.next();
+            eldest.remove();
+            insertProbation(demoted);
+        }
+    }
+
+    /**
+     * Atomically replaces a cached player's settings
+     * @param uuid the player's UUID
+     * @param change computes the new snapshot from the current one; may run while a lock is held
+     * @return the new snapshot, or null if the player is not cached
+     */
+    PlayerSettings update(UUID uuid, UnaryOperator<PlayerSettings> change) {
+        PlayerSettings updated = pinned.computeIfPresent(uuid, (key, current) -> change.apply(current));
+        if (updated != null) {
+            return updated;
+        }
+        lock.lock();
+        try {
+            // The player may have been pinned since the lock-free attempt
+            updated = pinned.computeIfPresent(uuid, (key, current) -> change.apply(current));
+            if (updated != null) {
+                return updated;
+            }
+            Node node = unpinned.get(uuid);
+            if (node == null) {
+                return null;
+            }
+            node.settings = change.apply(node.settings);
+            node.touch(clock.now());
+            return node.settings;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches a player's settings, replacing any cached value
+     * @param uuid the player's UUID
+     * @param settings the settings to cache
+     */
+    void put(UUID uuid, PlayerSettings settings) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            putLocked(uuid, settings);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putLocked(UUID uuid, PlayerSettings settings) {
+        if (online.contains(uuid)) {
+            pinned.put(uuid, settings);
+            return;
+        }
+        Node node = unpinned.get(uuid);
+        if (node != null && node.isProtected) {
+            node.settings = settings;
+            node.touch(clock.now());
+            protectedSegment.get(uuid);
+        } else {
+            insertProbation(new Node(uuid, settings, clock.now()));
+        }
+    }
+
+    /**
+     * Caches a player's settings unless the player is already cached
+     * @param uuid the player's UUID
+     * @param settings the settings to cache
+     * @return true if the settings were added
+     */
+    boolean putIfAbsent(UUID uuid, PlayerSettings settings) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (pinned.containsKey(uuid) || unpinned.containsKey(uuid)) {
+                return false;
+            }
+            putLocked(uuid, settings);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void insertProbation(Node node) {
+        node.isProtected = false;
+        unpinned.put(node.uuid, node);
+        probation.put(node.uuid, node);
+        if (probation.size() > probationCapacity) {
+            Iterator<Node> eldest = probation.values().iterator();
+            unpinned.remove(eldest.next().uuid);
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private Node removeUnpinned(UUID uuid) {
+        Node node = unpinned.remove(uuid);
+        if (node != null) {
+            (node.isProtected ? protectedSegment : probation).remove(uuid);
+        }
+        return node;
+    }
+
+    /**
+     * Marks a player as online so their settings are never evicted
+     * @param uuid the player's UUID
+     */
+    void pin(UUID uuid) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (!online.add(uuid)) {
+                return;
+            }
+            Node node = removeUnpinned(uuid);
+            if (node != null) {
+                pinned.put(uuid, node.settings);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a player as offline; their settings become evictable but stay cached for a quick rejoin
+     * @param uuid the player's UUID
+     */
+    void unpin(UUID uuid) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (!online.remove(uuid)) {
+                return;
+            }
+            PlayerSettings settings = pinned.remove(uuid);
+            if (settings != null) {
+                insertProbation(new Node(uuid, settings, clock.now()));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param uuid the player's UUID
+     * @return true if the player is pinned as online
+     */
+    boolean isOnline(UUID uuid) {
+        return online.contains(uuid);
+    }
+
+    /**
+     * Removes a player's cached settings. Online players stay pinned and are cached again on next use.
+     * @param uuid the player's UUID
+     */
+    void remove(UUID uuid) {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            pinned.remove(uuid);
+            removeUnpinned(uuid);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every cached value. Online players stay pinned.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            drainReadBuffer();
+            pinned.clear();
+            unpinned.clear();
+            protectedSegment.clear();
+            probation.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes offline players not accessed within the given number of ticks
+     * @param maxIdleTicks entries idle for longer are removed
+     * @return number of entries removed
+     */
+    int removeIdle(long maxIdleTicks) {
+        long cutoff = clock.now() - maxIdleTicks;
+        int removed = 0;
+        lock.lock();
+        try {
+            drainReadBuffer();
+            for (Map<UUID, Node> segment : List.of(probation, protectedSegment)) {
+                // Iterating does not count as an access
+                Iterator<Node> values = segment.values().iterator();
+                while (values.hasNext()) {
+                    Node node = values.next();
+                    if (node.lastAccessTick < cutoff) {
+                        values.remove();
+                        unpinned.remove(node.uuid);
+                        removed++;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * @return number of cached players, online and offline
+     */
+    int size() {
+        return pinned.size() + unpinned.size();
+    }
+
+    /**
+     * @return number of online players currently cached
+     */
+    int pinnedSize() {
+        return pinned.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * An offline player's cached snapshot and when it was last used. Only changed under
+     * the cache lock, except the access tick, which lookups stamp without it.
+     */
+    private static final class Node {
+        final UUID uuid;
+        volatile PlayerSettings settings;
+        volatile long lastAccessTick;
+        // Guarded by the cache lock
+        boolean isProtected;
+
+        Node(UUID uuid, PlayerSettings settings, long tick) {
+            this.uuid = uuid;
+            this.settings = settings;
+            this.lastAccessTick = tick;
+        }
+
+        void touch(long tick) {
+            // Repeated hits within a tick leave the field, and its cache line, untouched
+            if (lastAccessTick != tick) {
+                lastAccessTick = tick;
+            }
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Stores player settings in bucket files under players/, one file per UUID prefix
+ * (for example players/3f.yml). A change only rewrites the bucket holding that player,
+ * so write cost no longer grows with the total number of players ever seen.
+ * Buckets are loaded lazily the first time one of their players is looked up.
+ * A bucket that fails to save stays queued with its changes in memory, and is written
+ * again with the next change or at shutdown.
+ */
+final class ShardedYamlPlayerStore implements PlayerSettingsStore {
+
+    private static final String MARKER_FILE = "shards.yml";
+
+    private final Logger logger;
+    private final Executor ioExecutor;
+    private final File dataFolder;
+    private final File shardFolder;
+    private final YamlSettingsCodec codec;
+    private int prefixLength;
+
+    // Loaded buckets keyed by UUID prefix
+    private final ConcurrentHashMap<String, Shard> shards = new ConcurrentHashMap<>();
+    // Buckets with unsaved changes, each queued at most once
+    private final Queue<Shard> dirtyShards = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushInProgress = new AtomicBoolean(false);
+
+    /**
+     * A single bucket file and its in-memory contents.
+     * All access to the configuration is synchronized on the shard.
+     */
+    private static final class Shard {
+        final File file;
+        final YamlConfiguration config;
+        final AtomicBoolean dirty = new AtomicBoolean(false);
+
+        Shard(File file, YamlConfiguration config) {
+            this.file = file;
+            this.config = config;
+        }
+    }
+
+    /**
+     * @param dataFolder the plugin data folder
+     * @param logger logger for status and error messages
+     * @param ioExecutor executor used for asynchronous bucket writes
+     * @param prefixLength configured number of UUID hex characters per bucket
+     */
+    ShardedYamlPlayerStore(File dataFolder, Logger logger, Executor ioExecutor, int prefixLength) {
+        this.logger = logger;
+        this.ioExecutor = ioExecutor;
+        this.dataFolder = dataFolder;
+        this.shardFolder = new File(dataFolder, "players");
+        this.codec = new YamlSettingsCodec(logger);
+        this.prefixLength = prefixLength;
+    }
+
+    @Override
+    public void open() {
+        File marker = new File(shardFolder, MARKER_FILE);
+        if (marker.exists()) {
+            // The bucket layout is fixed once created; honour the stored prefix length
+            int stored = YamlConfiguration.loadConfiguration(marker).getInt("prefix-length", prefixLength);
+            if (stored != prefixLength) {
+                logger.warning("storage.sharded.prefix-length is " + prefixLength + " but players/ was created with "
+                        + stored + "; using " + stored);
+                prefixLength = stored;
+            }
+        } else {
+            if (!shardFolder.exists() && !shardFolder.mkdirs()) {
+                logger.severe("Could not create players/ folder for sharded storage");
+                return;
+            }
+            // Without the marker a failed conversion is retried at the next start
+            if (convertLegacyFile()) {
+                writeMarker(marker);
+            }
+        }
+        cleanupOrphanedTempFiles();
+    }
+
+    @Override
+    public PlayerSettings load(UUID uuid) {
+        Shard shard = shardFor(uuid);
+        synchronized (shard) {
+            return codec.read(shard.config, uuid.toString());
+        }
+    }
+
+    @Override
+    public void upsert(UUID uuid, PlayerSettings settings) {
+        Shard shard = shardFor(uuid);
+        synchronized (shard) {
+            codec.write(shard.config, uuid.toString(), settings);
+        }
+        markDirty(shard);
+    }
+
+    @Override
+    public void delete(UUID uuid) {
+        Shard shard = shardFor(uuid);
+        String key = uuid.toString();
+        synchronized (shard) {
+            if (!shard.config.contains(key)) {
+                return;
+            }
+            shard.config.set(key, null);
+        }
+        markDirty(shard);
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        File[] files = shardFolder.listFiles((dir, name) -> name.endsWith(".yml") && !name.equals(MARKER_FILE));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String prefix = file.getName().substring(0, file.getName().length() - ".yml".length());
+            Shard loaded = shards.get(prefix);
+            if (loaded != null) {
+                // Copy the bucket under its lock and visit the copy, so lookups are not held up
+                Map<UUID, PlayerSettings> entries = new HashMap<>();
+                synchronized (loaded) {
+                    codec.readAll(loaded.config, entries::put);
+                }
+                entries.forEach(visitor);
+                continue;
+            }
+
+            // Read buckets that are not in use without keeping them in memory
+            YamlConfiguration config = new YamlConfiguration();
+            try {
+                config.load(file);
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.warning("Skipping unreadable bucket " + file.getName() + ": " + e.getMessage());
+                continue;
+            }
+            codec.readAll(config, visitor);
+        }
+    }
+
+    @Override
+    public void reload() {
+        // Write out anything pending before dropping the loaded buckets. A bucket that
+        // could not be written keeps its changes in memory rather than losing them.
+        flushPending();
+        shards.values().removeIf(shard -> !shard.dirty.get());
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return shardFolder.isDirectory() && shardFolder.canWrite();
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            // Let an in-flight asynchronous flush finish first
+            while (flushInProgress.get()) {
+                if (System.nanoTime() > deadline) {
+                    logger.warning("Timeout waiting for player data save to complete during shutdown");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting for player data save during shutdown");
+            return false;
+        }
+        // The scheduler may no longer accept tasks at this point, so write the rest here
+        return flushPending();
+    }
+
+    /**
+     * @return the bucket holding the given player, loading it from disk if needed
+     */
+    private Shard shardFor(UUID uuid) {
+        String prefix = uuid.toString().substring(0, prefixLength);
+        return shards.computeIfAbsent(prefix, this::loadShard);
+    }
+
+    /**
+     * Load a bucket file. A corrupt bucket, or one that fails its checksum, is moved aside
+     * and its players are restored from the newest backup snapshot, so only the players
+     * in that bucket are affected.
+     */
+    private Shard loadShard(String prefix) {
+        File file = new File(shardFolder, prefix + ".yml");
+        YamlConfiguration config = new YamlConfiguration();
+        boolean restored = false;
+        if (file.exists()) {
+            try {
+                byte[] data = Files.readAllBytes(file.toPath());
+                if (DurableFiles.verify(data) == DurableFiles.Integrity.MISMATCH) {
+                    throw new InvalidConfigurationException("contents do not match the checksum");
+                }
+                config.loadFromString(new String(data, StandardCharsets.UTF_8));
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.severe("Failed to load bucket " + file.getName() + ": " + e.getMessage());
+                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+                File corrupt = new File(shardFolder, file.getName() + ".corrupt." + timestamp);
+                if (file.renameTo(corrupt)) {
+                    logger.warning("Moved corrupt bucket to " + corrupt.getName());
+                }
+                config = new YamlConfiguration();
+                restored = restoreFromBackup(prefix, config);
+            }
+        }
+        Shard shard = new Shard(file, config);
+        if (restored) {
+            markDirty(shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Copy a bucket's players out of the newest readable backup snapshot
+     * @param prefix the bucket's UUID prefix
+     * @param config the empty bucket to fill
+     * @return true if a snapshot was read
+     */
+    private boolean restoreFromBackup(String prefix, YamlConfiguration config) {
+        for (File snapshot : BackupManager.listSnapshots(BackupManager.getBackupFolder(dataFolder))) {
+            try {
+                YamlConfiguration backup = new YamlConfiguration();
+                backup.loadFromString(BackupManager.readSnapshot(snapshot));
+                int count = 0;
+                for (String key : backup.getKeys(false)) {
+                    PlayerSettings settings = key.startsWith(prefix) ? codec.read(backup, key) : null;
+                    if (settings != null) {
+                        codec.write(config, key, settings);
+                        count++;
+                    }
+                }
+                logger.info("Restored " + count + " players in bucket " + prefix + " from backup " + snapshot.getName());
+                return true;
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.warning("Failed to restore bucket " + prefix + " from " + snapshot.getName() + ": " + e.getMessage());
+            }
+        }
+        logger.warning("No usable backup for bucket " + prefix + "; affected players will use defaults");
+        return false;
+    }
+
+    /**
+     * Queue a bucket for writing and start a flush if none is running
+     */
+    private void markDirty(Shard shard) {
+        if (shard.dirty.compareAndSet(false, true)) {
+            dirtyShards.add(shard);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Write queued buckets asynchronously. Only one flush runs at a time;
+     * buckets queued while it runs are picked up by the same pass or the next one.
+     */
+    private void scheduleFlush() {
+        if (!flushInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        ioExecutor.execute(() -> {
+            boolean written = false;
+            try {
+                written = flushPending();
+            } finally {
+                flushInProgress.set(false);
+
+                // Check if another bucket was queued while we were finishing. After a failure
+                // the buckets wait for the next change or shutdown rather than retrying at once.
+                if (written && !dirtyShards.isEmpty()) {
+                    scheduleFlush();
+                }
+            }
+        });
+    }
+
+    /**
+     * Write every queued bucket on the calling thread. Buckets that fail are queued again.
+     * @return true if all buckets were written successfully
+     */
+    private boolean flushPending() {
+        List<Shard> failed = new ArrayList<>();
+        Shard shard;
+        while ((shard = dirtyShards.poll()) != null) {
+            // Clear the flag before serializing so concurrent changes queue the bucket again
+            shard.dirty.set(false);
+            if (!writeShard(shard)) {
+                failed.add(shard);
+            }
+        }
+        for (Shard retry : failed) {
+            if (retry.dirty.compareAndSet(false, true)) {
+                dirtyShards.add(retry);
+            }
+        }
+        return failed.isEmpty();
+    }
+
+    /**
+     * Serialize a bucket under its lock and replace the file on disk via a temp file
+     * @return true if the bucket was written
+     */
+    private boolean writeShard(Shard shard) {
+        String data;
+        synchronized (shard) {
+            data = shard.config.saveToString();
+        }
+
+        try {
+            DurableFiles.write(shard.file.toPath(), DurableFiles.appendChecksum(data).getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException e) {
+            logger.severe("Could not save bucket " + shard.file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record the bucket layout so later prefix-length changes cannot orphan existing files
+     */
+    private void writeMarker(File marker) {
+        YamlConfiguration markerConfig = new YamlConfiguration();
+        markerConfig.set("prefix-length", prefixLength);
+        try {
+            markerConfig.save(marker);
+        } catch (IOException e) {
+            logger.severe("Could not write " + MARKER_FILE + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * One-time conversion of an existing players.yml into bucket files. Players already in
+     * a bucket are left alone, so retrying after a failed conversion never replaces settings
+     * changed since. The original file is kept as players.yml.migrated.
+     * @return true if there was nothing to convert or the conversion succeeded
+     */
+    private boolean convertLegacyFile() {
+        File legacyFile = new File(dataFolder, "players.yml");
+        if (!legacyFile.exists() || legacyFile.length() == 0) {
+            return true;
+        }
+
+        logger.info("Converting players.yml to sharded storage...");
+        long start = System.currentTimeMillis();
+        YamlConfiguration legacy = new YamlConfiguration();
+        try {
+            legacy.load(legacyFile);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.severe("Could not read players.yml for conversion: " + e.getMessage());
+            logger.warning("players.yml has been left in place and will be converted at the next start");
+            return false;
+        }
+
+        int[] converted = {0};
+        codec.readAll(legacy, (uuid, settings) -> {
+            Shard shard = shardFor(uuid);
+            synchronized (shard) {
+                if (shard.config.contains(uuid.toString())) {
+                    return;
+                }
+                codec.write(shard.config, uuid.toString(), settings);
+            }
+            converted[0]++;
+            if (shard.dirty.compareAndSet(false, true)) {
+                dirtyShards.add(shard);
+            }
+        });
+
+        if (!flushPending()) {
+            logger.severe("Some buckets failed to save during conversion; players.yml has been left in place"
+                    + " and will be converted at the next start");
+            return false;
+        }
+
+        File migrated = new File(dataFolder, "players.yml.migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Could not rename players.yml to " + migrated.getName() + "; it will be ignored in sharded mode");
+        }
+        logger.info("Converted " + converted[0] + " players into " + shards.size() + " bucket files in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * Cleans up any orphaned .tmp files from previous sessions
+     */
+    private void cleanupOrphanedTempFiles() {
+        File[] tempFiles = shardFolder.listFiles((dir, name) -> name.endsWith(".tmp"));
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles) {
+                if (tempFile.delete()) {
+                    logger.info("Cleaned up orphaned temp file: " + tempFile.getName());
+                } else {
+                    tempFile.deleteOnExit();
+                }
+            }
+        }
+    }
+}
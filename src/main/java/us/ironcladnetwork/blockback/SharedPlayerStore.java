@@ -0,0 +1,131 @@
+package us.ironcladnetwork.blockback;
+
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Store shared by several servers, for networks where players move between backends.
+ * <p>
+ * Settings live in a SQLite database in a directory every server can reach, and each
+ * change is also announced in a {@link ChangeLog} next to it. Servers poll the log and
+ * update just the players that changed elsewhere, so caches stay warm instead of being
+ * cleared wholesale.
+ * <p>
+ * The bundled implementation relies on file locks, so all servers must run on the same
+ * machine or use a network filesystem with reliable locking. The database uses a rollback
+ * journal rather than WAL for this reason; see {@link SqlitePlayerStore}.
+ */
+final class SharedPlayerStore implements PlayerSettingsStore {
+
+    private final Logger logger;
+    private final File sharedFolder;
+    private final PlayerSettingsStore backend;
+    private final ChangeLog changeLog;
+
+    /**
+     * @param sharedFolder directory shared by every server on the network
+     * @param logger logger for status and error messages
+     * @param backend store holding the settings, located in sharedFolder
+     * @param maxLogBytes size at which the change log is started afresh
+     */
+    SharedPlayerStore(File sharedFolder, Logger logger, PlayerSettingsStore backend, long maxLogBytes) {
+        this.logger = logger;
+        this.sharedFolder = sharedFolder;
+        this.backend = backend;
+        this.changeLog = new ChangeLog(new File(sharedFolder, "changes.log"), logger, maxLogBytes);
+    }
+
+    @Override
+    public void open() {
+        if (!sharedFolder.exists() && !sharedFolder.mkdirs()) {
+            logger.severe("Could not create shared storage directory " + sharedFolder.getAbsolutePath());
+        }
+        backend.open();
+        try {
+            changeLog.open();
+        } catch (IOException e) {
+            logger.severe("Could not open shared change log, changes from other servers will not be seen: "
+                    + e.getMessage());
+        }
+    }
+
+    @Override
+    public PlayerSettings load(UUID uuid) {
+        return backend.load(uuid);
+    }
+
+    @Override
+    public Map<UUID, PlayerSettings> loadAll(Collection<UUID> uuids) {
+        return backend.loadAll(uuids);
+    }
+
+    @Override
+    public void upsert(UUID uuid, PlayerSettings settings) {
+        backend.upsert(uuid, settings);
+        changeLog.append(uuid, settings);
+    }
+
+    @Override
+    public void upsertAll(Map<UUID, PlayerSettings> entries) {
+        backend.upsertAll(entries);
+        changeLog.appendAll(entries);
+    }
+
+    @Override
+    public void delete(UUID uuid) {
+        backend.delete(uuid);
+        changeLog.append(uuid, null);
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        backend.deleteAll(uuids);
+        Map<UUID, PlayerSettings> deletes = new HashMap<>();
+        for (UUID uuid : uuids) {
+            deletes.put(uuid, null);
+        }
+        changeLog.appendAll(deletes);
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        backend.forEach(visitor);
+    }
+
+    @Override
+    public void reload() {
+        backend.reload();
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return backend.isHealthy();
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        boolean closed = backend.close(timeoutSeconds);
+        changeLog.close();
+        return closed;
+    }
+
+    /**
+     * Reads changes other servers have announced since the last poll
+     * @param listener receives each change
+     * @return number of changes received
+     */
+    int pollChanges(ChangeLog.Listener listener) {
+        return changeLog.poll(listener);
+    }
+}
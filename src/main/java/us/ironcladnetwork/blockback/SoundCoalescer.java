@@ -0,0 +1,165 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Merges a player's revert sounds for the same feature into one sound per window.
+ * <p>
+ * The first revert plays its sound straight away, so single clicks sound as before. Further
+ * reverts of that feature within the next {@link SoundConfig#getCoalesceTicks()} ticks are
+ * only counted; when the window ends they are played as a single sound, louder with the
+ * count, and a new window opens. Bulk or automated reverts therefore send at most one sound
+ * packet per player, feature and window. The tick task only runs while a window is open.
+ * Main thread only.
+ */
+public class SoundCoalescer {
+
+    private static SoundCoalescer instance;
+    private final JavaPlugin plugin;
+
+    // Main thread only. Windows are indexed by Feature.ordinal()
+    private final Map<UUID, Window[]> windows = new HashMap<>();
+    private long tick;
+    private int taskId = -1;
+
+    /**
+     * Reverts counted since a player's last sound for one feature
+     */
+    private static final class Window {
+        final Player player;
+        SoundConfig.SoundSettings settings;
+        long closesAt;
+        int count;
+
+        Window(Player player, SoundConfig.SoundSettings settings, long closesAt) {
+            this.player = player;
+            this.settings = settings;
+            this.closesAt = closesAt;
+        }
+    }
+
+    /**
+     * Initialize the SoundCoalescer
+     * @param plugin the JavaPlugin instance
+     */
+    public static void init(JavaPlugin plugin) {
+        instance = new SoundCoalescer(plugin);
+    }
+
+    /**
+     * Get the SoundCoalescer instance
+     * @return the SoundCoalescer instance
+     */
+    public static SoundCoalescer getInstance() {
+        return instance;
+    }
+
+    private SoundCoalescer(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Plays a revert sound now, or counts it towards the sound at the end of the open window
+     * @param player the player who reverted a block
+     * @param feature the feature that reverted it
+     * @param settings the feature's sound settings
+     */
+    public void play(Player player, Feature feature, SoundConfig.SoundSettings settings) {
+        SoundConfig soundConfig = SoundConfig.getInstance();
+        int windowTicks = soundConfig != null ? soundConfig.getCoalesceTicks() : 0;
+        if (windowTicks <= 0) {
+            playScaled(player, settings, 1);
+            return;
+        }
+
+        Window[] byFeature = windows.computeIfAbsent(player.getUniqueId(), uuid -> new Window[Feature.values().length]);
+        Window window = byFeature[feature.ordinal()];
+        if (window != null) {
+            window.settings = settings;
+            window.count++;
+            return;
+        }
+        playScaled(player, settings, 1);
+        byFeature[feature.ordinal()] = new Window(player, settings, tick + windowTicks);
+        if (taskId == -1) {
+            taskId = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1).getTaskId();
+        }
+    }
+
+    /**
+     * Drops a player's open windows without playing them
+     * @param player the player
+     */
+    public void remove(Player player) {
+        windows.remove(player.getUniqueId());
+    }
+
+    /**
+     * Stops the tick task and drops every open window
+     */
+    public void stop() {
+        windows.clear();
+        cancelTask();
+    }
+
+    /**
+     * Closes the windows that have run their length, playing one sound for those that
+     * counted reverts and opening a new window after it
+     */
+    private void tick() {
+        tick++;
+        SoundConfig soundConfig = SoundConfig.getInstance();
+        int windowTicks = soundConfig != null ? soundConfig.getCoalesceTicks() : 0;
+
+        Iterator<Window[]> players = windows.values().iterator();
+        while (players.hasNext()) {
+            Window[] byFeature = players.next();
+            boolean open = false;
+            for (int i = 0; i < byFeature.length; i++) {
+                Window window = byFeature[i];
+                if (window == null) {
+                    continue;
+                }
+                if (window.closesAt > tick) {
+                    open = true;
+                } else if (window.count > 0 && window.player.isOnline()) {
+                    playScaled(window.player, window.settings, window.count);
+                    window.count = 0;
+                    window.closesAt = tick + Math.max(1, windowTicks);
+                    open = true;
+                } else {
+                    byFeature[i] = null;
+                }
+            }
+            if (!open) {
+                players.remove();
+            }
+        }
+
+        if (windows.isEmpty()) {
+            cancelTask();
+        }
+    }
+
+    /**
+     * Plays a feature's sound for a number of reverts. Volume grows with the square root
+     * of the count, as it would for that many similar sounds at once.
+     */
+    private static void playScaled(Player player, SoundConfig.SoundSettings settings, int count) {
+        float volume = count > 1 ? Math.min(10.0f, settings.volume * (float) Math.sqrt(count)) : settings.volume;
+        player.playSound(player.getLocation(), settings.sound, settings.category, volume, settings.pitch);
+    }
+
+    private void cancelTask() {
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+}
@@ -20,10 +20,11 @@ public class SoundConfig {
     private final File configFile;
     private FileConfiguration config;
     
-    // Sound settings for each feature
-    private SoundSettings barkBackSettings;
-    private SoundSettings pathBackSettings;
-    private SoundSettings farmBackSettings;
+    // Sound settings indexed by Feature ordinal
+    private SoundSettings[] settings;
+    
+    // Ticks over which one feature's sounds for a player are merged; 0 plays every sound
+    private int coalesceTicks;
     
     /**
      * Represents sound configuration for a specific feature
@@ -91,26 +92,18 @@ public class SoundConfig {
             configFile.createNewFile();
             config = new YamlConfiguration();
             
-            // BarkBack settings
-            config.set("barkback.sound", "ITEM_AXE_STRIP");
-            config.set("barkback.category", "BLOCKS");
-            config.set("barkback.volume", 1.0);
-            config.set("barkback.pitch", 1.0);
-            config.set("barkback.enabled", true);
-            
-            // PathBack settings
-            config.set("pathback.sound", "ITEM_SHOVEL_FLATTEN");
-            config.set("pathback.category", "BLOCKS");
-            config.set("pathback.volume", 1.0);
-            config.set("pathback.pitch", 1.0);
-            config.set("pathback.enabled", true);
+            // One section per feature, keyed like the toggle command
+            for (Feature feature : Feature.values()) {
+                String key = feature.getKey();
+                config.set(key + ".sound", feature.getDefaultSound());
+                config.set(key + ".category", "BLOCKS");
+                config.set(key + ".volume", 1.0);
+                config.set(key + ".pitch", 1.0);
+                config.set(key + ".enabled", true);
+            }
             
-            // FarmBack settings
-            config.set("farmback.sound", "ITEM_HOE_TILL");
-            config.set("farmback.category", "BLOCKS");
-            config.set("farmback.volume", 1.0);
-            config.set("farmback.pitch", 1.0);
-            config.set("farmback.enabled", true);
+            // Sound coalescing
+            config.set("coalesce-ticks", 2);
             
             // Add configuration header comments
             config.options().setHeader(java.util.Arrays.asList(
@@ -121,7 +114,8 @@ public class SoundConfig {
                 "Category Options: MASTER, MUSIC, RECORD, WEATHER, BLOCK, HOSTILE, NEUTRAL, PLAYER, AMBIENT, VOICE",
                 "Volume: 0.0 to 10.0 (1.0 = normal volume)",
                 "Pitch: 0.5 to 2.0 (1.0 = normal pitch, higher = higher pitch)",
-                "Enabled: true/false to enable/disable sounds for each feature"
+                "Enabled: true/false to enable/disable sounds for each feature",
+                "Coalesce Ticks: further reverts within this many ticks of a sound share one louder sound (0 = off)"
             ));
             
             config.save(configFile);
@@ -136,78 +130,32 @@ public class SoundConfig {
      * Load sound settings from configuration
      */
     private void loadSoundSettings() {
-        // Load BarkBack settings
-        try {
-            String soundName = config.getString("barkback.sound", "ITEM_AXE_STRIP");
-            String categoryName = config.getString("barkback.category", "BLOCKS");
-            
-            Sound sound;
-            SoundCategory category;
-            
-            try {
-                sound = Sound.valueOf(soundName);
-            } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid BarkBack sound '" + soundName + "', using default ITEM_AXE_STRIP");
-                sound = Sound.ITEM_AXE_STRIP;
-            }
-            
-            try {
-                category = SoundCategory.valueOf(categoryName);
-            } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid BarkBack sound category '" + categoryName + "', using default BLOCKS");
-                category = SoundCategory.BLOCKS;
-            }
-            
-            barkBackSettings = new SoundSettings(
-                sound,
-                category,
-                validateVolume(config.getDouble("barkback.volume", 1.0), "BarkBack"),
-                validatePitch(config.getDouble("barkback.pitch", 1.0), "BarkBack"),
-                config.getBoolean("barkback.enabled", true)
-            );
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to load BarkBack sound settings: " + e.getMessage());
-            barkBackSettings = new SoundSettings(Sound.ITEM_AXE_STRIP, SoundCategory.BLOCKS, 1.0f, 1.0f, true);
+        SoundSettings[] loaded = new SoundSettings[Feature.values().length];
+        for (Feature feature : Feature.values()) {
+            loaded[feature.ordinal()] = loadFeatureSettings(feature);
         }
+        settings = loaded;
         
-        // Load PathBack settings
-        try {
-            String soundName = config.getString("pathback.sound", "ITEM_SHOVEL_FLATTEN");
-            String categoryName = config.getString("pathback.category", "BLOCKS");
-            
-            Sound sound;
-            SoundCategory category;
-            
-            try {
-                sound = Sound.valueOf(soundName);
-            } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid PathBack sound '" + soundName + "', using default ITEM_SHOVEL_FLATTEN");
-                sound = Sound.ITEM_SHOVEL_FLATTEN;
-            }
-            
-            try {
-                category = SoundCategory.valueOf(categoryName);
-            } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid PathBack sound category '" + categoryName + "', using default BLOCKS");
-                category = SoundCategory.BLOCKS;
-            }
-            
-            pathBackSettings = new SoundSettings(
-                sound,
-                category,
-                validateVolume(config.getDouble("pathback.volume", 1.0), "PathBack"),
-                validatePitch(config.getDouble("pathback.pitch", 1.0), "PathBack"),
-                config.getBoolean("pathback.enabled", true)
-            );
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to load PathBack sound settings: " + e.getMessage());
-            pathBackSettings = new SoundSettings(Sound.ITEM_SHOVEL_FLATTEN, SoundCategory.BLOCKS, 1.0f, 1.0f, true);
+        int ticks = config.getInt("coalesce-ticks", 2);
+        if (ticks < 0) {
+            plugin.getLogger().warning("Sound coalesce-ticks " + ticks + " is below minimum (0), using 0");
+            ticks = 0;
         }
-        
-        // Load FarmBack settings
+        coalesceTicks = ticks;
+    }
+    
+    /**
+     * Load one feature's sound settings, falling back to its defaults for invalid values
+     * @param feature the feature
+     * @return the feature's sound settings
+     */
+    private SoundSettings loadFeatureSettings(Feature feature) {
+        String key = feature.getKey();
+        String name = feature.getDisplayName();
+        Sound defaultSound = Sound.valueOf(feature.getDefaultSound());
         try {
-            String soundName = config.getString("farmback.sound", "ITEM_HOE_TILL");
-            String categoryName = config.getString("farmback.category", "BLOCKS");
+            String soundName = config.getString(key + ".sound", defaultSound.name());
+            String categoryName = config.getString(key + ".category", "BLOCKS");
             
             Sound sound;
             SoundCategory category;
@@ -215,31 +163,30 @@ public class SoundConfig {
             try {
                 sound = Sound.valueOf(soundName);
             } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid FarmBack sound '" + soundName + "', using default ITEM_HOE_TILL");
-                sound = Sound.ITEM_HOE_TILL;
+                plugin.getLogger().warning("Invalid " + name + " sound '" + soundName + "', using default " + defaultSound.name());
+                sound = defaultSound;
             }
             
             try {
                 category = SoundCategory.valueOf(categoryName);
             } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid FarmBack sound category '" + categoryName + "', using default BLOCKS");
+                plugin.getLogger().warning("Invalid " + name + " sound category '" + categoryName + "', using default BLOCKS");
                 category = SoundCategory.BLOCKS;
             }
             
-            farmBackSettings = new SoundSettings(
+            return new SoundSettings(
                 sound,
                 category,
-                validateVolume(config.getDouble("farmback.volume", 1.0), "FarmBack"),
-                validatePitch(config.getDouble("farmback.pitch", 1.0), "FarmBack"),
-                config.getBoolean("farmback.enabled", true)
+                validateVolume(config.getDouble(key + ".volume", 1.0), name),
+                validatePitch(config.getDouble(key + ".pitch", 1.0), name),
+                config.getBoolean(key + ".enabled", true)
             );
         } catch (Exception e) {
-            plugin.getLogger().severe("Failed to load FarmBack sound settings: " + e.getMessage());
-            farmBackSettings = new SoundSettings(Sound.ITEM_HOE_TILL, SoundCategory.BLOCKS, 1.0f, 1.0f, true);
+            plugin.getLogger().severe("Failed to load " + name + " sound settings: " + e.getMessage());
+            return new SoundSettings(defaultSound, SoundCategory.BLOCKS, 1.0f, 1.0f, true);
         }
     }
     
-    
     /**
      * Reload the sound configuration from file
      */
@@ -249,27 +196,20 @@ public class SoundConfig {
     }
     
     /**
-     * Get BarkBack sound settings
-     * @return BarkBack sound settings
-     */
-    public SoundSettings getBarkBackSettings() {
-        return barkBackSettings;
-    }
-    
-    /**
-     * Get PathBack sound settings
-     * @return PathBack sound settings
+     * Get the sound settings for a feature
+     * @param feature the feature
+     * @return the feature's sound settings
      */
-    public SoundSettings getPathBackSettings() {
-        return pathBackSettings;
+    public SoundSettings getSettings(Feature feature) {
+        return settings[feature.ordinal()];
     }
     
     /**
-     * Get FarmBack sound settings
-     * @return FarmBack sound settings
+     * Get the window over which a player's sounds for one feature are merged
+     * @return window length in ticks, 0 if every revert plays its own sound
      */
-    public SoundSettings getFarmBackSettings() {
-        return farmBackSettings;
+    public int getCoalesceTicks() {
+        return coalesceTicks;
     }
     
     /**
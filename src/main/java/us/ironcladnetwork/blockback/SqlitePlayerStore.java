@@ -0,0 +1,452 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Stores player settings in an embedded SQLite database, players.db.
+ * <p>
+ * Only players that are looked up are held in memory. Changes arrive already coalesced
+ * from the {@link WriteCoalescer}, and each batch is written in a single transaction on
+ * the calling thread, the writer thread. A batch that fails to commit is kept in memory
+ * and written with the next one, or at shutdown.
+ * <p>
+ * Lookups use a second, read-only connection with its own lock, so a lookup on the main
+ * thread never waits for a batch to commit or for another server's lock to clear.
+ * The database can be indexed and queried with any SQLite tool; the disabled column
+ * holds the mask of disabled features, one bit per {@link Feature} ordinal.
+ * <p>
+ * Uses the SQLite JDBC driver bundled with Spigot and Paper servers.
+ * <p>
+ * A private database uses write-ahead logging. WAL keeps its index in shared memory, which
+ * only works for processes on the same machine, so a database shared between servers uses
+ * a rollback journal instead and waits for other servers' locks rather than failing.
+ */
+final class SqlitePlayerStore implements PlayerSettingsStore {
+
+    private static final String CREATE_TABLE =
+            "CREATE TABLE IF NOT EXISTS player_settings ("
+            + "uuid TEXT PRIMARY KEY NOT NULL, "
+            + "name TEXT, "
+            + "disabled INTEGER NOT NULL DEFAULT 0)";
+    private static final String SELECT_ONE =
+            "SELECT name, disabled FROM player_settings WHERE uuid = ?";
+    private static final String SELECT_ALL =
+            "SELECT uuid, name, disabled FROM player_settings";
+    private static final String SELECT_PAGE =
+            "SELECT uuid, name, disabled FROM player_settings WHERE uuid > ? ORDER BY uuid LIMIT ?";
+    private static final String UPSERT =
+            "INSERT INTO player_settings (uuid, name, disabled) VALUES (?, ?, ?) "
+            + "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, disabled = excluded.disabled";
+    private static final String DELETE =
+            "DELETE FROM player_settings WHERE uuid = ?";
+
+    // SQLite's default limit on bound parameters is 999
+    private static final int MAX_BATCH_LOOKUP = 500;
+    // Rows read per lock hold while visiting every player
+    private static final int PAGE_SIZE = 1000;
+    // How long a shared database waits for another server's lock
+    private static final int SHARED_BUSY_TIMEOUT_MILLIS = 5000;
+
+    // Marks a delete among the unsaved writes
+    private static final PlayerSettings DELETED = new PlayerSettings(null);
+
+    private final Logger logger;
+    private final File dataFolder;
+    private final File databaseFile;
+
+    // Writes from batches that failed to commit, retried with the next batch. Only changed
+    // while holding the monitor; read without it by lookups.
+    private final ConcurrentHashMap<UUID, PlayerSettings> unsaved = new ConcurrentHashMap<>();
+    private final boolean shared;
+    // Guarded by the monitor; used for writes
+    private Connection connection;
+    // Guarded by readLock; used for lookups
+    private Connection readConnection;
+    private final Object readLock = new Object();
+
+    /**
+     * @param dataFolder the plugin data folder
+     * @param logger logger for status and error messages
+     */
+    SqlitePlayerStore(File dataFolder, Logger logger) {
+        this(dataFolder, logger, false);
+    }
+
+    /**
+     * @param dataFolder the folder holding players.db
+     * @param logger logger for status and error messages
+     * @param shared true if other servers open the same database, possibly over a network filesystem
+     */
+    SqlitePlayerStore(File dataFolder, Logger logger, boolean shared) {
+        this.logger = logger;
+        this.dataFolder = dataFolder;
+        this.databaseFile = new File(dataFolder, "players.db");
+        this.shared = shared;
+    }
+
+    @Override
+    public synchronized void open() {
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                if (shared) {
+                    statement.execute("PRAGMA busy_timeout=" + SHARED_BUSY_TIMEOUT_MILLIS);
+                    statement.execute("PRAGMA journal_mode=DELETE");
+                    statement.execute("PRAGMA synchronous=FULL");
+                } else {
+                    statement.execute("PRAGMA journal_mode=WAL");
+                    statement.execute("PRAGMA synchronous=NORMAL");
+                }
+                statement.execute(CREATE_TABLE);
+            }
+        } catch (SQLException e) {
+            logger.severe("Could not open players.db: " + e.getMessage());
+            connection = null;
+            return;
+        }
+
+        synchronized (readLock) {
+            try {
+                readConnection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+                readConnection.setReadOnly(true);
+                if (shared) {
+                    try (Statement statement = readConnection.createStatement()) {
+                        // Rollback journal readers only wait while another connection commits
+                        statement.execute("PRAGMA busy_timeout=" + SHARED_BUSY_TIMEOUT_MILLIS);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.severe("Could not open players.db for reading: " + e.getMessage());
+                readConnection = null;
+            }
+        }
+
+        // Until a conversion succeeds players.yml stays in place, so a failed one is retried
+        convertLegacyFile();
+    }
+
+    @Override
+    public PlayerSettings load(UUID uuid) {
+        PlayerSettings pending = unsaved.get(uuid);
+        if (pending != null) {
+            return pending == DELETED ? null : pending;
+        }
+
+        synchronized (readLock) {
+            if (readConnection == null) {
+                return null;
+            }
+            try (PreparedStatement statement = readConnection.prepareStatement(SELECT_ONE)) {
+                statement.setString(1, uuid.toString());
+                try (ResultSet result = statement.executeQuery()) {
+                    if (!result.next()) {
+                        return null;
+                    }
+                    return new PlayerSettings(result.getString(1), result.getInt(2));
+                }
+            } catch (SQLException e) {
+                logger.warning("Could not load settings for " + uuid + " from players.db: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Map<UUID, PlayerSettings> loadAll(Collection<UUID> uuids) {
+        Map<UUID, PlayerSettings> result = new HashMap<>();
+        List<UUID> toQuery = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            PlayerSettings pending = unsaved.get(uuid);
+            if (pending == null) {
+                toQuery.add(uuid);
+            } else if (pending != DELETED) {
+                result.put(uuid, pending);
+            }
+        }
+
+        synchronized (readLock) {
+            if (readConnection == null) {
+                return result;
+            }
+            for (int start = 0; start < toQuery.size(); start += MAX_BATCH_LOOKUP) {
+                List<UUID> chunk = toQuery.subList(start, Math.min(start + MAX_BATCH_LOOKUP, toQuery.size()));
+                StringBuilder sql = new StringBuilder(SELECT_ALL).append(" WHERE uuid IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(')');
+
+                try (PreparedStatement statement = readConnection.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setString(i + 1, chunk.get(i).toString());
+                    }
+                    try (ResultSet rows = statement.executeQuery()) {
+                        while (rows.next()) {
+                            result.put(UUID.fromString(rows.getString(1)), readRow(rows));
+                        }
+                    }
+                } catch (SQLException | IllegalArgumentException e) {
+                    logger.warning("Could not batch load settings from players.db: " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void upsert(UUID uuid, PlayerSettings settings) {
+        write(Collections.singletonMap(uuid, settings));
+    }
+
+    @Override
+    public void upsertAll(Map<UUID, PlayerSettings> entries) {
+        write(entries);
+    }
+
+    @Override
+    public void delete(UUID uuid) {
+        write(Collections.singletonMap(uuid, DELETED));
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) {
+        Map<UUID, PlayerSettings> deletes = new HashMap<>();
+        for (UUID uuid : uuids) {
+            deletes.put(uuid, DELETED);
+        }
+        write(deletes);
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        // Unsaved writes take precedence over the rows they replace, as in load()
+        Map<UUID, PlayerSettings> pending = new HashMap<>(unsaved);
+        String after = "";
+        while (after != null) {
+            // Read a page under the read lock and visit it after releasing it, so lookups are
+            // not held up by whatever the visitor does
+            Map<UUID, PlayerSettings> page = new LinkedHashMap<>();
+            after = readPage(after, page);
+            for (Map.Entry<UUID, PlayerSettings> entry : page.entrySet()) {
+                if (!pending.containsKey(entry.getKey())) {
+                    visitor.accept(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Map.Entry<UUID, PlayerSettings> entry : pending.entrySet()) {
+            if (entry.getValue() != DELETED) {
+                visitor.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void reload() {
+        // Nothing is cached beyond unsaved writes, which are retried instead of dropped
+        write(Collections.emptyMap());
+    }
+
+    @Override
+    public synchronized boolean isHealthy() {
+        try {
+            return connection != null && !connection.isClosed() && dataFolder.canWrite();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        // Writes run on the caller, so the only thing left is a batch that failed earlier
+        boolean success = write(Collections.emptyMap());
+        synchronized (this) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.warning("Could not close players.db: " + e.getMessage());
+                }
+                connection = null;
+            }
+        }
+        synchronized (readLock) {
+            if (readConnection != null) {
+                try {
+                    readConnection.close();
+                } catch (SQLException e) {
+                    logger.warning("Could not close players.db: " + e.getMessage());
+                }
+                readConnection = null;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Write changes together with any earlier writes that failed to commit. On failure
+     * they are all kept for the next call.
+     * @param changes settings keyed by UUID, with {@link #DELETED} for a delete
+     * @return true if everything was committed
+     */
+    private synchronized boolean write(Map<UUID, PlayerSettings> changes) {
+        Map<UUID, PlayerSettings> batch = new HashMap<>(unsaved);
+        batch.putAll(changes);
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        if (commit(batch)) {
+            unsaved.clear();
+            return true;
+        }
+        unsaved.putAll(changes);
+        logger.warning(unsaved.size() + " player settings changes are kept in memory and will be retried");
+        return false;
+    }
+
+    /**
+     * Apply writes in one transaction on the calling thread
+     * @param batch settings keyed by UUID, with {@link #DELETED} for a delete
+     * @return true if the writes were committed
+     */
+    private synchronized boolean commit(Map<UUID, PlayerSettings> batch) {
+        if (connection == null) {
+            return false;
+        }
+
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement delete = connection.prepareStatement(DELETE)) {
+            connection.setAutoCommit(false);
+            for (Map.Entry<UUID, PlayerSettings> entry : batch.entrySet()) {
+                PlayerSettings settings = entry.getValue();
+                if (settings == DELETED) {
+                    delete.setString(1, entry.getKey().toString());
+                    delete.addBatch();
+                } else {
+                    upsert.setString(1, entry.getKey().toString());
+                    upsert.setString(2, settings.name);
+                    upsert.setInt(3, settings.disabled);
+                    upsert.addBatch();
+                }
+            }
+            upsert.executeBatch();
+            delete.executeBatch();
+            connection.commit();
+            return true;
+        } catch (SQLException e) {
+            logger.severe("Could not write player settings to players.db: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                logger.warning("Rollback failed: " + rollbackException.getMessage());
+            }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // Connection is unusable; the next operation reports the error
+            }
+        }
+    }
+
+    /**
+     * Reads the next {@link #PAGE_SIZE} rows in key order
+     * @param after the last key of the previous page, or "" for the first page
+     * @param page receives the rows
+     * @return the last key read, or null if there are no more rows
+     */
+    private String readPage(String after, Map<UUID, PlayerSettings> page) {
+        synchronized (readLock) {
+            if (readConnection == null) {
+                return null;
+            }
+            String last = null;
+            int rowCount = 0;
+            try (PreparedStatement statement = readConnection.prepareStatement(SELECT_PAGE)) {
+                statement.setString(1, after);
+                statement.setInt(2, PAGE_SIZE);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        last = rows.getString(1);
+                        rowCount++;
+                        try {
+                            page.put(UUID.fromString(last), readRow(rows));
+                        } catch (IllegalArgumentException e) {
+                            logger.warning("Skipping invalid player key '" + last + "' in players.db");
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                logger.severe("Could not read players.db: " + e.getMessage());
+                return null;
+            }
+            return rowCount < PAGE_SIZE ? null : last;
+        }
+    }
+
+    private static PlayerSettings readRow(ResultSet rows) throws SQLException {
+        return new PlayerSettings(rows.getString(2), rows.getInt(3));
+    }
+
+    /**
+     * Conversion of an existing players.yml into players.db. Players the database already
+     * has are left alone, so retrying after a failed conversion never replaces settings
+     * changed since. The original file is kept as players.yml.migrated.
+     */
+    private void convertLegacyFile() {
+        File legacyFile = new File(dataFolder, "players.yml");
+        if (!legacyFile.exists() || legacyFile.length() == 0) {
+            return;
+        }
+
+        logger.info("Converting players.yml to SQLite storage...");
+        YamlConfiguration legacy = new YamlConfiguration();
+        try {
+            legacy.load(legacyFile);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.severe("Could not read players.yml for conversion: " + e.getMessage());
+            logger.warning("players.yml has been left in place and will be converted at the next start");
+            return;
+        }
+
+        Map<UUID, PlayerSettings> entries = new HashMap<>();
+        new YamlSettingsCodec(logger).readAll(legacy, entries::put);
+        entries.keySet().removeAll(loadAll(entries.keySet()).keySet());
+        int converted = entries.size();
+        // Not kept for retry on failure; the whole file is converted again next start
+        if (!entries.isEmpty() && !commit(entries)) {
+            logger.severe("Conversion failed; players.yml has been left in place and will be converted at the next start");
+            return;
+        }
+
+        File migrated = new File(dataFolder, "players.yml.migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Could not rename players.yml to " + migrated.getName()
+                    + "; remove it by hand or players deleted from players.db will be imported again");
+        }
+        logger.info("Converted " + converted + " players into players.db");
+    }
+}
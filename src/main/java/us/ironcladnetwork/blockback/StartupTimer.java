@@ -0,0 +1,32 @@
+package us.ironcladnetwork.blockback;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures consecutive startup phases so the log shows where enable time goes.
+ * Not thread-safe; each timer is used by one thread at a time.
+ */
+final class StartupTimer {
+
+    private final long start = System.nanoTime();
+    private long phaseStart = start;
+    private final StringJoiner phases = new StringJoiner(", ");
+
+    /**
+     * Ends the current phase, which began when the previous one ended
+     * @param name short name shown in the summary
+     */
+    void phase(String name) {
+        long now = System.nanoTime();
+        phases.add(name + " " + TimeUnit.NANOSECONDS.toMillis(now - phaseStart) + "ms");
+        phaseStart = now;
+    }
+
+    /**
+     * @return total time and each recorded phase, e.g. "42ms (config 3ms, open store 39ms)"
+     */
+    String summary() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms (" + phases + ")";
+    }
+}
@@ -0,0 +1,45 @@
+package us.ironcladnetwork.blockback;
+
+/**
+ * Storage layouts available for persistent player settings.
+ * Selected with {@code storage.mode} in config.yml.
+ */
+public enum StorageMode {
+
+    /** All players in a single players.yml file (the original layout). */
+    YAML,
+
+    /** Players split into bucket files under players/ keyed by UUID prefix. */
+    SHARDED,
+
+    /** Binary snapshot plus an append-only journal of individual toggles. */
+    JOURNAL,
+
+    /** Memory-mapped fixed-width binary records with an open-addressed index. */
+    MAPPED,
+
+    /** Embedded SQLite database using the driver bundled with the server. */
+    SQLITE,
+
+    /** Single players.yml indexed by byte offset; entries are parsed on demand. */
+    INDEXED,
+
+    /** SQLite database in a directory shared by several servers, with a change log between them. */
+    SHARED;
+
+    /**
+     * Parses a storage mode name from configuration.
+     * @param value the configured value
+     * @return the matching mode, or null if the value is not recognised
+     */
+    public static StorageMode fromString(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Copies every player from one storage layout to another without holding them all in memory.
+ * <p>
+ * Players are streamed from the source and written to the target in batches of
+ * {@link #BATCH_SIZE}, inside a staging folder so that nothing in the data folder changes
+ * until the copy is complete. Both sides are then counted and checksummed; only a
+ * verified copy can be installed, which moves the target's files into the data folder
+ * and keeps any files they replace under a ".pre-migration" name.
+ * <p>
+ * Runs on the calling thread. {@link #main} converts a stopped server's data folder.
+ */
+final class StoreMigration {
+
+    /** Players written to the target per batch. */
+    static final int BATCH_SIZE = 1000;
+
+    private static final String STAGING_FOLDER = "migration";
+    // Progress is reported at most this often
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Receives progress while players are being copied
+     */
+    interface Progress {
+        /**
+         * @param copied players copied so far
+         * @param perSecond average players copied per second
+         */
+        void report(long copied, long perSecond);
+    }
+
+    /**
+     * Counts and checksums of both sides of a finished copy
+     */
+    static final class Result {
+        final long sourceCount;
+        final long targetCount;
+        final long sourceChecksum;
+        final long targetChecksum;
+        final long millis;
+
+        Result(Checksum source, Checksum target, long millis) {
+            this.sourceCount = source.count;
+            this.targetCount = target.count;
+            this.sourceChecksum = source.sum;
+            this.targetChecksum = target.sum;
+            this.millis = millis;
+        }
+
+        /**
+         * @return true if the target holds exactly what was read from the source
+         */
+        boolean isVerified() {
+            return sourceCount == targetCount && sourceChecksum == targetChecksum;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("source %d players (checksum %016x), target %d players (checksum %016x), %dms",
+                    sourceCount, sourceChecksum, targetCount, targetChecksum, millis);
+        }
+    }
+
+    private final File dataFolder;
+    private final File stagingFolder;
+    private final Logger logger;
+    private final StorageMode from;
+    private final StorageMode to;
+    private PlayerSettingsStore target;
+    // Inline while copying, so at most one batch is held in memory
+    private volatile Executor writeExecutor = Runnable::run;
+
+    /**
+     * @param dataFolder the plugin data folder
+     * @param logger logger for status and error messages
+     * @param from the layout being migrated from
+     * @param to the layout being migrated to
+     */
+    StoreMigration(File dataFolder, Logger logger, StorageMode from, StorageMode to) {
+        this.dataFolder = dataFolder;
+        this.stagingFolder = new File(dataFolder, STAGING_FOLDER);
+        this.logger = logger;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param from the layout being migrated from
+     * @param to the layout being migrated to
+     * @return why the migration is not possible, or null if it is
+     */
+    static String checkModes(StorageMode from, StorageMode to) {
+        if (from == to) {
+            return "Source and target storage are the same.";
+        }
+        if (from == StorageMode.SHARED || to == StorageMode.SHARED) {
+            return "Shared storage lives outside the data folder. Migrate to sqlite and copy players.db instead.";
+        }
+        if (isYamlFile(from) && isYamlFile(to)) {
+            return "yaml and indexed both use players.yml. Change storage.mode instead.";
+        }
+        return null;
+    }
+
+    private static boolean isYamlFile(StorageMode mode) {
+        return mode == StorageMode.YAML || mode == StorageMode.INDEXED;
+    }
+
+    StorageMode getTo() {
+        return to;
+    }
+
+    /**
+     * Copies every player from the source into a new target store in the staging folder,
+     * then counts and checksums both. The target is left open; see {@link #getTarget()}.
+     * @param source an open store to read from
+     * @param progress receives progress while copying
+     * @return counts and checksums of both sides
+     * @throws IOException if the staging folder or target cannot be written
+     */
+    Result run(PlayerSettingsStore source, Progress progress) throws IOException {
+        long start = System.nanoTime();
+        deleteRecursively(stagingFolder);
+        if (!stagingFolder.mkdirs()) {
+            throw new IOException("Could not create " + stagingFolder.getAbsolutePath());
+        }
+
+        Executor targetExecutor = task -> writeExecutor.execute(task);
+        Checksum sourceChecksum;
+        if (isYamlFile(to)) {
+            // Written as a stream of entries rather than through a configuration tree
+            File yamlFile = new File(stagingFolder, "players.yml");
+            try (Writer writer = new BufferedWriter(Files.newBufferedWriter(yamlFile.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+                YamlCopier copier = new YamlCopier(writer, progress, start);
+                source.forEach(copier);
+                if (copier.error != null) {
+                    throw copier.error;
+                }
+                sourceChecksum = copier.checksum;
+            }
+            target = PlayerDataManager.createStore(StorageMode.INDEXED, stagingFolder, logger, targetExecutor);
+            target.open();
+        } else {
+            target = PlayerDataManager.createStore(to, stagingFolder, logger, targetExecutor);
+            target.open();
+            BatchCopier copier = new BatchCopier(target, progress, start);
+            source.forEach(copier);
+            copier.flush();
+            sourceChecksum = copier.checksum;
+        }
+
+        Checksum targetChecksum = new Checksum();
+        target.forEach(targetChecksum);
+        return new Result(sourceChecksum, targetChecksum,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Moves the target's writes off the calling thread once the copy is done,
+     * for when it is kept up to date on a running server
+     * @param ioExecutor executor used for asynchronous writes
+     */
+    void writeInBackground(Executor ioExecutor) {
+        writeExecutor = ioExecutor;
+    }
+
+    /**
+     * @return the open target store in the staging folder, or null before {@link #run}
+     */
+    PlayerSettingsStore getTarget() {
+        return target;
+    }
+
+    /**
+     * Closes the target and moves its files into the data folder.
+     * Files they replace are kept with a ".pre-migration" suffix.
+     * @param timeoutSeconds maximum time to wait for the target to finish writing
+     * @return true if every file was moved
+     */
+    boolean install(int timeoutSeconds) {
+        if (target != null && !target.close(timeoutSeconds)) {
+            logger.warning("Migrated storage did not finish writing; leaving it in " + stagingFolder.getName() + "/");
+            return false;
+        }
+        target = null;
+
+        File[] files = stagingFolder.listFiles();
+        if (files == null) {
+            return false;
+        }
+        String suffix = ".pre-migration-" + System.currentTimeMillis();
+        for (File file : files) {
+            File destination = new File(dataFolder, file.getName());
+            try {
+                if (destination.exists()) {
+                    Files.move(destination.toPath(), new File(dataFolder, file.getName() + suffix).toPath());
+                }
+                Files.move(file.toPath(), destination.toPath());
+            } catch (IOException e) {
+                logger.severe("Could not move migrated " + file.getName() + " into place: " + e.getMessage());
+                return false;
+            }
+        }
+        deleteRecursively(stagingFolder);
+        logger.info("Installed " + to.name().toLowerCase(Locale.ROOT) + " storage from migration");
+        return true;
+    }
+
+    /**
+     * Closes the target and deletes the staging folder
+     */
+    void abort() {
+        if (target != null) {
+            target.close(5);
+            target = null;
+        }
+        deleteRecursively(stagingFolder);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Count and order-independent sum of entry hashes, as used for backup snapshots
+     */
+    static final class Checksum implements BiConsumer<UUID, PlayerSettings> {
+        long count;
+        long sum;
+
+        @Override
+        public void accept(UUID uuid, PlayerSettings settings) {
+            add(YamlSettingsCodec.formatEntry(uuid, settings));
+        }
+
+        void add(String entry) {
+            sum += YamlSettingsCodec.entryHash(entry);
+            count++;
+        }
+    }
+
+    /**
+     * Counts copied players and reports progress at most every few seconds
+     */
+    private abstract static class Copier implements BiConsumer<UUID, PlayerSettings> {
+        final Checksum checksum = new Checksum();
+        private final Progress progress;
+        private final long start;
+        private long lastReport;
+
+        Copier(Progress progress, long start) {
+            this.progress = progress;
+            this.start = start;
+            this.lastReport = start;
+        }
+
+        void copied() {
+            long now = System.nanoTime();
+            if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - start));
+                progress.report(checksum.count, checksum.count * 1000 / elapsedMillis);
+            }
+        }
+    }
+
+    /**
+     * Writes players to the target store in bounded batches
+     */
+    private static final class BatchCopier extends Copier {
+        private final PlayerSettingsStore target;
+        private Map<UUID, PlayerSettings> batch = new HashMap<>();
+
+        BatchCopier(PlayerSettingsStore target, Progress progress, long start) {
+            super(progress, start);
+            this.target = target;
+        }
+
+        @Override
+        public void accept(UUID uuid, PlayerSettings settings) {
+            batch.put(uuid, settings);
+            checksum.accept(uuid, settings);
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+            copied();
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                target.upsertAll(batch);
+                batch = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Streams players into a players.yml file
+     */
+    private static final class YamlCopier extends Copier {
+        private final Writer writer;
+        private IOException error;
+
+        YamlCopier(Writer writer, Progress progress, long start) {
+            super(progress, start);
+            this.writer = writer;
+        }
+
+        @Override
+        public void accept(UUID uuid, PlayerSettings settings) {
+            if (error != null) {
+                return;
+            }
+            String entry = YamlSettingsCodec.formatEntry(uuid, settings);
+            try {
+                writer.write(entry);
+            } catch (IOException e) {
+                error = e;
+                return;
+            }
+            checksum.add(entry);
+            copied();
+        }
+    }
+
+    /**
+     * Converts the data folder of a stopped server:
+     * {@code java -cp <server jar>:<plugin jar> us.ironcladnetwork.blockback.StoreMigration <data folder> <from> <to>}
+     * <p>
+     * On success the new files are installed and storage.mode in config.yml is updated.
+     * @param args the plugin data folder, the current layout and the new layout
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: StoreMigration <plugin data folder> <from> <to>");
+            System.exit(2);
+        }
+        File dataFolder = new File(args[0]);
+        StorageMode from = StorageMode.fromString(args[1]);
+        StorageMode to = StorageMode.fromString(args[2]);
+        if (!dataFolder.isDirectory() || from == null || to == null) {
+            System.err.println("Unknown data folder or storage mode");
+            System.exit(2);
+        }
+        String problem = checkModes(from, to);
+        if (problem != null) {
+            System.err.println(problem);
+            System.exit(2);
+        }
+
+        Logger logger = Logger.getLogger("BlockBack");
+        // players.yml is read by streaming it rather than parsing it whole
+        PlayerSettingsStore source = PlayerDataManager.createStore(from == StorageMode.YAML ? StorageMode.INDEXED : from,
+                dataFolder, logger, Runnable::run);
+        source.open();
+
+        StoreMigration migration = new StoreMigration(dataFolder, logger, from, to);
+        Result result;
+        try {
+            result = migration.run(source, (copied, perSecond) ->
+                    logger.info("Copied " + copied + " players (" + perSecond + "/s)"));
+        } finally {
+            source.close(30);
+        }
+
+        logger.info("Migration finished: " + result);
+        if (!result.isVerified()) {
+            migration.abort();
+            logger.severe("Counts or checksums differ, nothing was changed");
+            System.exit(1);
+        }
+        if (!migration.install(30)) {
+            System.exit(1);
+        }
+
+        File configFile = new File(dataFolder, "config.yml");
+        if (configFile.exists()) {
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(configFile);
+            config.set("storage.mode", to.name().toLowerCase(Locale.ROOT));
+            config.save(configFile);
+            logger.info("Set storage.mode to " + to.name().toLowerCase(Locale.ROOT) + " in config.yml");
+        }
+    }
+}
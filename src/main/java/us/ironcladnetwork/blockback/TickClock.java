@@ -0,0 +1,51 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Coarse clock counting server ticks.
+ * A main-thread task advances the counter once per tick, so hot paths can read the
+ * current time as a single volatile load instead of calling System.currentTimeMillis().
+ * Readers on other threads see a value at most one tick old.
+ */
+final class TickClock {
+
+    /** Server ticks per second at full speed. */
+    static final long TICKS_PER_SECOND = 20;
+
+    private final JavaPlugin plugin;
+    private volatile long tick;
+    private int taskId = -1;
+
+    /**
+     * @param plugin the JavaPlugin instance used to schedule the tick task
+     */
+    TickClock(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts advancing the clock every tick
+     */
+    void start() {
+        // Only the main thread writes, so a plain increment of the volatile is safe
+        taskId = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> tick++, 1, 1).getTaskId();
+    }
+
+    /**
+     * Stops advancing the clock
+     */
+    void stop() {
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+
+    /**
+     * @return ticks elapsed since the clock started
+     */
+    long now() {
+        return tick;
+    }
+}
@@ -0,0 +1,151 @@
+package us.ironcladnetwork.blockback;
+
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Write-behind layer in front of a {@link PlayerSettingsStore}.
+ * Changes are recorded per UUID and handed to the store in one batch on each flush,
+ * so a player toggling repeatedly between flushes costs a single write.
+ * Players whose settings are back to the defaults are deleted rather than written,
+ * since a missing entry already means defaults.
+ * <p>
+ * Batches are applied to the store on the {@link WriterThread}, so a flush on the main
+ * thread only enqueues. A batch stays visible through {@link #getPending} until the
+ * store has it.
+ */
+final class WriteCoalescer {
+
+    private final PlayerSettingsStore store;
+    private final Executor writer;
+    private final int maxDirty;
+
+    // Latest settings for each player changed since the last flush
+    private final ConcurrentHashMap<UUID, PlayerSettings> dirty = new ConcurrentHashMap<>();
+    // Flushed settings the writer has not handed to the store yet
+    private final ConcurrentHashMap<UUID, PlayerSettings> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param store the store that receives flushed changes
+     * @param writer the thread that applies batches to the store
+     * @param maxDirty number of dirty players that triggers an early flush
+     */
+    WriteCoalescer(PlayerSettingsStore store, Executor writer, int maxDirty) {
+        this.store = store;
+        this.writer = writer;
+        this.maxDirty = maxDirty;
+    }
+
+    /**
+     * Record that a player's settings changed, replacing any earlier unflushed snapshot
+     * @param uuid the player's UUID
+     * @param settings the player's new settings
+     */
+    void markDirty(UUID uuid, PlayerSettings settings) {
+        dirty.put(uuid, settings);
+    }
+
+    /**
+     * @return true if the dirty count has reached the early-flush threshold
+     */
+    boolean isFlushDue() {
+        return dirty.size() >= maxDirty;
+    }
+
+    /**
+     * Queue every dirty player for the store in one batch
+     * @return the players flushed and the settings they will be written with
+     */
+    synchronized Map<UUID, PlayerSettings> flush() {
+        if (dirty.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<UUID, PlayerSettings> batch = new HashMap<>();
+        for (Map.Entry<UUID, PlayerSettings> entry : dirty.entrySet()) {
+            UUID uuid = entry.getKey();
+            PlayerSettings settings = entry.getValue();
+            // Visible as in flight before it stops being dirty, so lookups never miss it
+            inFlight.put(uuid, settings);
+            batch.put(uuid, settings);
+            // A newer change made meanwhile stays dirty for the next flush
+            dirty.remove(uuid, settings);
+        }
+        writer.execute(() -> {
+            try {
+                write(store, batch);
+            } finally {
+                // Only clears entries a later flush has not replaced
+                batch.forEach(inFlight::remove);
+            }
+        });
+        return batch;
+    }
+
+    /**
+     * Apply a batch to a store, deleting players whose settings are all defaults
+     * @param store the store to update
+     * @param batch settings keyed by UUID
+     */
+    static void write(PlayerSettingsStore store, Map<UUID, PlayerSettings> batch) {
+        Map<UUID, PlayerSettings> changed = new HashMap<>();
+        List<UUID> cleared = new ArrayList<>();
+        for (Map.Entry<UUID, PlayerSettings> entry : batch.entrySet()) {
+            if (entry.getValue().isDefault()) {
+                cleared.add(entry.getKey());
+            } else {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!changed.isEmpty()) {
+            store.upsertAll(changed);
+        }
+        if (!cleared.isEmpty()) {
+            store.deleteAll(cleared);
+        }
+    }
+
+    /**
+     * Delete players from the store unless they have unsaved changes. Holds the flush
+     * lock, so a change made while this runs is queued after the delete, not before it.
+     * @param uuids the players to delete
+     * @return number of players deleted
+     */
+    synchronized int deleteUnchanged(Collection<UUID> uuids) {
+        List<UUID> unchanged = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            if (!dirty.containsKey(uuid) && !inFlight.containsKey(uuid)) {
+                unchanged.add(uuid);
+            }
+        }
+        if (!unchanged.isEmpty()) {
+            writer.execute(() -> store.deleteAll(unchanged));
+        }
+        return unchanged.size();
+    }
+
+    /**
+     * @param uuid the player's UUID
+     * @return the settings not yet in the store for the player, or null if none are pending
+     */
+    PlayerSettings getPending(UUID uuid) {
+        PlayerSettings pending = dirty.get(uuid);
+        return pending != null ? pending : inFlight.get(uuid);
+    }
+
+    /**
+     * @return number of players waiting to be flushed
+     */
+    int getPendingCount() {
+        return dirty.size();
+    }
+}
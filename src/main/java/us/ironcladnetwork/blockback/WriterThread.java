@@ -0,0 +1,152 @@
+package us.ironcladnetwork.blockback;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dedicated thread that applies every change to player storage, in the order submitted.
+ * <p>
+ * Tasks are handed over through a lock-free queue, so the main thread only enqueues and
+ * never waits on disk. With a single writer, a store's files and in-memory state are never
+ * modified by two threads at once. After {@link #shutdown} the thread is gone and tasks
+ * run on the submitting thread instead. A task is only ever taken from the queue and run
+ * while holding the run lock, so a submitter draining the queue after shutdown waits for
+ * a task the thread is still finishing, and tasks never run concurrently or out of order.
+ */
+final class WriterThread implements Executor {
+
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    // Held while a task is taken from the queue and run; uncontended until shutdown
+    private final Object runLock = new Object();
+
+    /**
+     * Starts the thread
+     * @param name thread name, shown in thread dumps
+     * @param logger logger for tasks that fail
+     */
+    WriterThread(String name, Logger logger) {
+        this.logger = logger;
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (running) {
+            LockSupport.unpark(thread);
+        } else {
+            // Stopped while this was being queued; nobody else will run it
+            runQueued();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            if (!runNext()) {
+                // A task queued after the poll leaves a permit, so this returns at once
+                LockSupport.park(this);
+            }
+        }
+        runQueued();
+    }
+
+    private void runQueued() {
+        while (runNext()) {
+            // Runs until the queue is empty
+        }
+    }
+
+    /**
+     * @return false if the queue was empty
+     */
+    private boolean runNext() {
+        synchronized (runLock) {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                return false;
+            }
+            runTask(task);
+            return true;
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            logger.log(Level.SEVERE, "Player data write failed", t);
+        }
+    }
+
+    /**
+     * Waits until every task submitted so far has run
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return true if the tasks ran, false on timeout or interrupt
+     */
+    boolean awaitQueued(long timeout, TimeUnit unit) {
+        if (Thread.currentThread() == thread) {
+            // Everything ahead of the caller has already run
+            return true;
+        }
+        return runAndWait(() -> { }, timeout, unit);
+    }
+
+    /**
+     * Queues a task behind everything submitted so far and waits for it to run
+     * @param task the task
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return true if the task ran, false on timeout or interrupt; the task still runs later
+     */
+    boolean runAndWait(Runnable task, long timeout, TimeUnit unit) {
+        if (Thread.currentThread() == thread) {
+            runTask(task);
+            return true;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        execute(() -> {
+            try {
+                task.run();
+            } finally {
+                latch.countDown();
+            }
+        });
+        try {
+            return latch.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Runs everything still queued and stops the thread
+     * @param timeoutSeconds maximum time to wait for queued tasks
+     * @return true if the thread finished within the timeout
+     */
+    boolean shutdown(int timeoutSeconds) {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(Math.max(1, TimeUnit.SECONDS.toMillis(timeoutSeconds)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warning("Timed out waiting for player data writes to finish");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,464 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Stores every player's settings in a single players.yml file.
+ * Each change rewrites the whole file asynchronously.
+ * <p>
+ * The file is parsed once into an immutable map of settings. Changes go into a concurrent
+ * overlay; a save folds the overlay into a new map, serializes that map and then publishes
+ * it. Callers never share a mutable configuration with the thread that is writing, and
+ * lookups only read the overlay and the published map, so they never wait for a save.
+ * Saves go through {@link DurableFiles} with a checksum trailer, which startup checks
+ * before parsing; the backup is only restored when that check fails.
+ */
+final class YamlPlayerStore implements PlayerSettingsStore {
+
+    private final Logger logger;
+    private final Executor ioExecutor;
+    private final File configFile;
+    private final File backupFolder;
+    private final YamlSettingsCodec codec;
+    // Only used while loading; everything else works on the maps below
+    private FileConfiguration config;
+
+    // Settings as of the last save. Replaced, never modified
+    private volatile Map<UUID, PlayerSettings> saved;
+    // Changes not yet folded into saved
+    private final ConcurrentHashMap<UUID, PlayerSettings> overlay = new ConcurrentHashMap<>();
+    private static final PlayerSettings DELETED = new PlayerSettings(null);
+    // Held while a snapshot is built and written, or the file is re-read
+    private final Object saveLock = new Object();
+    private final AtomicBoolean saveInProgress = new AtomicBoolean(false);
+    private final AtomicBoolean pendingSave = new AtomicBoolean(false);
+
+    /**
+     * @param dataFolder the plugin data folder holding players.yml
+     * @param logger logger for status and error messages
+     * @param ioExecutor executor used for asynchronous saves
+     */
+    YamlPlayerStore(File dataFolder, Logger logger, Executor ioExecutor) {
+        this.logger = logger;
+        this.ioExecutor = ioExecutor;
+        this.configFile = new File(dataFolder, "players.yml");
+        this.backupFolder = BackupManager.getBackupFolder(dataFolder);
+        this.codec = new YamlSettingsCodec(logger);
+    }
+
+    @Override
+    public void open() {
+        if (!configFile.exists()) {
+            try {
+                configFile.createNewFile();
+            } catch (IOException e) {
+                logger.severe("Could not create players.yml: " + e.getMessage());
+            }
+        }
+        StartupTimer timer = new StartupTimer();
+        synchronized (saveLock) {
+            loadConfiguration(timer);
+        }
+
+        // Clean up any orphaned temp files from previous sessions
+        cleanupOrphanedTempFiles();
+        timer.phase("temp-file scan");
+        logger.info("Loaded players.yml in " + timer.summary());
+    }
+
+    @Override
+    public PlayerSettings load(UUID uuid) {
+        PlayerSettings pending = overlay.get(uuid);
+        if (pending != null) {
+            return pending == DELETED ? null : pending;
+        }
+        Map<UUID, PlayerSettings> current = saved;
+        return current != null ? current.get(uuid) : null;
+    }
+
+    @Override
+    public void upsert(UUID uuid, PlayerSettings settings) {
+        overlay.put(uuid, settings);
+        saveConfig();
+    }
+
+    @Override
+    public void upsertAll(Map<UUID, PlayerSettings> entries) {
+        overlay.putAll(entries);
+        // One rewrite of players.yml for the whole batch
+        saveConfig();
+    }
+
+    @Override
+    public void delete(UUID uuid) {
+        if (load(uuid) != null) {
+            overlay.put(uuid, DELETED);
+            saveConfig();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> uuids) {
+        boolean changed = false;
+        for (UUID uuid : uuids) {
+            if (load(uuid) != null) {
+                overlay.put(uuid, DELETED);
+                changed = true;
+            }
+        }
+        if (changed) {
+            saveConfig();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+        Map<UUID, PlayerSettings> current = saved;
+        Map<UUID, PlayerSettings> pending = new HashMap<>(overlay);
+        if (current != null) {
+            for (Map.Entry<UUID, PlayerSettings> entry : current.entrySet()) {
+                if (!pending.containsKey(entry.getKey())) {
+                    visitor.accept(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Map.Entry<UUID, PlayerSettings> entry : pending.entrySet()) {
+            if (entry.getValue() != DELETED) {
+                visitor.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void reload() {
+        StartupTimer timer = new StartupTimer();
+        synchronized (saveLock) {
+            // Pending changes are written first so the reload cannot discard them
+            if (!overlay.isEmpty()) {
+                writeSnapshot();
+            }
+            loadConfiguration(timer);
+        }
+        logger.info("Reloaded players.yml in " + timer.summary());
+    }
+
+    @Override
+    public boolean isHealthy() {
+        try {
+            return saved != null && configFile != null && configFile.getParentFile().canWrite();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean close(int timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            // Wait for the current save to complete
+            while (saveInProgress.get()) {
+                if (System.nanoTime() > deadline) {
+                    logger.warning("Timeout waiting for player data save to complete during shutdown");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while waiting for player data save during shutdown");
+            return false;
+        }
+
+        // Changes left by a failed save are written here; the scheduler may no longer accept tasks
+        if (pendingSave.get() || !overlay.isEmpty()) {
+            pendingSave.set(false);
+            return writeSnapshot();
+        }
+        return true;
+    }
+
+    /**
+     * Load players.yml and publish its settings. Called with saveLock held.
+     * @param timer records the parse, validation and recovery phases
+     */
+    private void loadConfiguration(StartupTimer timer) {
+        parseConfiguration(timer);
+        Map<UUID, PlayerSettings> players = new HashMap<>();
+        codec.readAll(config, players::put);
+        saved = Collections.unmodifiableMap(players);
+        config = null;
+        timer.phase("read settings");
+    }
+
+    /**
+     * Parse players.yml with error handling and recovery
+     * @param timer records the parse, validation and recovery phases
+     */
+    private void parseConfiguration(StartupTimer timer) {
+        try {
+            byte[] data = Files.readAllBytes(configFile.toPath());
+            DurableFiles.Integrity integrity = DurableFiles.verify(data);
+            timer.phase("checksum");
+
+            if (integrity == DurableFiles.Integrity.MISMATCH) {
+                logger.severe("players.yml does not match its checksum and may be damaged, attempting recovery...");
+                keepDamagedCopy();
+                if (recoverFromBackup()) {
+                    timer.phase("recovery");
+                    return;
+                }
+                logger.warning("Recovery failed, loading players.yml as it is");
+            }
+
+            YamlConfiguration loaded = new YamlConfiguration();
+            loaded.loadFromString(new String(data, StandardCharsets.UTF_8));
+            config = loaded;
+            timer.phase("parse");
+
+            // A matching checksum already proves the file is intact; only files without one are walked
+            if (integrity != DurableFiles.Integrity.VALID) {
+                boolean valid = validateConfiguration();
+                timer.phase("validate");
+                if (!valid) {
+                    logger.warning("Configuration validation failed, attempting recovery...");
+                    if (!recoverFromBackup()) {
+                        logger.warning("Recovery failed, creating new configuration with defaults");
+                        createEmptyConfiguration();
+                    }
+                    timer.phase("recovery");
+                }
+            }
+
+        } catch (Exception e) {
+            logger.severe("Failed to load players.yml: " + e.getMessage());
+            logger.warning("Attempting to recover from backup...");
+
+            if (!recoverFromBackup()) {
+                logger.warning("Recovery failed, creating new configuration");
+                createEmptyConfiguration();
+            }
+            timer.phase("recovery");
+        }
+    }
+
+    /**
+     * Keep a copy of a players.yml that failed its checksum before recovery replaces it,
+     * in case it was edited by hand rather than damaged
+     */
+    private void keepDamagedCopy() {
+        File copy = new File(configFile.getParentFile(), "players.yml.damaged-" + System.currentTimeMillis());
+        try {
+            Files.copy(configFile.toPath(), copy.toPath());
+            logger.warning("Kept the damaged file as " + copy.getName());
+        } catch (IOException e) {
+            logger.warning("Could not keep a copy of the damaged players.yml: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validate the loaded configuration structure
+     * @return true if configuration is valid
+     */
+    private boolean validateConfiguration() {
+        try {
+            // Check if the config object is valid
+            if (config == null) {
+                return false;
+            }
+
+            // Try to access configuration methods to ensure it's not corrupted
+            config.getKeys(false);
+
+            // If we have player data, validate a few entries
+            for (String key : config.getKeys(false)) {
+                if (key != null && !key.isEmpty()) {
+                    // Try to access player data to ensure structure is valid
+                    config.getConfigurationSection(key);
+                }
+            }
+
+            return true;
+        } catch (Exception e) {
+            logger.warning("Configuration validation failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Attempt to recover from the most recent backup. Compressed snapshots in backups/
+     * are tried first, newest first, followed by plain backups left by older versions.
+     * @return true if recovery was successful
+     */
+    private boolean recoverFromBackup() {
+        List<File> backups = new ArrayList<>(Arrays.asList(BackupManager.listSnapshots(backupFolder)));
+
+        File[] legacyBackups = configFile.getParentFile().listFiles((dir, name) -> name.startsWith("players.yml.backup."));
+        if (legacyBackups != null) {
+            // Sort by modification time (newest first)
+            Arrays.sort(legacyBackups, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+            backups.addAll(Arrays.asList(legacyBackups));
+        }
+
+        if (backups.isEmpty()) {
+            logger.warning("No backup files found for recovery");
+            return false;
+        }
+
+        for (File backup : backups) {
+            try {
+                logger.info("Attempting recovery from: " + backup.getName());
+
+                // Try to load the backup file
+                String contents = backup.getName().endsWith(".gz")
+                        ? BackupManager.readSnapshot(backup)
+                        : Files.readString(backup.toPath(), StandardCharsets.UTF_8);
+                YamlConfiguration backupConfig = new YamlConfiguration();
+                backupConfig.loadFromString(contents);
+                backupConfig.getKeys(false); // Test if it's readable
+
+                // If successful, write the backup contents to the main file
+                DurableFiles.write(configFile.toPath(),
+                        DurableFiles.appendChecksum(contents).getBytes(StandardCharsets.UTF_8));
+                config = backupConfig;
+
+                logger.info("Successfully recovered from backup: " + backup.getName());
+                return true;
+
+            } catch (Exception e) {
+                logger.warning("Failed to recover from " + backup.getName() + ": " + e.getMessage());
+                // Continue to next backup
+            }
+        }
+
+        logger.severe("All backup recovery attempts failed");
+        return false;
+    }
+
+    /**
+     * Create a new empty configuration with proper structure
+     */
+    private void createEmptyConfiguration() {
+        config = new YamlConfiguration();
+        logger.info("Created new empty configuration file");
+        saveConfig(); // Save the empty config to disk
+    }
+
+    // Save the configuration to players.yml asynchronously to avoid blocking the main thread.
+    // Uses atomic boolean to prevent race conditions and queue pending saves. A failed save
+    // stays pending and is retried with the next change or at shutdown, not straight away.
+    private void saveConfig() {
+        pendingSave.set(true);
+
+        // If a save is already in progress, just mark that we have a pending save
+        if (!saveInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        ioExecutor.execute(() -> {
+            boolean written = true;
+            try {
+                // Keep saving while there are pending changes
+                do {
+                    pendingSave.set(false);
+                    written = writeSnapshot();
+                } while (written && pendingSave.compareAndSet(true, false));
+            } finally {
+                if (!written) {
+                    pendingSave.set(true);
+                }
+                saveInProgress.set(false);
+
+                // Check if another save was requested while we were finishing
+                if (written && pendingSave.get()) {
+                    saveConfig();
+                }
+            }
+        });
+    }
+
+    /**
+     * Fold pending changes into a new settings map, write it to players.yml and publish it.
+     * The new map is private to this call until it is published, so serializing it needs
+     * no lock shared with callers. If the write fails nothing is published and the changes
+     * stay in the overlay for the next attempt.
+     * @return true if players.yml holds every change folded in
+     */
+    private boolean writeSnapshot() {
+        synchronized (saveLock) {
+            Map<UUID, PlayerSettings> current = saved;
+            if (current == null) {
+                // Not loaded yet; writing now would replace the file with only the pending changes
+                return false;
+            }
+            Map<UUID, PlayerSettings> changes = new HashMap<>(overlay);
+            Map<UUID, PlayerSettings> next = new HashMap<>(current);
+            for (Map.Entry<UUID, PlayerSettings> change : changes.entrySet()) {
+                if (change.getValue() == DELETED) {
+                    next.remove(change.getKey());
+                } else {
+                    next.put(change.getKey(), change.getValue());
+                }
+            }
+
+            StringBuilder data = new StringBuilder(next.size() * 64);
+            for (Map.Entry<UUID, PlayerSettings> entry : next.entrySet()) {
+                data.append(YamlSettingsCodec.formatEntry(entry.getKey(), entry.getValue()));
+            }
+            try {
+                DurableFiles.write(configFile.toPath(),
+                        DurableFiles.appendChecksum(data.toString()).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // players.yml still holds the previous save intact
+                logger.severe("Could not save players.yml: " + e.getMessage());
+                return false;
+            }
+
+            // Published before the overlay is cleared, so lookups always find the latest value
+            saved = Collections.unmodifiableMap(next);
+            // Only clears entries not changed again since they were copied
+            changes.forEach(overlay::remove);
+            return true;
+        }
+    }
+
+    /**
+     * Cleans up any orphaned .tmp files from previous sessions
+     */
+    private void cleanupOrphanedTempFiles() {
+        File dataFolder = configFile.getParentFile();
+        if (dataFolder.exists() && dataFolder.isDirectory()) {
+            File[] tempFiles = dataFolder.listFiles((dir, name) -> name.endsWith(".tmp"));
+            if (tempFiles != null && tempFiles.length > 0) {
+                for (File tempFile : tempFiles) {
+                    if (tempFile.delete()) {
+                        logger.info("Cleaned up orphaned temp file: " + tempFile.getName());
+                    } else {
+                        tempFile.deleteOnExit();
+                        logger.warning("Failed to delete orphaned temp file, scheduled for deletion on exit: " + tempFile.getName());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.configuration.ConfigurationSection;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes a single player's entry in the players.yml layout:
+ * <pre>
+ * &lt;uuid&gt;:
+ *   name: Steve
+ *   disabled:
+ *   - pathback
+ * </pre>
+ * Only disabled features are listed, and the list is omitted when everything is enabled.
+ * Entries written by older versions with one boolean key per feature are still read,
+ * and are rewritten in the new layout the next time the player is saved.
+ * Shared by every YAML-based store so that all of them accept the same
+ * hand-edited values.
+ */
+final class YamlSettingsCodec {
+
+    private final Logger logger;
+
+    YamlSettingsCodec(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Read and validate a player's entry
+     * @param root the configuration holding player entries keyed by UUID
+     * @param uuid the player's UUID as string
+     * @return validated settings (name may be null), or null if the player has no entry
+     */
+    PlayerSettings read(ConfigurationSection root, String uuid) {
+        if (!root.contains(uuid)) {
+            return null;
+        }
+
+        String name = root.getString(uuid + ".name");
+        if (name != null && name.trim().isEmpty()) {
+            name = null;
+        }
+
+        int disabled = 0;
+        if (root.contains(uuid + ".disabled")) {
+            for (String key : root.getStringList(uuid + ".disabled")) {
+                Feature feature = Feature.fromKey(key.trim());
+                if (feature == null) {
+                    logger.warning("Unknown feature '" + key + "' in disabled list for player " + uuid + ", ignoring");
+                    continue;
+                }
+                disabled |= feature.getMask();
+            }
+        } else {
+            // Older layout with one boolean per feature
+            for (Feature feature : Feature.values()) {
+                Object value = root.get(uuid + "." + feature.getKey());
+                if (value != null && !validateBooleanSetting(value, true, feature.getKey(), uuid)) {
+                    disabled |= feature.getMask();
+                }
+            }
+        }
+        return new PlayerSettings(name, disabled);
+    }
+
+    /**
+     * Write a player's entry
+     * @param root the configuration holding player entries keyed by UUID
+     * @param uuid the player's UUID as string
+     * @param settings the settings to write
+     */
+    void write(ConfigurationSection root, String uuid, PlayerSettings settings) {
+        root.set(uuid + ".name", settings.name);
+        root.set(uuid + ".disabled", disabledKeys(settings));
+        // Drop keys from the older one-boolean-per-feature layout
+        for (Feature feature : Feature.values()) {
+            root.set(uuid + "." + feature.getKey(), null);
+        }
+        // Setting only nulls does not create the section, and an absent entry reads as a new player
+        if (!root.isConfigurationSection(uuid)) {
+            root.createSection(uuid);
+        }
+    }
+
+    /**
+     * @param settings the player's settings
+     * @return keys of the disabled features, or null if every feature is enabled
+     */
+    static List<String> disabledKeys(PlayerSettings settings) {
+        if (settings.disabled == 0) {
+            return null;
+        }
+        List<String> keys = new ArrayList<>();
+        for (Feature feature : Feature.values()) {
+            if (!settings.isEnabled(feature)) {
+                keys.add(feature.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Formats a complete top-level entry as players.yml text, for writers that
+     * stream entries instead of building a configuration tree
+     * @param uuid the player's UUID
+     * @param settings the player's settings
+     * @return the entry, ending with a newline
+     */
+    static String formatEntry(UUID uuid, PlayerSettings settings) {
+        List<String> disabled = disabledKeys(settings);
+        if (settings.name == null && disabled == null) {
+            return uuid + ": {}\n";
+        }
+        StringBuilder entry = new StringBuilder(96);
+        entry.append(uuid).append(":\n");
+        if (settings.name != null) {
+            entry.append("  name: '").append(settings.name.replace("'", "''")).append("'\n");
+        }
+        if (disabled != null) {
+            entry.append("  disabled:\n");
+            for (String key : disabled) {
+                entry.append("  - ").append(key).append('\n');
+            }
+        }
+        return entry.toString();
+    }
+
+    /**
+     * FNV-1a hash of a formatted entry. Summing the hashes of every entry gives a content
+     * hash that does not depend on the order a store iterates its players in.
+     * @param entry an entry produced by {@link #formatEntry}
+     * @return the entry's hash
+     */
+    static long entryHash(CharSequence entry) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < entry.length(); i++) {
+            hash ^= entry.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Read every player entry, skipping keys that are not valid UUIDs.
+     * Used when converting an existing players.yml into another storage layout.
+     * @param root the configuration holding player entries keyed by UUID
+     * @param consumer receives each player's UUID and validated settings
+     * @return number of entries read
+     */
+    int readAll(ConfigurationSection root, BiConsumer<UUID, PlayerSettings> consumer) {
+        int count = 0;
+        for (String key : root.getKeys(false)) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(key);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Skipping invalid player key '" + key + "'");
+                continue;
+            }
+            PlayerSettings settings = read(root, key);
+            if (settings != null) {
+                consumer.accept(uuid, settings);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Validate a boolean setting value
+     * @param value the value to validate
+     * @param defaultValue the default value to use if invalid
+     * @param settingName the name of the setting for logging
+     * @param uuid the player's UUID for logging
+     * @return validated boolean value
+     */
+    private boolean validateBooleanSetting(Object value, boolean defaultValue, String settingName, String uuid) {
+        if (value == null) {
+            logger.warning("Missing " + settingName + " setting for player " + uuid + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+
+        if (value instanceof String) {
+            String strValue = ((String) value).trim();
+
+            // Handle empty strings
+            if (strValue.isEmpty()) {
+                logger.warning("Empty " + settingName + " setting for player " + uuid + ", using default: " + defaultValue);
+                return defaultValue;
+            }
+
+            // Remove any special characters and normalize
+            strValue = strValue.replaceAll("[^a-zA-Z0-9]", "").toLowerCase();
+
+            // Check for true values
+            if ("true".equals(strValue) || "yes".equals(strValue) || "y".equals(strValue) ||
+                "1".equals(strValue) || "on".equals(strValue) || "enabled".equals(strValue) ||
+                "enable".equals(strValue) || "t".equals(strValue)) {
+                return true;
+            }
+
+            // Check for false values
+            if ("false".equals(strValue) || "no".equals(strValue) || "n".equals(strValue) ||
+                "0".equals(strValue) || "off".equals(strValue) || "disabled".equals(strValue) ||
+                "disable".equals(strValue) || "f".equals(strValue)) {
+                return false;
+            }
+
+            // If we get here, the string doesn't match any known boolean representation
+            logger.warning("Invalid " + settingName + " value '" + value + "' for player " + uuid + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+
+        if (value instanceof Number) {
+            // Consider 0 as false, any other number as true
+            return ((Number) value).intValue() != 0;
+        }
+
+        // Handle any other object types by attempting string conversion
+        try {
+            String strValue = value.toString().trim();
+            // Recursively call with string value
+            return validateBooleanSetting(strValue, defaultValue, settingName, uuid);
+        } catch (Exception e) {
+            logger.warning("Cannot parse " + settingName + " value '" + value + "' (type: " + value.getClass().getSimpleName() + ") for player " + uuid + ", using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalPlayerStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("JournalPlayerStoreTest");
+
+    @TempDir
+    File dataFolder;
+
+    private final UUID alex = UUID.randomUUID();
+    private final UUID steve = UUID.randomUUID();
+    private final UUID notch = UUID.randomUUID();
+
+    @Test
+    void journalIsReplayedWithoutCompaction() {
+        JournalPlayerStore crashed = open();
+        crashed.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        crashed.upsert(steve, new PlayerSettings("Steve", Feature.PATHBACK.getMask()));
+        crashed.delete(steve);
+
+        JournalPlayerStore store = open();
+
+        // Names only reach disk with a snapshot
+        assertEquals(Feature.BARKBACK.getMask(), store.load(alex).disabled);
+        assertNull(store.load(steve));
+        store.close(1);
+    }
+
+    @Test
+    void closeCompactsNamesIntoSnapshot() {
+        JournalPlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.FARMBACK.getMask()));
+        assertTrue(store.close(1));
+
+        assertEquals(0, new File(dataFolder, "players.journal").length());
+        store = open();
+        assertEquals("Alex", store.load(alex).name);
+        assertEquals(Feature.FARMBACK.getMask(), store.load(alex).disabled);
+        store.close(1);
+    }
+
+    @Test
+    void truncatedSnapshotIsSetAsideAndBackupRestored() throws IOException {
+        JournalPlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        store.upsert(steve, new PlayerSettings("Steve", Feature.BARKBACK.getMask()));
+        store.close(1);
+        JournalPlayerStore crashed = open();
+        crashed.upsert(notch, new PlayerSettings("Notch", Feature.PATHBACK.getMask()));
+
+        File snapshot = new File(dataFolder, "players.snapshot");
+        byte[] written = Files.readAllBytes(snapshot.toPath());
+        byte[] truncated = Arrays.copyOf(written, written.length - 2);
+        Files.write(snapshot.toPath(), truncated);
+        writeBackup(alex + ":\n  name: Alex\n  disabled:\n  - farmback\n");
+
+        store = open();
+
+        assertEquals(Feature.FARMBACK.getMask(), store.load(alex).disabled);
+        // Nothing read from the damaged snapshot is kept
+        assertNull(store.load(steve));
+        assertEquals(Feature.PATHBACK.getMask(), store.load(notch).disabled);
+        assertArrayEquals(truncated, Files.readAllBytes(damagedSnapshot().toPath()));
+
+        // The recovered state is compacted into a new snapshot
+        assertTrue(store.close(1));
+        store = open();
+        assertEquals("Alex", store.load(alex).name);
+        assertNotNull(store.load(notch));
+        store.close(1);
+    }
+
+    @Test
+    void snapshotWithUnknownFormatIsSetAside() throws IOException {
+        File snapshot = new File(dataFolder, "players.snapshot");
+        byte[] garbage = "not a snapshot at all".getBytes(StandardCharsets.UTF_8);
+        Files.write(snapshot.toPath(), garbage);
+        writeBackup(alex + ":\n  name: Alex\n");
+
+        JournalPlayerStore store = open();
+
+        assertEquals("Alex", store.load(alex).name);
+        assertArrayEquals(garbage, Files.readAllBytes(damagedSnapshot().toPath()));
+        store.close(1);
+    }
+
+    @Test
+    void unreadableSnapshotIsSetAsideBeforeCompacting() throws IOException {
+        // Reading a directory fails with an IOException rather than bad data
+        File snapshot = new File(dataFolder, "players.snapshot");
+        assertTrue(snapshot.mkdir());
+        Files.writeString(new File(snapshot, "keep").toPath(), "keep");
+
+        JournalPlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+
+        assertTrue(store.close(1));
+        assertTrue(new File(damagedSnapshot(), "keep").exists());
+        assertTrue(snapshot.isFile());
+    }
+
+    private JournalPlayerStore open() {
+        JournalPlayerStore store = new JournalPlayerStore(dataFolder, LOGGER, Runnable::run, 1 << 20);
+        store.open();
+        return store;
+    }
+
+    private void writeBackup(String yaml) throws IOException {
+        File backups = BackupManager.getBackupFolder(dataFolder);
+        assertTrue(backups.mkdirs());
+        File backup = new File(backups, "players-2026-01-01_00-00-00-0123456789abcdef.yml.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(backup.toPath()))) {
+            out.write(yaml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private File damagedSnapshot() {
+        File[] damaged = dataFolder.listFiles((dir, name) -> name.startsWith("players.snapshot.damaged-"));
+        assertNotNull(damaged);
+        assertEquals(1, damaged.length);
+        return damaged[0];
+    }
+}
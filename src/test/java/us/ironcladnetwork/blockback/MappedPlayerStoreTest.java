@@ -0,0 +1,207 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MappedPlayerStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("MappedPlayerStoreTest");
+
+    @TempDir
+    File dataFolder;
+
+    private final Random random = new Random(42);
+    private MappedPlayerStore store;
+
+    @BeforeEach
+    void open() {
+        store = new MappedPlayerStore(dataFolder, LOGGER, 60_000);
+        store.open();
+    }
+
+    @AfterEach
+    void close() {
+        store.close(1);
+    }
+
+    @Test
+    void deleteKeepsCollidingChainFindable() {
+        // Four players sharing a home slot and one whose home slot the chain runs over
+        List<UUID> chain = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            chain.add(withHome(100));
+        }
+        UUID neighbour = withHome(101);
+        for (UUID uuid : chain) {
+            store.upsert(uuid, new PlayerSettings(uuid.toString(), 1));
+        }
+        store.upsert(neighbour, new PlayerSettings("neighbour", 2));
+
+        store.delete(chain.get(0));
+
+        assertNull(store.load(chain.get(0)));
+        for (UUID uuid : chain.subList(1, chain.size())) {
+            assertEquals(uuid.toString(), store.load(uuid).name);
+        }
+        assertEquals("neighbour", store.load(neighbour).name);
+        assertEquals(2, store.load(neighbour).disabled);
+        assertEquals(4, count());
+    }
+
+    @Test
+    void deleteLeavesEntryAtItsHomeSlot() {
+        // first at 100, atHome at its own home 101, shifted at 102
+        UUID first = withHome(100);
+        UUID atHome = withHome(101);
+        UUID shifted = withHome(100);
+        store.upsert(first, new PlayerSettings("first"));
+        store.upsert(atHome, new PlayerSettings("atHome"));
+        store.upsert(shifted, new PlayerSettings("shifted"));
+
+        store.delete(first);
+
+        assertEquals("atHome", store.load(atHome).name);
+        assertEquals("shifted", store.load(shifted).name);
+        assertEquals(2, count());
+    }
+
+    @Test
+    void deleteShiftsAcrossEndOfTable() {
+        int last = MappedPlayerStore.INITIAL_CAPACITY - 1;
+        // Slots last, 0 and 1
+        UUID first = withHome(last);
+        UUID wrapped = withHome(last);
+        UUID startsAtZero = withHome(0);
+        store.upsert(first, new PlayerSettings("first"));
+        store.upsert(wrapped, new PlayerSettings("wrapped"));
+        store.upsert(startsAtZero, new PlayerSettings("startsAtZero"));
+
+        store.delete(first);
+
+        assertNull(store.load(first));
+        assertEquals("wrapped", store.load(wrapped).name);
+        assertEquals("startsAtZero", store.load(startsAtZero).name);
+
+        store.delete(wrapped);
+
+        assertEquals("startsAtZero", store.load(startsAtZero).name);
+        assertEquals(1, count());
+    }
+
+    @Test
+    void deletesSurviveReopen() {
+        Map<UUID, PlayerSettings> expected = new HashMap<>();
+        List<UUID> deleted = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            PlayerSettings settings = new PlayerSettings("player" + i, i & Feature.ALL_MASK);
+            store.upsert(uuid, settings);
+            if (i % 2 == 0) {
+                deleted.add(uuid);
+            } else {
+                expected.put(uuid, settings);
+            }
+        }
+        for (UUID uuid : deleted) {
+            store.delete(uuid);
+        }
+
+        store.close(1);
+        open();
+
+        for (UUID uuid : deleted) {
+            assertNull(store.load(uuid));
+        }
+        for (Map.Entry<UUID, PlayerSettings> entry : expected.entrySet()) {
+            PlayerSettings loaded = store.load(entry.getKey());
+            assertNotNull(loaded);
+            assertEquals(entry.getValue().name, loaded.name);
+            assertEquals(entry.getValue().disabled, loaded.disabled);
+        }
+        assertEquals(expected.size(), count());
+    }
+
+    @Test
+    void deletedSlotIsReused() {
+        UUID first = withHome(200);
+        UUID second = withHome(200);
+        store.upsert(first, new PlayerSettings("first"));
+        store.upsert(second, new PlayerSettings("second"));
+
+        store.delete(first);
+        store.upsert(first, new PlayerSettings("again"));
+
+        assertEquals("again", store.load(first).name);
+        assertEquals("second", store.load(second).name);
+        assertEquals(2, count());
+    }
+
+    @Test
+    void upsertUpdatesInPlace() {
+        UUID uuid = UUID.randomUUID();
+        store.upsert(uuid, new PlayerSettings("before"));
+        store.upsert(uuid, new PlayerSettings("after", Feature.FARMBACK.getMask()));
+
+        PlayerSettings loaded = store.load(uuid);
+        assertEquals("after", loaded.name);
+        assertEquals(Feature.FARMBACK.getMask(), loaded.disabled);
+        assertEquals(1, count());
+    }
+
+    @Test
+    void growingKeepsEveryPlayerAcrossReopen() {
+        // Well past the initial table's load factor
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            players.add(uuid);
+            store.upsert(uuid, new PlayerSettings("player" + i, i & Feature.ALL_MASK));
+        }
+
+        store.close(1);
+        open();
+
+        for (int i = 0; i < players.size(); i++) {
+            PlayerSettings loaded = store.load(players.get(i));
+            assertNotNull(loaded);
+            assertEquals("player" + i, loaded.name);
+            assertEquals(i & Feature.ALL_MASK, loaded.disabled);
+        }
+        assertEquals(players.size(), count());
+    }
+
+    /**
+     * @return a random UUID whose home slot in a table of the initial capacity is the given one
+     */
+    private UUID withHome(int slot) {
+        int mask = MappedPlayerStore.INITIAL_CAPACITY - 1;
+        while (true) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            if ((MappedPlayerStore.hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) & mask) == slot) {
+                return uuid;
+            }
+        }
+    }
+
+    private int count() {
+        int[] count = new int[1];
+        store.forEach((uuid, settings) -> count[0]++);
+        return count[0];
+    }
+}
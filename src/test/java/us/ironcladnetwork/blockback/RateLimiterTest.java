@@ -0,0 +1,95 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    // Without a PluginConfig the limiter uses its defaults
+    private static final int BURST = 20;
+    private static final long TOKEN = SECOND / 10;
+
+    private RateLimiter limiter;
+    private final UUID player = UUID.randomUUID();
+
+    @BeforeEach
+    void create() {
+        RateLimiter.init();
+        limiter = RateLimiter.getInstance();
+    }
+
+    @Test
+    void allowsBurstThenRejects() {
+        long now = 5 * SECOND;
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(limiter.tryAcquire(player, now), "revert " + i);
+        }
+
+        assertFalse(limiter.tryAcquire(player, now));
+        assertFalse(limiter.tryAcquire(player, now));
+        assertEquals(2, limiter.getRejected());
+    }
+
+    @Test
+    void refillsAtSustainedRate() {
+        long now = 0;
+        drain(now);
+
+        now += TOKEN / 2;
+        assertFalse(limiter.tryAcquire(player, now));
+        // The rejected attempt keeps the half token it earned
+        now += TOKEN / 2;
+        assertTrue(limiter.tryAcquire(player, now));
+        assertFalse(limiter.tryAcquire(player, now));
+
+        now += 3 * TOKEN;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(player, now));
+        }
+        assertFalse(limiter.tryAcquire(player, now));
+    }
+
+    @Test
+    void refillStopsAtBurst() {
+        long now = 0;
+        drain(now);
+
+        now += 60 * SECOND;
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(limiter.tryAcquire(player, now));
+        }
+        assertFalse(limiter.tryAcquire(player, now));
+    }
+
+    @Test
+    void playersHaveSeparateBuckets() {
+        long now = 0;
+        drain(now);
+
+        assertTrue(limiter.tryAcquire(UUID.randomUUID(), now));
+    }
+
+    @Test
+    void reloadStartsWithFullBuckets() {
+        long now = 0;
+        drain(now);
+
+        limiter.reloadConfig();
+
+        assertTrue(limiter.tryAcquire(player, now));
+    }
+
+    private void drain(long now) {
+        for (int i = 0; i < BURST; i++) {
+            limiter.tryAcquire(player, now);
+        }
+        assertFalse(limiter.tryAcquire(player, now));
+    }
+}
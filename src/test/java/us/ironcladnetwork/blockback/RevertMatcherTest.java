@@ -0,0 +1,87 @@
+package us.ironcladnetwork.blockback;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RevertMatcherTest {
+
+    private static final EnumSet<Material> AXES = EnumSet.of(Material.IRON_AXE, Material.DIAMOND_AXE);
+    private static final EnumSet<Material> SHOVELS = EnumSet.of(Material.IRON_SHOVEL);
+    private static final EnumSet<Material> HOES = EnumSet.of(Material.IRON_HOE);
+
+    private final RevertMatcher.Revert bark = revert(Feature.BARKBACK, AXES, Material.STRIPPED_OAK_LOG, Material.OAK_LOG);
+    private final RevertMatcher.Revert path = revert(Feature.PATHBACK, SHOVELS, Material.DIRT_PATH, Material.DIRT);
+    private final RevertMatcher.Revert farm = revert(Feature.FARMBACK, HOES, Material.FARMLAND, Material.DIRT);
+
+    @Test
+    void matchesToolAndSourceBlock() {
+        RevertMatcher matcher = new RevertMatcher(List.of(bark, path, farm));
+
+        assertSame(bark, matcher.match(Material.IRON_AXE, Material.STRIPPED_OAK_LOG));
+        assertSame(bark, matcher.match(Material.DIAMOND_AXE, Material.STRIPPED_OAK_LOG));
+        assertSame(path, matcher.match(Material.IRON_SHOVEL, Material.DIRT_PATH));
+        assertSame(farm, matcher.match(Material.IRON_HOE, Material.FARMLAND));
+        assertEquals(3, matcher.size());
+    }
+
+    @Test
+    void rejectsItemsThatAreNoRulesTool() {
+        RevertMatcher matcher = new RevertMatcher(List.of(bark, path, farm));
+
+        assertNull(matcher.match(Material.STICK, Material.STRIPPED_OAK_LOG));
+        assertNull(matcher.match(Material.WOODEN_AXE, Material.STRIPPED_OAK_LOG));
+    }
+
+    @Test
+    void rejectsBlocksThatAreNoRulesSource() {
+        RevertMatcher matcher = new RevertMatcher(List.of(bark, path, farm));
+
+        assertNull(matcher.match(Material.IRON_AXE, Material.OAK_LOG));
+        assertNull(matcher.match(Material.IRON_AXE, Material.AIR));
+    }
+
+    @Test
+    void rejectsAnotherRulesTool() {
+        RevertMatcher matcher = new RevertMatcher(List.of(bark, path, farm));
+
+        assertNull(matcher.match(Material.IRON_SHOVEL, Material.STRIPPED_OAK_LOG));
+        assertNull(matcher.match(Material.IRON_AXE, Material.DIRT_PATH));
+    }
+
+    @Test
+    void sharedSourceBlockIsMatchedByTool() {
+        RevertMatcher.Revert toGrass = revert(Feature.PATHBACK, HOES, Material.DIRT_PATH, Material.GRASS_BLOCK);
+        RevertMatcher matcher = new RevertMatcher(List.of(path, toGrass));
+
+        assertSame(path, matcher.match(Material.IRON_SHOVEL, Material.DIRT_PATH));
+        assertSame(toGrass, matcher.match(Material.IRON_HOE, Material.DIRT_PATH));
+    }
+
+    @Test
+    void firstListedRuleWinsForSameToolAndSource() {
+        RevertMatcher.Revert toGrass = revert(Feature.PATHBACK, SHOVELS, Material.DIRT_PATH, Material.GRASS_BLOCK);
+
+        assertSame(path, new RevertMatcher(List.of(path, toGrass)).match(Material.IRON_SHOVEL, Material.DIRT_PATH));
+        assertSame(toGrass, new RevertMatcher(List.of(toGrass, path)).match(Material.IRON_SHOVEL, Material.DIRT_PATH));
+    }
+
+    @Test
+    void emptyMatcherMatchesNothing() {
+        RevertMatcher matcher = new RevertMatcher(List.of());
+
+        assertNull(matcher.match(Material.IRON_AXE, Material.STRIPPED_OAK_LOG));
+        assertEquals(0, matcher.size());
+    }
+
+    private static RevertMatcher.Revert revert(Feature feature, EnumSet<Material> tools, Material source, Material target) {
+        // Block data needs a running server and is not used for matching
+        return new RevertMatcher.Revert(feature, tools, source, target, null, List.of());
+    }
+}
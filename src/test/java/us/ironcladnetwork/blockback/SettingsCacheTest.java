@@ -0,0 +1,202 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SettingsCacheTest {
+
+    // Never started, so every entry is stamped with tick 0
+    private final TickClock clock = new TickClock(null);
+
+    @Test
+    void evictsEldestProbationEntryFirst() {
+        // 8 protected, 2 probation
+        SettingsCache cache = new SettingsCache(10, clock);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+
+        cache.put(first, new PlayerSettings("first"));
+        cache.put(second, new PlayerSettings("second"));
+        cache.put(third, new PlayerSettings("third"));
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+        assertNull(cache.get(first));
+        assertNotNull(cache.get(second));
+        assertNotNull(cache.get(third));
+    }
+
+    @Test
+    void secondHitProtectsFromOneOffLookups() {
+        SettingsCache cache = new SettingsCache(10, clock);
+        UUID regular = UUID.randomUUID();
+        cache.put(regular, new PlayerSettings("regular"));
+        // Promoted to the protected segment
+        assertNotNull(cache.get(regular));
+
+        for (int i = 0; i < 50; i++) {
+            cache.put(UUID.randomUUID(), new PlayerSettings("once"));
+        }
+
+        assertEquals(48, cache.getEvictions());
+        assertEquals("regular", cache.get(regular).name);
+    }
+
+    @Test
+    void fullProtectedSegmentDemotesItsEldest() {
+        // 4 protected, 1 probation
+        SettingsCache cache = new SettingsCache(5, clock);
+        UUID[] players = new UUID[5];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+            cache.put(players[i], new PlayerSettings("p" + i));
+            assertNotNull(cache.get(players[i]));
+        }
+        // players[0] was demoted back to probation when players[4] was promoted
+        assertEquals(0, cache.getEvictions());
+
+        cache.put(UUID.randomUUID(), new PlayerSettings("newcomer"));
+
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(players[0]));
+        for (int i = 1; i < players.length; i++) {
+            assertNotNull(cache.get(players[i]));
+        }
+    }
+
+    @Test
+    void demotedEntryCanBePromotedAgain() {
+        SettingsCache cache = new SettingsCache(5, clock);
+        UUID[] players = new UUID[5];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+            cache.put(players[i], new PlayerSettings("p" + i));
+            cache.get(players[i]);
+        }
+        // Hit again while on probation: back to protected, demoting players[1]
+        assertNotNull(cache.get(players[0]));
+
+        cache.put(UUID.randomUUID(), new PlayerSettings("newcomer"));
+
+        assertNotNull(cache.get(players[0]));
+        assertNull(cache.get(players[1]));
+    }
+
+    @Test
+    void pinnedPlayersAreNeverEvicted() {
+        SettingsCache cache = new SettingsCache(2, clock);
+        UUID online = UUID.randomUUID();
+        cache.pin(online);
+        cache.put(online, new PlayerSettings("online"));
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(UUID.randomUUID(), new PlayerSettings("offline"));
+        }
+
+        assertEquals(1, cache.pinnedSize());
+        assertEquals("online", cache.get(online).name);
+
+        // Back on probation once offline, so the next newcomers push it out
+        cache.unpin(online);
+        assertEquals(0, cache.pinnedSize());
+        for (int i = 0; i < 2; i++) {
+            cache.put(UUID.randomUUID(), new PlayerSettings("offline"));
+        }
+        assertNull(cache.get(online));
+    }
+
+    @Test
+    void updateReplacesSnapshot() {
+        SettingsCache cache = new SettingsCache(10, clock);
+        UUID uuid = UUID.randomUUID();
+        cache.put(uuid, new PlayerSettings("player"));
+
+        PlayerSettings updated = cache.update(uuid, settings -> settings.withEnabled(Feature.FARMBACK, false));
+
+        assertSame(updated, cache.get(uuid));
+        assertEquals(Feature.FARMBACK.getMask(), updated.disabled);
+        assertNull(cache.update(UUID.randomUUID(), settings -> settings));
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        SettingsCache cache = new SettingsCache(10, clock);
+        UUID uuid = UUID.randomUUID();
+        assertNull(cache.get(uuid));
+        cache.put(uuid, new PlayerSettings("player"));
+        cache.get(uuid);
+        cache.get(uuid);
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void hitsBeyondTheReadBufferStillPromote() {
+        SettingsCache cache = new SettingsCache(10, clock);
+        UUID regular = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        cache.put(regular, new PlayerSettings("regular"));
+        cache.put(other, new PlayerSettings("other"));
+
+        // Far more hits than the buffer holds; the overflow is dropped
+        for (int i = 0; i < 1000; i++) {
+            assertNotNull(cache.get(regular));
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.put(UUID.randomUUID(), new PlayerSettings("once"));
+        }
+
+        assertEquals(1000, cache.getHits());
+        assertNotNull(cache.get(regular));
+        assertNull(cache.get(other));
+    }
+
+    @Test
+    void concurrentLookupsAndWritesStayWithinCapacity() throws InterruptedException {
+        SettingsCache cache = new SettingsCache(100, clock);
+        UUID[] players = new UUID[500];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    UUID uuid = players[(i * 31 + seed * 7) % players.length];
+                    if (i % 5 == 0) {
+                        cache.put(uuid, new PlayerSettings("p"));
+                    } else {
+                        cache.get(uuid);
+                    }
+                }
+            });
+            thread.setUncaughtExceptionHandler((failed, e) -> {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty());
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+    }
+}
@@ -0,0 +1,100 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedYamlPlayerStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("ShardedYamlPlayerStoreTest");
+
+    @TempDir
+    File dataFolder;
+
+    private final UUID alex = UUID.fromString("3f000000-0000-0000-0000-000000000001");
+    private final UUID steve = UUID.fromString("a1000000-0000-0000-0000-000000000002");
+
+    @Test
+    void playersAreWrittenToTheirBuckets() {
+        ShardedYamlPlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        store.upsert(steve, new PlayerSettings("Steve", Feature.PATHBACK.getMask()));
+        store.delete(steve);
+        assertTrue(store.close(1));
+
+        assertTrue(bucket("3f").isFile());
+        store = open();
+        assertEquals("Alex", store.load(alex).name);
+        assertNull(store.load(steve));
+    }
+
+    @Test
+    void legacyFileIsConvertedOnce() throws IOException {
+        Files.writeString(new File(dataFolder, "players.yml").toPath(),
+                alex + ":\n  name: Alex\n  disabled:\n  - farmback\n");
+
+        ShardedYamlPlayerStore store = open();
+
+        assertEquals(Feature.FARMBACK.getMask(), store.load(alex).disabled);
+        assertFalse(new File(dataFolder, "players.yml").exists());
+        assertTrue(new File(dataFolder, "players.yml.migrated").isFile());
+        assertTrue(new File(dataFolder, "players/shards.yml").isFile());
+    }
+
+    @Test
+    void failedBucketWriteIsRetriedAtClose() {
+        ShardedYamlPlayerStore store = open();
+        failNextWrite("3f");
+
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+
+        assertFalse(bucket("3f").exists());
+        assertTrue(store.close(1));
+        store = open();
+        assertEquals(Feature.BARKBACK.getMask(), store.load(alex).disabled);
+    }
+
+    @Test
+    void reloadKeepsBucketThatCouldNotBeWritten() {
+        ShardedYamlPlayerStore store = open();
+        failNextWrite("3f");
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        failNextWrite("3f");
+
+        store.reload();
+
+        assertEquals("Alex", store.load(alex).name);
+        assertTrue(store.close(1));
+        store = open();
+        assertEquals("Alex", store.load(alex).name);
+    }
+
+    private ShardedYamlPlayerStore open() {
+        ShardedYamlPlayerStore store = new ShardedYamlPlayerStore(dataFolder, LOGGER, Runnable::run, 2);
+        store.open();
+        return store;
+    }
+
+    private File bucket(String prefix) {
+        return new File(dataFolder, "players/" + prefix + ".yml");
+    }
+
+    /**
+     * Puts a directory where the bucket's next save writes its temp file. The failed write
+     * removes it again, so only one save fails.
+     */
+    private void failNextWrite(String prefix) {
+        assertTrue(new File(dataFolder, "players/" + prefix + ".yml.tmp").mkdir());
+    }
+}
@@ -0,0 +1,136 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlitePlayerStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("SqlitePlayerStoreTest");
+
+    @TempDir
+    File dataFolder;
+
+    private final UUID alex = UUID.randomUUID();
+    private final UUID steve = UUID.randomUUID();
+
+    @Test
+    void batchIsCommittedBeforeUpsertAllReturns() {
+        SqlitePlayerStore store = open();
+        Map<UUID, PlayerSettings> batch = new HashMap<>();
+        batch.put(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        batch.put(steve, new PlayerSettings("Steve", Feature.PATHBACK.getMask()));
+
+        store.upsertAll(batch);
+
+        // Visible to another connection without closing the store
+        SqlitePlayerStore other = open();
+        assertEquals("Alex", other.load(alex).name);
+        assertEquals(Feature.PATHBACK.getMask(), other.load(steve).disabled);
+        assertTrue(other.close(1));
+        assertTrue(store.close(1));
+    }
+
+    @Test
+    void deleteAllRemovesRows() {
+        SqlitePlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.FARMBACK.getMask()));
+        store.upsert(steve, new PlayerSettings("Steve", Feature.FARMBACK.getMask()));
+
+        store.deleteAll(List.of(alex));
+
+        assertNull(store.load(alex));
+        assertEquals("Steve", store.load(steve).name);
+        assertTrue(store.close(1));
+    }
+
+    @Test
+    void failedBatchIsKeptAndWrittenWithTheNext() throws SQLException {
+        SqlitePlayerStore store = open();
+        execute("ALTER TABLE player_settings RENAME TO moved");
+
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+
+        // Still served from memory while it cannot be written
+        assertEquals("Alex", store.load(alex).name);
+        execute("ALTER TABLE moved RENAME TO player_settings");
+        store.upsert(steve, new PlayerSettings("Steve", Feature.PATHBACK.getMask()));
+        assertTrue(store.close(1));
+
+        store = open();
+        assertEquals(Feature.BARKBACK.getMask(), store.load(alex).disabled);
+        assertEquals(Feature.PATHBACK.getMask(), store.load(steve).disabled);
+        assertTrue(store.close(1));
+    }
+
+    @Test
+    void closeReportsWritesThatCouldNotBeSaved() throws SQLException {
+        SqlitePlayerStore store = open();
+        execute("ALTER TABLE player_settings RENAME TO moved");
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+
+        assertFalse(store.close(1));
+    }
+
+    @Test
+    void lookupDoesNotWaitForWriteLock() throws InterruptedException {
+        SqlitePlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Stands in for a batch commit that takes a long time
+        Thread writer = new Thread(() -> {
+            synchronized (store) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        try {
+            assertEquals("Alex", store.load(alex).name);
+            assertEquals(1, store.loadAll(List.of(alex, steve)).size());
+        } finally {
+            release.countDown();
+            writer.join(5000);
+        }
+        assertTrue(store.close(1));
+    }
+
+    private SqlitePlayerStore open() {
+        SqlitePlayerStore store = new SqlitePlayerStore(dataFolder, LOGGER);
+        store.open();
+        return store;
+    }
+
+    private void execute(String sql) throws SQLException {
+        String url = "jdbc:sqlite:" + new File(dataFolder, "players.db").getAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StoreMigrationTest {
+
+    private static final Logger LOGGER = Logger.getLogger("StoreMigrationTest");
+
+    @TempDir
+    File dataFolder;
+
+    private final UUID alex = UUID.randomUUID();
+    private final UUID steve = UUID.randomUUID();
+
+    @Test
+    void yamlToJournalIsVerifiedAndInstalled() throws IOException {
+        writePlayersYml();
+        PlayerSettingsStore source = open(StorageMode.INDEXED);
+        StoreMigration migration = new StoreMigration(dataFolder, LOGGER, StorageMode.YAML, StorageMode.JOURNAL);
+
+        StoreMigration.Result result = migration.run(source, (copied, perSecond) -> { });
+        source.close(1);
+
+        assertTrue(result.isVerified(), result.toString());
+        assertEquals(2, result.sourceCount);
+        assertTrue(migration.install(1));
+        assertFalse(new File(dataFolder, "migration").exists());
+        PlayerSettingsStore migrated = open(StorageMode.JOURNAL);
+        assertEquals("Alex", migrated.load(alex).name);
+        assertEquals(Feature.PATHBACK.getMask() | Feature.FARMBACK.getMask(), migrated.load(steve).disabled);
+        migrated.close(1);
+    }
+
+    @Test
+    void shardedToYamlKeepsReplacedFile() throws IOException {
+        PlayerSettingsStore sharded = open(StorageMode.SHARDED);
+        sharded.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+        assertTrue(sharded.close(1));
+        String old = "# replaced by the migration\n";
+        Files.writeString(new File(dataFolder, "players.yml").toPath(), old);
+
+        PlayerSettingsStore source = open(StorageMode.SHARDED);
+        StoreMigration migration = new StoreMigration(dataFolder, LOGGER, StorageMode.SHARDED, StorageMode.YAML);
+        StoreMigration.Result result = migration.run(source, (copied, perSecond) -> { });
+        source.close(1);
+
+        assertTrue(result.isVerified(), result.toString());
+        assertTrue(migration.install(1));
+        File[] kept = dataFolder.listFiles((dir, name) -> name.startsWith("players.yml.pre-migration-"));
+        assertNotNull(kept);
+        assertEquals(1, kept.length);
+        assertEquals(old, Files.readString(kept[0].toPath()));
+        PlayerSettingsStore migrated = open(StorageMode.YAML);
+        assertEquals(Feature.BARKBACK.getMask(), migrated.load(alex).disabled);
+        migrated.close(1);
+    }
+
+    @Test
+    void mismatchIsNotVerifiedAndAbortLeavesDataFolderAlone() throws IOException {
+        writePlayersYml();
+        byte[] before = Files.readAllBytes(new File(dataFolder, "players.yml").toPath());
+        // Visits one player twice, as a store changing underneath the copy might
+        PlayerSettingsStore source = new VisitingStore(visitor -> {
+            visitor.accept(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+            visitor.accept(alex, new PlayerSettings("Alex", Feature.FARMBACK.getMask()));
+        });
+        StoreMigration migration = new StoreMigration(dataFolder, LOGGER, StorageMode.YAML, StorageMode.JOURNAL);
+
+        StoreMigration.Result result = migration.run(source, (copied, perSecond) -> { });
+
+        assertFalse(result.isVerified());
+        assertEquals(2, result.sourceCount);
+        assertEquals(1, result.targetCount);
+        migration.abort();
+        assertFalse(new File(dataFolder, "migration").exists());
+        assertFalse(new File(dataFolder, "players.snapshot").exists());
+        assertEquals(new String(before), Files.readString(new File(dataFolder, "players.yml").toPath()));
+    }
+
+    @Test
+    void checkModesRejectsUnsupportedPairs() {
+        assertNotNull(StoreMigration.checkModes(StorageMode.JOURNAL, StorageMode.JOURNAL));
+        assertNotNull(StoreMigration.checkModes(StorageMode.YAML, StorageMode.SHARED));
+        assertNotNull(StoreMigration.checkModes(StorageMode.INDEXED, StorageMode.YAML));
+        assertNull(StoreMigration.checkModes(StorageMode.YAML, StorageMode.MAPPED));
+    }
+
+    private PlayerSettingsStore open(StorageMode mode) {
+        PlayerSettingsStore store = PlayerDataManager.createStore(mode, dataFolder, LOGGER, Runnable::run);
+        store.open();
+        return store;
+    }
+
+    private void writePlayersYml() throws IOException {
+        Files.writeString(new File(dataFolder, "players.yml").toPath(),
+                alex + ":\n  name: Alex\n  disabled:\n  - barkback\n"
+                + steve + ":\n  name: Steve\n  disabled:\n  - pathback\n  - farmback\n");
+    }
+
+    /**
+     * Read-only source that hands out a fixed sequence of players
+     */
+    private static final class VisitingStore implements PlayerSettingsStore {
+        private final Consumer<BiConsumer<UUID, PlayerSettings>> players;
+
+        VisitingStore(Consumer<BiConsumer<UUID, PlayerSettings>> players) {
+            this.players = players;
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public PlayerSettings load(UUID uuid) {
+            return null;
+        }
+
+        @Override
+        public void upsert(UUID uuid, PlayerSettings settings) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(UUID uuid) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void forEach(BiConsumer<UUID, PlayerSettings> visitor) {
+            players.accept(visitor);
+        }
+
+        @Override
+        public void reload() {
+        }
+
+        @Override
+        public boolean isHealthy() {
+            return true;
+        }
+
+        @Override
+        public boolean close(int timeoutSeconds) {
+            return true;
+        }
+    }
+}
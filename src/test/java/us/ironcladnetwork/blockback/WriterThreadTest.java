@@ -0,0 +1,108 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriterThreadTest {
+
+    private static final Logger LOGGER = Logger.getLogger("WriterThreadTest");
+
+    @Test
+    void runsTasksInOrderOnOneThread() {
+        WriterThread writer = new WriterThread("test-writer", LOGGER);
+        List<Integer> order = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            writer.execute(() -> {
+                order.add(task);
+                threads.add(Thread.currentThread().getName());
+            });
+        }
+
+        assertTrue(writer.awaitQueued(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) order.get(i));
+            assertEquals("test-writer", threads.get(i));
+        }
+        assertTrue(writer.shutdown(5));
+    }
+
+    @Test
+    void failedTaskDoesNotStopTheWriter() {
+        WriterThread writer = new WriterThread("test-writer", LOGGER);
+        AtomicBoolean ran = new AtomicBoolean();
+        writer.execute(() -> {
+            throw new IllegalStateException("expected by the test");
+        });
+        writer.execute(() -> ran.set(true));
+
+        assertTrue(writer.awaitQueued(5, TimeUnit.SECONDS));
+        assertTrue(ran.get());
+        assertTrue(writer.shutdown(5));
+    }
+
+    @Test
+    void runAndWaitRunsBehindQueuedTasks() {
+        WriterThread writer = new WriterThread("test-writer", LOGGER);
+        List<String> order = new ArrayList<>();
+        writer.execute(() -> order.add("queued"));
+
+        assertTrue(writer.runAndWait(() -> order.add("waited"), 5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("queued", "waited"), order);
+        assertTrue(writer.shutdown(5));
+    }
+
+    @Test
+    void tasksAfterShutdownRunOnCaller() {
+        WriterThread writer = new WriterThread("test-writer", LOGGER);
+        assertTrue(writer.shutdown(5));
+
+        Thread[] ranOn = new Thread[1];
+        writer.execute(() -> ranOn[0] = Thread.currentThread());
+
+        assertSame(Thread.currentThread(), ranOn[0]);
+    }
+
+    @Test
+    void taskAfterShutdownWaitsForTaskStillRunning() throws InterruptedException {
+        WriterThread writer = new WriterThread("test-writer", LOGGER);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean firstFinished = new AtomicBoolean();
+        writer.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            firstFinished.set(true);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // Times out: the first task is still running
+        assertFalse(writer.shutdown(0));
+
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+        Thread submitter = new Thread(() -> writer.execute(() -> overlapped.set(!firstFinished.get())));
+        submitter.start();
+        Thread.sleep(100);
+        release.countDown();
+        submitter.join(5000);
+
+        assertFalse(submitter.isAlive());
+        assertFalse(overlapped.get());
+    }
+}
@@ -0,0 +1,129 @@
+package us.ironcladnetwork.blockback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import us.ironcladnetwork.blockback.PlayerDataManager.PlayerSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class YamlPlayerStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("YamlPlayerStoreTest");
+
+    @TempDir
+    File dataFolder;
+
+    private final UUID alex = UUID.randomUUID();
+    private final UUID steve = UUID.randomUUID();
+
+    @Test
+    void savesWithChecksumAndReloads() throws IOException {
+        YamlPlayerStore store = open();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.PATHBACK.getMask()));
+        assertTrue(store.close(1));
+
+        byte[] data = Files.readAllBytes(playersFile().toPath());
+        assertEquals(DurableFiles.Integrity.VALID, DurableFiles.verify(data));
+        store = open();
+        assertEquals("Alex", store.load(alex).name);
+        assertEquals(Feature.PATHBACK.getMask(), store.load(alex).disabled);
+    }
+
+    @Test
+    void failedSaveIsWrittenAtClose() throws IOException {
+        YamlPlayerStore store = open();
+        failNextWrite();
+
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+
+        // Still served from memory, but not on disk yet
+        assertEquals("Alex", store.load(alex).name);
+        assertFalse(Files.readString(playersFile().toPath()).contains(alex.toString()));
+
+        assertTrue(store.close(1));
+        store = open();
+        assertEquals(Feature.BARKBACK.getMask(), store.load(alex).disabled);
+    }
+
+    @Test
+    void failedSaveIsWrittenWithNextChange() throws IOException {
+        YamlPlayerStore store = open();
+        failNextWrite();
+        store.upsert(alex, new PlayerSettings("Alex", Feature.BARKBACK.getMask()));
+
+        store.upsert(steve, new PlayerSettings("Steve", Feature.FARMBACK.getMask()));
+
+        String saved = Files.readString(playersFile().toPath());
+        assertTrue(saved.contains(alex.toString()));
+        assertTrue(saved.contains(steve.toString()));
+    }
+
+    @Test
+    void checksumMismatchRestoresBackupAndKeepsDamagedFile() throws IOException {
+        String damaged = steve + ":\n  name: Steve\n" + DurableFiles.checksumLine(0);
+        Files.writeString(playersFile().toPath(), damaged);
+        writeBackup(alex + ":\n  name: Alex\n  disabled:\n  - farmback\n");
+
+        YamlPlayerStore store = open();
+
+        assertEquals(Feature.FARMBACK.getMask(), store.load(alex).disabled);
+        assertNull(store.load(steve));
+        File[] copies = dataFolder.listFiles((dir, name) -> name.startsWith("players.yml.damaged-"));
+        assertNotNull(copies);
+        assertEquals(1, copies.length);
+        assertEquals(damaged, Files.readString(copies[0].toPath()));
+    }
+
+    @Test
+    void fileWithoutChecksumIsAccepted() throws IOException {
+        // As after a hand edit with the checksum line removed
+        Files.writeString(playersFile().toPath(), alex + ":\n  name: Alex\n  disabled:\n  - pathback\n");
+
+        YamlPlayerStore store = open();
+
+        assertEquals(Feature.PATHBACK.getMask(), store.load(alex).disabled);
+        File[] copies = dataFolder.listFiles((dir, name) -> name.startsWith("players.yml.damaged-"));
+        assertNotNull(copies);
+        assertEquals(0, copies.length);
+    }
+
+    private YamlPlayerStore open() {
+        YamlPlayerStore store = new YamlPlayerStore(dataFolder, LOGGER, Runnable::run);
+        store.open();
+        return store;
+    }
+
+    private File playersFile() {
+        return new File(dataFolder, "players.yml");
+    }
+
+    /**
+     * Puts a directory where the next save writes its temp file. The failed write removes it
+     * again, so only one save fails.
+     */
+    private void failNextWrite() {
+        assertTrue(new File(dataFolder, "players.yml.tmp").mkdir());
+    }
+
+    private void writeBackup(String yaml) throws IOException {
+        File backups = BackupManager.getBackupFolder(dataFolder);
+        assertTrue(backups.mkdirs());
+        File backup = new File(backups, "players-2026-01-01_00-00-00-0123456789abcdef.yml.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(backup.toPath()))) {
+            out.write(yaml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}